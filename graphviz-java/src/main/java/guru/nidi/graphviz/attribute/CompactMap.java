@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.attribute;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An insertion ordered map optimized for few entries.
+ * Up to {@link #MAX_ARRAY} entries are kept in a plain array, keys are interned.
+ * When all entries of one map are put into an empty one, the array is shared until one of them is modified.
+ */
+final class CompactMap extends AbstractMap<String, Object> {
+    private static final int MAX_ARRAY = 8;
+    private static final int MAX_KEYS = 4096;
+    private static final Object[] EMPTY = new Object[0];
+    private static final Map<String, String> KEYS = new ConcurrentHashMap<>();
+
+    //alternating keys and values
+    private Object[] data = EMPTY;
+    private int size;
+    private boolean shared;
+    @Nullable
+    private LinkedHashMap<String, Object> large;
+
+    private static String intern(String key) {
+        final String interned = KEYS.get(key);
+        if (interned != null) {
+            return interned;
+        }
+        if (KEYS.size() < MAX_KEYS) {
+            KEYS.putIfAbsent(key, key);
+        }
+        return key;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size * 2; i += 2) {
+            if (data[i] == key || data[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureWritable(int entries) {
+        if (shared || data.length < entries * 2) {
+            data = Arrays.copyOf(data, Math.max(entries, Math.min(size * 2, MAX_ARRAY)) * 2);
+            shared = false;
+        }
+    }
+
+    @Override
+    public int size() {
+        return large != null ? large.size() : size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return large != null ? large.containsKey(key) : indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (large != null) {
+            return large.get(key);
+        }
+        final int i = indexOf(key);
+        return i < 0 ? null : data[i + 1];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (large != null) {
+            return large.put(key, value);
+        }
+        final int i = indexOf(key);
+        if (i >= 0) {
+            ensureWritable(size);
+            final Object old = data[i + 1];
+            data[i + 1] = value;
+            return old;
+        }
+        if (size == MAX_ARRAY) {
+            large = new LinkedHashMap<>();
+            for (int j = 0; j < size * 2; j += 2) {
+                large.put((String) data[j], data[j + 1]);
+            }
+            data = EMPTY;
+            size = 0;
+            shared = false;
+            return large.put(key, value);
+        }
+        ensureWritable(size + 1);
+        data[size * 2] = intern(key);
+        data[size * 2 + 1] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> m) {
+        if (m instanceof CompactMap && size() == 0) {
+            final CompactMap other = (CompactMap) m;
+            if (other.large == null && other.size > 0) {
+                //this may have been large and emptied by remove
+                large = null;
+                data = other.data;
+                size = other.size;
+                shared = true;
+                other.shared = true;
+                return;
+            }
+        }
+        for (final Entry<? extends String, ?> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (large != null) {
+            return large.remove(key);
+        }
+        final int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        final Object old = data[i + 1];
+        removeAt(i);
+        return old;
+    }
+
+    private void removeAt(int i) {
+        ensureWritable(size);
+        System.arraycopy(data, i + 2, data, i, size * 2 - i - 2);
+        size--;
+        data[size * 2] = null;
+        data[size * 2 + 1] = null;
+    }
+
+    @Override
+    public void clear() {
+        large = null;
+        data = EMPTY;
+        size = 0;
+        shared = false;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public int size() {
+                return CompactMap.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return large != null ? large.entrySet().iterator() : new ArrayIterator();
+            }
+        };
+    }
+
+    private final class ArrayIterator implements Iterator<Entry<String, Object>> {
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size * 2;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next += 2;
+            return new SimpleEntry<String, Object>((String) data[last], data[last + 1]) {
+                @Override
+                public Object setValue(Object value) {
+                    put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+}
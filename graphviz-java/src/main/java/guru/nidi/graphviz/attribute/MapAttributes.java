@@ -28,7 +28,7 @@ public class MapAttributes<F extends For> implements Attributes<F>, Iterable<Ent
     }
 
     public MapAttributes() {
-        attributes = new LinkedHashMap<>();
+        attributes = new CompactMap();
     }
 
     public Attributes<? super F> applyTo(MapAttributes<? super F> attrs) {
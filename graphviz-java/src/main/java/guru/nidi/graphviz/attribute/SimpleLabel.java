@@ -16,8 +16,12 @@
 package guru.nidi.graphviz.attribute;
 
 import java.util.Objects;
+import java.util.regex.Pattern;
 
 public class SimpleLabel {
+    private static final Pattern ID = Pattern.compile("[a-zA-Z_][a-zA-Z_0-9]*|-?(\\.[0-9]+|[0-9]+(\\.[0-9]*)?)");
+    private static final Pattern KEYWORD = Pattern.compile("node|edge|graph|digraph|subgraph|strict",
+            Pattern.CASE_INSENSITIVE);
     final String value;
     final boolean html;
 
@@ -38,6 +42,15 @@ public class SimpleLabel {
         return html ? ("<" + value + ">") : ("\"" + quoted() + "\"");
     }
 
+    /**
+     * Serialize without quotes if the value is a valid unquoted DOT ID.
+     *
+     * @return the serialized value
+     */
+    public String compactSerialized() {
+        return !html && ID.matcher(value).matches() && !KEYWORD.matcher(value).matches() ? value : serialized();
+    }
+
     public String simpleSerialized() {
         return html ? value : quoted();
     }
@@ -35,6 +35,10 @@ final class AttributeConfigs {
         return CONFIG.get(name);
     }
 
+    static Set<String> names() {
+        return CONFIG.keySet();
+    }
+
     static {
         add("Damping", entry("G", DOUBLE, 0.99, 0.0).engines(NEATO));
         add("K", entry("GC", DOUBLE, 0.3, 0.0).engines(SFDP, FDP));
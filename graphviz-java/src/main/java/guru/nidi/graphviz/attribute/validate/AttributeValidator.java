@@ -20,7 +20,9 @@ import guru.nidi.graphviz.attribute.For;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.StreamSupport;
 
 import static guru.nidi.graphviz.attribute.validate.Datatype.*;
@@ -28,12 +30,17 @@ import static guru.nidi.graphviz.attribute.validate.ValidatorEngine.*;
 import static guru.nidi.graphviz.attribute.validate.ValidatorFormat.OTHER;
 import static guru.nidi.graphviz.attribute.validate.ValidatorFormat.UNKNOWN_FORMAT;
 import static guru.nidi.graphviz.attribute.validate.ValidatorMessage.Severity.*;
-import static java.util.Collections.singletonList;
+import static java.util.Arrays.asList;
+import static java.util.Collections.*;
 import static java.util.Locale.ENGLISH;
 import static java.util.stream.Collectors.toList;
 
 public final class AttributeValidator {
     private static final Logger LOG = LoggerFactory.getLogger(AttributeValidator.class);
+    private static final int MAX_VERDICTS = 1000;
+    private static final int MAX_SHAPES = 10000;
+    private static final Map<List<Object>, Map<String, Check[]>> CHECKS = new ConcurrentHashMap<>();
+    private static final Set<String> UNKNOWN_SHAPES = ConcurrentHashMap.newKeySet();
 
     public enum Scope {
         GRAPH, SUB_GRAPH, CLUSTER, NODE, EDGE;
@@ -46,22 +53,37 @@ public final class AttributeValidator {
 
     private final ValidatorEngine engine;
     private final ValidatorFormat format;
+    private final ValidationMode mode;
+    private final Map<String, Check[]> checks;
 
     public AttributeValidator() {
-        this(UNKNOWN_ENGINE, UNKNOWN_FORMAT);
+        this(UNKNOWN_ENGINE, UNKNOWN_FORMAT, ValidationMode.SYNC);
     }
 
-    private AttributeValidator(ValidatorEngine engine, ValidatorFormat format) {
+    private AttributeValidator(ValidatorEngine engine, ValidatorFormat format, ValidationMode mode) {
         this.engine = engine;
         this.format = format;
+        this.mode = mode;
+        checks = CHECKS.computeIfAbsent(asList(engine, format), k -> checksFor(engine, format));
     }
 
     public AttributeValidator forEngine(ValidatorEngine engine) {
-        return new AttributeValidator(engine, format);
+        return new AttributeValidator(engine, format, mode);
     }
 
     public AttributeValidator forFormat(ValidatorFormat format) {
-        return new AttributeValidator(engine, format);
+        return new AttributeValidator(engine, format, mode);
+    }
+
+    /**
+     * Sampled and once per shape modes let the validator skip attributes.
+     * Asynchronous validation must be arranged by the caller, the validator itself is always synchronous.
+     *
+     * @param mode the validation mode
+     * @return a validator using the given mode
+     */
+    public AttributeValidator forMode(ValidationMode mode) {
+        return new AttributeValidator(engine, format, mode);
     }
 
     public List<ValidatorMessage> validate(Attributes<? extends For> attrs, Scope scope) {
@@ -71,50 +93,80 @@ public final class AttributeValidator {
     }
 
     public List<ValidatorMessage> validate(String key, Object value, Scope scope) {
-        final List<AttributeConfig> configs = AttributeConfigs.get(key);
-        if (configs == null) {
+        if (mode.skipsSample()) {
+            return emptyList();
+        }
+        final Check[] keyChecks = checks.get(key);
+        if (keyChecks == null) {
+            if (mode.oncePerShape && !firstShape(UNKNOWN_SHAPES, key)) {
+                return emptyList();
+            }
             return singletonList(new ValidatorMessage(ERROR, key, "is unknown."));
         }
+        final Check check = keyChecks[scope.ordinal()];
+        if (mode.oncePerShape && !firstShape(check.shapes, value.toString())) {
+            return emptyList();
+        }
+        return check.validate(key, value);
+    }
+
+    private static Map<String, Check[]> checksFor(ValidatorEngine engine, ValidatorFormat format) {
+        final Map<String, Check[]> checks = new HashMap<>();
+        for (final String key : AttributeConfigs.names()) {
+            final Check[] keyChecks = new Check[Scope.values().length];
+            for (final Scope scope : Scope.values()) {
+                keyChecks[scope.ordinal()] = check(engine, format, key, AttributeConfigs.get(key), scope);
+            }
+            checks.put(key, keyChecks);
+        }
+        return checks;
+    }
 
-        final List<AttributeConfig> engineConfigs = findConfigsForEngine(configs);
+    private static Check check(ValidatorEngine engine, ValidatorFormat format,
+                               String key, List<AttributeConfig> configs, Scope scope) {
+        final List<AttributeConfig> engineConfigs = findConfigsForEngine(engine, configs);
         if (engineConfigs.isEmpty()) {
-            return singletonList(new ValidatorMessage(
+            return new Check(null, new ValidatorMessage(
                     ERROR, key, "is not allowed for engine '" + engine + "'."));
         }
 
-        final List<AttributeConfig> formatConfigs = findConfigsForFormat(configs);
+        final List<AttributeConfig> formatConfigs = findConfigsForFormat(format, configs);
         if (formatConfigs.isEmpty()) {
-            return singletonList(new ValidatorMessage(
+            return new Check(null, new ValidatorMessage(
                     ERROR, key, "is not allowed for format '" + format + "'."));
         }
 
         List<AttributeConfig> matchConfigs = intersect(engineConfigs, formatConfigs);
         if (matchConfigs.isEmpty()) {
-            return singletonList(new ValidatorMessage(
+            return new Check(null, new ValidatorMessage(
                     ERROR, key, "is not allowed for engine '" + engine + "' and format '" + format + "'."));
         }
         if (matchConfigs.size() > 1) {
             matchConfigs = matchConfigs.stream().filter(c -> c.scopes.contains(scope)).collect(toList());
         }
         if (matchConfigs.isEmpty()) {
-            return singletonList(new ValidatorMessage(ERROR, key, "is not allowed for " + scope + "s."));
+            return new Check(null, new ValidatorMessage(ERROR, key, "is not allowed for " + scope + "s."));
         }
         if (matchConfigs.size() > 1) {
             LOG.warn("Found multiple attribute configurations for " + engine + ", " + format + " and " + scope + "."
                     + " This should not happen.");
         }
-        final List<ValidatorMessage> messages = new ArrayList<>();
-        validateScope(messages, key, matchConfigs.get(0), scope);
-        validateValue(messages, key, matchConfigs.get(0), value);
-        validateType(messages, key, matchConfigs.get(0), value);
-        return messages;
+        final AttributeConfig config = matchConfigs.get(0);
+        return new Check(config, config.scopes.contains(scope)
+                ? null
+                : new ValidatorMessage(ERROR, key, "is not allowed for " + scope + "s."));
+    }
+
+    //once the limit is reached, new shapes are not validated anymore
+    private static boolean firstShape(Set<String> shapes, String shape) {
+        return shapes.size() < MAX_SHAPES && shapes.add(shape);
     }
 
     private static <T> List<T> intersect(List<T> as, List<T> bs) {
         return as.stream().filter(bs::contains).collect(toList());
     }
 
-    private List<AttributeConfig> findConfigsForEngine(List<AttributeConfig> configs) {
+    private static List<AttributeConfig> findConfigsForEngine(ValidatorEngine engine, List<AttributeConfig> configs) {
         return configs.stream()
                 .filter(c -> {
                     if (engine == UNKNOWN_ENGINE || c.engines.isEmpty()) {
@@ -128,7 +180,7 @@ public final class AttributeValidator {
                 .collect(toList());
     }
 
-    private List<AttributeConfig> findConfigsForFormat(List<AttributeConfig> configs) {
+    private static List<AttributeConfig> findConfigsForFormat(ValidatorFormat format, List<AttributeConfig> configs) {
         return configs.stream()
                 .filter(c -> {
                     if (format == OTHER && !c.formats.isEmpty()) {
@@ -142,13 +194,8 @@ public final class AttributeValidator {
                 .collect(toList());
     }
 
-    private void validateScope(List<ValidatorMessage> messages, String key, AttributeConfig config, Scope scope) {
-        if (!config.scopes.contains(scope)) {
-            messages.add(new ValidatorMessage(ERROR, key, "is not allowed for " + scope + "s."));
-        }
-    }
-
-    private void validateValue(List<ValidatorMessage> messages, String key, AttributeConfig config, Object value) {
+    private static void validateValue(List<ValidatorMessage> messages, String key,
+                                      AttributeConfig config, Object value) {
         if (config.defVal != null && isValueEquals(config.defVal, value)) {
             messages.add(new ValidatorMessage(
                     INFO, key, "has its default value '" + config.defVal + "'."));
@@ -164,7 +211,8 @@ public final class AttributeValidator {
         }
     }
 
-    private void validateType(List<ValidatorMessage> messages, String key, AttributeConfig config, Object value) {
+    private static void validateType(List<ValidatorMessage> messages, String key,
+                                     AttributeConfig config, Object value) {
         final List<ValidatorMessage> typeMessages = config.types.stream().map(t -> t.validate(value)).collect(toList());
         if (typeMessages.size() == 1) {
             if (typeMessages.get(0) != null) {
@@ -182,7 +230,7 @@ public final class AttributeValidator {
         }
     }
 
-    private boolean isValueEquals(Object config, Object value) {
+    private static boolean isValueEquals(Object config, Object value) {
         if (config instanceof Double) {
             final Double val = doubleValue(value);
             return val != null && Math.abs((Double) config - val) < .0001;
@@ -197,4 +245,41 @@ public final class AttributeValidator {
         }
         return config.toString().equals(value.toString());
     }
+
+    /**
+     * The validation of one attribute in one scope for a given engine and format.
+     * Everything that does not depend on the value is evaluated in advance,
+     * the verdicts for the values are memoized as they only depend on the value's string representation.
+     */
+    private static final class Check {
+        @Nullable
+        private final AttributeConfig config;
+        private final List<ValidatorMessage> messages;
+        private final Map<String, List<ValidatorMessage>> verdicts = new ConcurrentHashMap<>();
+        private final Set<String> shapes = ConcurrentHashMap.newKeySet();
+
+        Check(@Nullable AttributeConfig config, @Nullable ValidatorMessage message) {
+            this.config = config;
+            this.messages = message == null ? emptyList() : singletonList(message);
+        }
+
+        List<ValidatorMessage> validate(String key, Object value) {
+            if (config == null) {
+                return messages;
+            }
+            final String val = value.toString();
+            final List<ValidatorMessage> verdict = verdicts.get(val);
+            if (verdict != null) {
+                return verdict;
+            }
+            final List<ValidatorMessage> res = new ArrayList<>(messages);
+            validateValue(res, key, config, value);
+            validateType(res, key, config, value);
+            final List<ValidatorMessage> newVerdict = res.isEmpty() ? emptyList() : unmodifiableList(res);
+            if (verdicts.size() < MAX_VERDICTS) {
+                verdicts.put(val, newVerdict);
+            }
+            return newVerdict;
+        }
+    }
 }
@@ -16,14 +16,18 @@
 package guru.nidi.graphviz.attribute.validate;
 
 import java.lang.reflect.Field;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toSet;
 
 abstract class Datatype {
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
     final String name;
 
     Datatype(String name) {
@@ -44,7 +48,7 @@ abstract class Datatype {
     }
 
     static boolean matches(Object value, String pattern) {
-        return pattern(pattern).matcher(value.toString()).matches();
+        return PATTERNS.computeIfAbsent(pattern, Datatype::pattern).matcher(value.toString()).matches();
     }
 
     static Double doubleValue(Object value) {
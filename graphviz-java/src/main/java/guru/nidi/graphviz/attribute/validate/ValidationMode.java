@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.attribute.validate;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.*;
+
+/**
+ * Defines when and how often attributes are validated.
+ */
+public final class ValidationMode {
+    /**
+     * Validate every attribute while serializing.
+     */
+    public static final ValidationMode SYNC = new ValidationMode("SYNC", 1, false, null);
+    /**
+     * Validate every distinct combination of attribute key, value and scope only once per JVM.
+     */
+    public static final ValidationMode ONCE_PER_SHAPE = new ValidationMode("ONCE_PER_SHAPE", 1, true, null);
+    /**
+     * Validate every attribute after serializing, in a background thread.
+     * The attributes are collected while serializing, so the graph can be modified during the validation.
+     */
+    public static final ValidationMode ASYNC = async(Executors.newSingleThreadExecutor(ValidationMode::daemonThread));
+
+    private final String name;
+    final double rate;
+    final boolean oncePerShape;
+    @Nullable
+    private final Executor executor;
+
+    private ValidationMode(String name, double rate, boolean oncePerShape, @Nullable Executor executor) {
+        this.name = name;
+        this.rate = rate;
+        this.oncePerShape = oncePerShape;
+        this.executor = executor;
+    }
+
+    /**
+     * Validate only a random fraction of all attributes while serializing.
+     *
+     * @param rate the fraction of the attributes to validate, between 0 and 1
+     * @return the mode
+     */
+    public static ValidationMode sampled(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1, but was " + rate + ".");
+        }
+        return new ValidationMode("SAMPLED(" + rate + ")", rate, false, null);
+    }
+
+    /**
+     * Validate every attribute after serializing, using the given executor.
+     * The attributes are collected while serializing, so the graph can be modified during the validation.
+     *
+     * @param executor the executor to run the validation
+     * @return the mode
+     */
+    public static ValidationMode async(Executor executor) {
+        return new ValidationMode("ASYNC", 1, false, executor);
+    }
+
+    @Nullable
+    public Executor executor() {
+        return executor;
+    }
+
+    boolean skipsSample() {
+        return rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static Thread daemonThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, "graphviz-validation");
+        thread.setDaemon(true);
+        return thread;
+    }
+}
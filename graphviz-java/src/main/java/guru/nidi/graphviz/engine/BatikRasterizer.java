@@ -16,35 +16,54 @@
 package guru.nidi.graphviz.engine;
 
 import org.apache.batik.transcoder.*;
-import org.apache.batik.transcoder.image.PNGTranscoder;
+import org.apache.batik.transcoder.image.ImageTranscoder;
 
+import javax.annotation.Nullable;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.OutputStream;
 import java.io.StringReader;
 import java.util.function.Consumer;
 
 class BatikRasterizer extends SvgRasterizer {
+    //transcoders are not thread safe, but can be reused for many images
+    private static final ThreadLocal<ImageCapture> TRANSCODERS = ThreadLocal.withInitial(ImageCapture::new);
+
     @Override
     public BufferedImage doRasterize(Graphviz graphviz, Consumer<Graphics2D> graphicsConfigurer, String svg) {
-        final BufferedImage[] image = new BufferedImage[1];
-        final TranscoderInput in = new TranscoderInput(new StringReader(svg));
+        final ImageCapture transcoder = TRANSCODERS.get();
         try {
-            final TranscoderOutput out = new TranscoderOutput(new OutputStream() {
-                @Override
-                public void write(int b) {
-                }
-            });
-            final PNGTranscoder t = new PNGTranscoder() {
-                @Override
-                public BufferedImage createImage(int width, int height) {
-                    return image[0] = super.createImage(width, height);
-                }
-            };
-            t.transcode(in, out);
-            return image[0];
+            transcoder.transcode(new TranscoderInput(new StringReader(svg)), new TranscoderOutput());
+            return transcoder.image;
         } catch (TranscoderException e) {
             throw new GraphvizException("Error during rasterization", e);
+        } finally {
+            transcoder.release();
+        }
+    }
+
+    //like PNGTranscoder, but keeps the image instead of encoding it
+    private static final class ImageCapture extends ImageTranscoder {
+        @Nullable
+        private BufferedImage image;
+
+        @Override
+        public BufferedImage createImage(int width, int height) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        @Override
+        public void writeImage(BufferedImage img, TranscoderOutput output) {
+            image = img;
+        }
+
+        //the transcoder keeps the last document via its bridge context and graphics tree
+        void release() {
+            image = null;
+            root = null;
+            if (ctx != null) {
+                ctx.dispose();
+                ctx = null;
+            }
         }
     }
 }
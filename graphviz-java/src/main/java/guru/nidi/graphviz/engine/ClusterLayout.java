@@ -0,0 +1,336 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import guru.nidi.graphviz.attribute.*;
+import guru.nidi.graphviz.model.*;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static guru.nidi.graphviz.attribute.Attributes.attr;
+import static guru.nidi.graphviz.engine.SvgPart.format;
+import static guru.nidi.graphviz.model.Factory.mutGraph;
+import static guru.nidi.graphviz.model.Factory.mutNode;
+
+/**
+ * Lays out the top level clusters of a graph in parallel and composes the results into one SVG.
+ * Every cluster is rendered as a graph of its own and then replaced by a box of the same size
+ * for the layout of the rest of the graph. At the end, the SVGs of the clusters are moved into the boxes.
+ * <pre>{@code
+ * String svg = ClusterLayout.of(g).render(c -> Graphviz.fromGraph(c).engine(Engine.DOT));
+ * }</pre>
+ * This is much faster for big clustered graphs,
+ * but edges between clusters end at the border of the cluster instead of at the node inside.
+ * A node belongs to the first cluster it is linked from or contained in, like it does in graphviz.
+ * An edge to a subgraph that is not a top level cluster is an edge to every node of the subgraph.
+ */
+public final class ClusterLayout {
+    private static final Pattern POINTS = Pattern.compile("points=\"([^\"]*)\"");
+    private static final double POINTS_PER_INCH = 72;
+
+    private final MutableGraph graph;
+    private final Executor executor;
+
+    private ClusterLayout(MutableGraph graph, Executor executor) {
+        this.graph = graph;
+        this.executor = executor;
+    }
+
+    public static ClusterLayout of(MutableGraph graph) {
+        return new ClusterLayout(graph, ForkJoinPool.commonPool());
+    }
+
+    public ClusterLayout executor(Executor executor) {
+        return new ClusterLayout(graph, executor);
+    }
+
+    /**
+     * Render the clusters concurrently, then the rest of the graph, and compose them into one SVG.
+     *
+     * @param graphviz creates the Graphviz that renders a part of the graph, e.g. to set the engine
+     * @return the SVG of the whole graph
+     */
+    public String render(Function<MutableGraph, Graphviz> graphviz) {
+        final Split split = new Split(graph);
+        if (split.clusters.isEmpty()) {
+            return graphviz.apply(graph).render(Format.SVG).toString();
+        }
+        final List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (final MutableGraph cluster : split.clusters) {
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> graphviz.apply(cluster).render(Format.SVG).toString(), executor));
+        }
+        final List<SvgPart> clusters = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            clusters.add(SvgPart.of(ComponentSplitter.join(futures.get(i)), "Cluster " + i));
+        }
+        final List<double[]> sizes = new ArrayList<>();
+        for (final SvgPart cluster : clusters) {
+            sizes.add(cluster.size());
+        }
+        final String top = graphviz.apply(split.topLevel(sizes)).render(Format.SVG).toString();
+        return compose(top, split.placeholders, clusters);
+    }
+
+    /**
+     * Replace the placeholder nodes in the SVG of the top level graph by the SVGs of the clusters.
+     * The ids in each cluster are prefixed with "c" and the number of the cluster to keep them unique.
+     *
+     * @param top          the SVG of the top level graph
+     * @param placeholders the names of the placeholder nodes
+     * @param clusters     the SVGs of the clusters
+     * @return the composed SVG
+     */
+    static String compose(String top, List<String> placeholders, List<SvgPart> clusters) {
+        final TreeMap<Integer, Entry<Integer, String>> replacements = new TreeMap<>();
+        for (int i = 0; i < placeholders.size(); i++) {
+            final int title = top.indexOf("<title>" + placeholders.get(i) + "</title>");
+            if (title < 0) {
+                throw new GraphvizException("Placeholder of cluster " + i + " not found.");
+            }
+            final int start = top.lastIndexOf("<g", title);
+            final int end = top.indexOf("</g>", title) + 4;
+            final Matcher points = POINTS.matcher(top.substring(title, end));
+            if (start < 0 || end < 4 || !points.find()) {
+                throw new GraphvizException("Placeholder of cluster " + i + " has no shape.");
+            }
+            final double[] box = boundingBox(points.group(1));
+            replacements.put(start, new AbstractMap.SimpleEntry<>(end,
+                    "<g transform=\"translate(" + format(box[0]) + " " + format(box[1]) + ")\">\n"
+                            + clusters.get(i).element("c" + i + "_", box[2] - box[0], box[3] - box[1])
+                            + "\n</g>"));
+        }
+        final StringBuilder s = new StringBuilder();
+        int pos = 0;
+        for (final Entry<Integer, Entry<Integer, String>> replacement : replacements.entrySet()) {
+            s.append(top, pos, replacement.getKey()).append(replacement.getValue().getValue());
+            pos = replacement.getValue().getKey();
+        }
+        return s.append(top.substring(pos)).toString();
+    }
+
+    //minX, minY, maxX, maxY
+    private static double[] boundingBox(String points) {
+        final double[] box = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        final String[] coords = points.trim().split("[ ,]+");
+        for (int i = 0; i + 1 < coords.length; i += 2) {
+            final double x = Double.parseDouble(coords[i]);
+            final double y = Double.parseDouble(coords[i + 1]);
+            box[0] = Math.min(box[0], x);
+            box[1] = Math.min(box[1], y);
+            box[2] = Math.max(box[2], x);
+            box[3] = Math.max(box[3], y);
+        }
+        return box;
+    }
+
+    /**
+     * The graph split into one graph per top level cluster and the rest of the graph.
+     * All graphs consist of copies of the original nodes and links, the original graph is not modified.
+     */
+    static final class Split {
+        final List<MutableGraph> clusters = new ArrayList<>();
+        final List<String> placeholders = new ArrayList<>();
+        private final MutableGraph graph;
+        private final List<MutableGraph> originals = new ArrayList<>();
+        private final Map<Label, MutableNode> topNodes = new HashMap<>();
+        private final Map<Label, Integer> members = new HashMap<>();
+        private final List<TopEdge> topEdges = new ArrayList<>();
+
+        Split(MutableGraph graph) {
+            this.graph = graph;
+            final GraphIndex index = graph.index();
+            final Map<Label, Integer> owners = new HashMap<>();
+            for (final MutableGraph sub : graph.graphs()) {
+                if (sub.isCluster()) {
+                    for (final MutableNode node : sub.nodes()) {
+                        owners.putIfAbsent(node.name(), originals.size());
+                    }
+                    originals.add(sub);
+                }
+            }
+            final List<Map<Label, MutableNode>> clusterNodes = new ArrayList<>();
+            for (int i = 0; i < originals.size(); i++) {
+                clusterNodes.add(new LinkedHashMap<>());
+                String name = "cluster" + i;
+                while (index.id(name) >= 0) {
+                    name = "_" + name;
+                }
+                placeholders.add(name);
+            }
+            for (final MutableNode node : index.nodes()) {
+                final Integer owner = owners.get(node.name());
+                final Map<Label, MutableNode> nodes = owner == null ? topNodes : clusterNodes.get(owner);
+                nodes.computeIfAbsent(node.name(), Factory::mutNode).add(node.attrs());
+            }
+            for (int i = 0; i < index.edgeCount(); i++) {
+                final Link edge = index.edge(i);
+                for (final Object from : endpoints(index.from(i), edge.from(), index)) {
+                    for (final Object to : endpoints(index.to(i), edge.to(), index)) {
+                        final Integer owner = owner(from, owners);
+                        if (owner != null && owner.equals(owner(to, owners))) {
+                            final Map<Label, MutableNode> nodes = clusterNodes.get(owner);
+                            copyLink(edge, nodes.get(((MutableNode) from).name()), true,
+                                    nodes.get(((MutableNode) to).name()), true);
+                        } else {
+                            topEdges.add(new TopEdge(i, edge, from, to));
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < originals.size(); i++) {
+                final MutableGraph cluster = copy(originals.get(i), clusterNodes.get(i));
+                cluster.add(new ArrayList<>(clusterNodes.get(i).values()));
+                clusters.add(shell(graph, true).add(cluster));
+                for (final Label name : clusterNodes.get(i).keySet()) {
+                    members.put(name, i);
+                }
+            }
+        }
+
+        //a top level cluster stays one endpoint, any other subgraph stands for all its nodes
+        private List<?> endpoints(int id, @Nullable Object endpoint, GraphIndex index) {
+            if (id >= 0) {
+                return Collections.singletonList(index.node(id));
+            }
+            if (endpoint instanceof MutableGraph && !originals.contains(endpoint)) {
+                final List<MutableNode> nodes = new ArrayList<>(((MutableGraph) endpoint).nodes());
+                nodes.sort(Comparator.comparingInt(index::id));
+                return nodes;
+            }
+            return endpoint == null ? Collections.emptyList() : Collections.singletonList(endpoint);
+        }
+
+        @Nullable
+        private static Integer owner(Object endpoint, Map<Label, Integer> owners) {
+            return endpoint instanceof MutableNode ? owners.get(((MutableNode) endpoint).name()) : null;
+        }
+
+        /**
+         * @param sizes the sizes of the clusters in points
+         * @return the top level graph with a fixed size placeholder node for each cluster
+         */
+        MutableGraph topLevel(List<double[]> sizes) {
+            final List<MutableNode> placeholderList = new ArrayList<>();
+            for (int i = 0; i < placeholders.size(); i++) {
+                placeholderList.add(mutNode(placeholders.get(i)).add(Shape.BOX, Label.of(""),
+                        Size.mode(Size.Mode.FIXED).size(
+                                sizes.get(i)[0] / POINTS_PER_INCH, sizes.get(i)[1] / POINTS_PER_INCH)));
+            }
+            final Map<Label, MutableNode> nodes = new HashMap<>();
+            for (final Entry<Label, MutableNode> node : topNodes.entrySet()) {
+                nodes.put(node.getKey(), node.getValue().copy());
+            }
+            for (final Entry<Label, Integer> member : members.entrySet()) {
+                nodes.put(member.getKey(), placeholderList.get(member.getValue()));
+            }
+            final MutableGraph top = shell(graph, false);
+            for (final MutableGraph sub : graph.graphs()) {
+                final int cluster = originals.indexOf(sub);
+                top.add(cluster < 0 ? copy(sub, nodes) : placeholderList.get(cluster));
+            }
+            for (final MutableNode node : graph.rootNodes()) {
+                top.add(nodes.get(node.name()));
+            }
+            //the nodes of a subgraph inside a cluster are all replaced by the same placeholder
+            final Set<List<Object>> copied = new HashSet<>();
+            for (final TopEdge edge : topEdges) {
+                final MutableNode from = endpoint(edge.from, nodes, placeholderList);
+                final MutableNode to = endpoint(edge.to, nodes, placeholderList);
+                if (from != null && to != null && copied.add(Arrays.asList(edge.id, from.name(), to.name()))) {
+                    copyLink(edge.link, from, !placeholderList.contains(from), to, !placeholderList.contains(to));
+                }
+            }
+            for (final MutableNode node : nodes.values()) {
+                top.add(node);
+            }
+            return top;
+        }
+
+        @Nullable
+        private MutableNode endpoint(Object endpoint, Map<Label, MutableNode> nodes,
+                                     List<MutableNode> placeholderList) {
+            if (endpoint instanceof MutableNode) {
+                return nodes.get(((MutableNode) endpoint).name());
+            }
+            final int cluster = originals.indexOf(endpoint);
+            return cluster < 0 ? null : placeholderList.get(cluster);
+        }
+
+        //ports of the original nodes don't exist on placeholders
+        private static void copyLink(Link link, MutableNode from, boolean fromPort, MutableNode to, boolean toPort) {
+            final LinkTarget target = toPort && link.to() instanceof PortNode
+                    ? to.port(((PortNode) link.to()).port().record(),
+                    ((PortNode) link.to()).port().compass())
+                    : to;
+            final Link copy = fromPort && link.from() instanceof PortNode
+                    ? Link.between(((PortNode) link.from()).port(), target)
+                    : Link.to(target);
+            from.addLink(copy.with(link.attrs()));
+        }
+
+        private MutableGraph copy(MutableGraph original, Map<Label, MutableNode> nodes) {
+            final MutableGraph copy = shell(original, false);
+            for (final MutableGraph sub : original.graphs()) {
+                copy.add(copy(sub, nodes));
+            }
+            for (final MutableNode node : original.rootNodes()) {
+                final MutableNode n = nodes.get(node.name());
+                if (n != null) {
+                    copy.add(n);
+                }
+            }
+            return copy;
+        }
+
+        //the label of the whole graph should not be repeated for every cluster
+        private static MutableGraph shell(MutableGraph original, boolean withoutLabel) {
+            final MutableGraph shell = mutGraph(original.name().toString())
+                    .setStrict(original.isStrict())
+                    .setDirected(original.isDirected())
+                    .setCluster(original.isCluster())
+                    .nodeAttrs().add(original.nodeAttrs())
+                    .linkAttrs().add(original.linkAttrs());
+            for (final Entry<String, Object> attr : original.graphAttrs()) {
+                if (!withoutLabel || !"label".equals(attr.getKey()) && !"xlabel".equals(attr.getKey())) {
+                    shell.graphAttrs().add(attr(attr.getKey(), attr.getValue()));
+                }
+            }
+            return shell;
+        }
+    }
+
+    //an edge of the top level graph, from and to are an original node or a top level cluster
+    private static final class TopEdge {
+        final int id;
+        final Link link;
+        final Object from;
+        final Object to;
+
+        TopEdge(int id, Link link, Object from, Object to) {
+            this.id = id;
+            this.link = link;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
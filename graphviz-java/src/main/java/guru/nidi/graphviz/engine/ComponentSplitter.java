@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import guru.nidi.graphviz.model.*;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+import static guru.nidi.graphviz.engine.SvgPart.format;
+import static guru.nidi.graphviz.model.Factory.mutGraph;
+import static java.util.Collections.singletonList;
+
+/**
+ * Lays out the connected components of a graph separately and packs the results into one SVG,
+ * like {@code ccomps} and {@code gvpack} do.
+ * <pre>{@code
+ * String svg = ComponentSplitter.of(g).render(c -> Graphviz.fromGraph(c).engine(Engine.NEATO));
+ * }</pre>
+ * The components are rendered concurrently, the command line engine starts a process per component
+ * and the javascript engines use one instance per thread.
+ * Subgraphs are never split, all their nodes belong to the same component.
+ */
+public final class ComponentSplitter {
+    private final MutableGraph graph;
+    private final Executor executor;
+    private final double margin;
+
+    private ComponentSplitter(MutableGraph graph, Executor executor, double margin) {
+        this.graph = graph;
+        this.executor = executor;
+        this.margin = margin;
+    }
+
+    public static ComponentSplitter of(MutableGraph graph) {
+        return new ComponentSplitter(graph, ForkJoinPool.commonPool(), 8);
+    }
+
+    public ComponentSplitter executor(Executor executor) {
+        return new ComponentSplitter(graph, executor, margin);
+    }
+
+    /**
+     * @param margin the space between two components in pixels
+     * @return a splitter with the given margin
+     */
+    public ComponentSplitter margin(double margin) {
+        return new ComponentSplitter(graph, executor, margin);
+    }
+
+    /**
+     * Split the graph into its connected components.
+     * Every component is a new graph with the attributes of the original graph,
+     * containing the original nodes and subgraphs, so the components must not be modified.
+     * If the graph itself is linked to something, it is not split.
+     *
+     * @return the components in the order of their first node
+     */
+    public List<MutableGraph> components() {
+        final GraphIndex index = graph.index();
+        final int[] parent = new int[index.nodeCount()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        //nodes with the same name are the same node in the DOT
+        for (int i = 0; i < parent.length; i++) {
+            union(parent, i, index.id(index.node(i).name()));
+        }
+        for (final MutableGraph sub : graph.graphs()) {
+            final int first = representative(index, sub);
+            for (final MutableNode node : sub.nodes()) {
+                union(parent, first, index.id(node));
+            }
+        }
+        for (int i = 0; i < index.edgeCount(); i++) {
+            final Link edge = index.edge(i);
+            if (edge.from() == graph || edge.to() == graph) {
+                return singletonList(graph);
+            }
+            union(parent, endpoint(index, index.from(i), edge.from()), endpoint(index, index.to(i), edge.to()));
+        }
+        final Map<Integer, MutableGraph> components = new LinkedHashMap<>();
+        for (final MutableGraph sub : graph.graphs()) {
+            final int first = representative(index, sub);
+            component(components, first < 0 ? 0 : find(parent, first)).add(sub);
+        }
+        for (final MutableNode node : graph.rootNodes()) {
+            component(components, find(parent, index.id(node))).add(node);
+        }
+        return components.size() <= 1 ? singletonList(graph) : new ArrayList<>(components.values());
+    }
+
+    /**
+     * Render the components concurrently as SVG and pack them into one SVG.
+     *
+     * @param graphviz creates the Graphviz that renders a component, e.g. to set the engine or the size
+     * @return the SVG containing all components
+     */
+    public String render(Function<MutableGraph, Graphviz> graphviz) {
+        final List<MutableGraph> components = components();
+        if (components.size() == 1) {
+            return graphviz.apply(components.get(0)).render(Format.SVG).toString();
+        }
+        final List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (final MutableGraph component : components) {
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> graphviz.apply(component).render(Format.SVG).toString(), executor));
+        }
+        final List<String> svgs = new ArrayList<>();
+        for (final CompletableFuture<String> future : futures) {
+            svgs.add(join(future));
+        }
+        return pack(svgs, margin);
+    }
+
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GraphvizException("Problem in parallel rendering", e.getCause());
+        }
+    }
+
+    /**
+     * Place the SVGs in rows, the highest first, and combine them into one SVG.
+     * The ids in each SVG are prefixed with "c" and its position in the list to keep them unique.
+     *
+     * @param svgs   the SVGs to pack
+     * @param margin the space between two SVGs in pixels
+     * @return the combined SVG
+     */
+    static String pack(List<String> svgs, double margin) {
+        final int n = svgs.size();
+        final SvgPart[] parts = new SvgPart[n];
+        final double[] widths = new double[n];
+        final double[] heights = new double[n];
+        double maxWidth = 0;
+        double area = 0;
+        for (int i = 0; i < n; i++) {
+            parts[i] = SvgPart.of(svgs.get(i), "Component " + i);
+            widths[i] = parts[i].width();
+            heights[i] = parts[i].height();
+            maxWidth = Math.max(maxWidth, widths[i]);
+            area += (widths[i] + margin) * (heights[i] + margin);
+        }
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(heights[b], heights[a]));
+
+        final double rowWidth = Math.max(maxWidth, Math.sqrt(area));
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        double x = 0;
+        double y = 0;
+        double rowHeight = 0;
+        double width = 0;
+        for (final int i : order) {
+            if (x > 0 && x + widths[i] > rowWidth) {
+                x = 0;
+                y += rowHeight + margin;
+                rowHeight = 0;
+            }
+            xs[i] = x;
+            ys[i] = y;
+            width = Math.max(width, x + widths[i]);
+            x += widths[i] + margin;
+            rowHeight = Math.max(rowHeight, heights[i]);
+        }
+        final double height = y + rowHeight;
+
+        final StringBuilder s = new StringBuilder("<svg width=\"").append(Math.round(width))
+                .append("px\" height=\"").append(Math.round(height))
+                .append("px\" viewBox=\"0.00 0.00 ").append(format(width)).append(' ').append(format(height))
+                .append("\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n");
+        for (int i = 0; i < n; i++) {
+            s.append("<g transform=\"translate(").append(format(xs[i])).append(' ').append(format(ys[i]))
+                    .append(")\">\n")
+                    .append(parts[i].element("c" + i + "_"))
+                    .append("\n</g>\n");
+        }
+        return s.append("</svg>\n").toString();
+    }
+
+    private MutableGraph component(Map<Integer, MutableGraph> components, int root) {
+        return components.computeIfAbsent(root, r -> mutGraph(graph.name().toString())
+                .setDirected(graph.isDirected())
+                .setStrict(graph.isStrict())
+                .graphAttrs().add(graph.graphAttrs())
+                .nodeAttrs().add(graph.nodeAttrs())
+                .linkAttrs().add(graph.linkAttrs()));
+    }
+
+    private static int representative(GraphIndex index, MutableGraph sub) {
+        final Iterator<MutableNode> nodes = sub.nodes().iterator();
+        return nodes.hasNext() ? index.id(nodes.next()) : -1;
+    }
+
+    //the id of the node or, for subgraphs, of one of its nodes
+    private static int endpoint(GraphIndex index, int id, @Nullable Object endpoint) {
+        if (id >= 0) {
+            return id;
+        }
+        return endpoint instanceof MutableGraph ? representative(index, (MutableGraph) endpoint) : -1;
+    }
+
+    private static int find(int[] parent, int node) {
+        int root = node;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        int n = node;
+        while (parent[n] != root) {
+            final int next = parent[n];
+            parent[n] = root;
+            n = next;
+        }
+        return root;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        if (a >= 0 && b >= 0) {
+            final int ra = find(parent, a);
+            final int rb = find(parent, b);
+            if (ra != rb) {
+                parent[Math.max(ra, rb)] = Math.min(ra, rb);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import java.io.IOException;
+
+/**
+ * A dot source that is written on demand instead of being held in memory as one String.
+ * It is written in chunks that each end with a complete line.
+ */
+@FunctionalInterface
+public interface DotSource {
+    void writeTo(Appendable out) throws IOException;
+
+    default String asString() {
+        final StringBuilder s = new StringBuilder();
+        try {
+            writeTo(s);
+        } catch (IOException e) {
+            throw new GraphvizException("Problem writing dot source", e);
+        }
+        return s.toString();
+    }
+}
@@ -15,6 +15,7 @@
  */
 package guru.nidi.graphviz.engine;
 
+import guru.nidi.graphviz.attribute.validate.ValidationMode;
 import guru.nidi.graphviz.attribute.validate.ValidatorMessage;
 import guru.nidi.graphviz.model.*;
 import org.slf4j.Logger;
@@ -68,14 +69,18 @@ public final class Graphviz {
     private final List<GraphvizProcessor> processors;
     @Nullable
     private final Consumer<ValidatorMessage> messageConsumer;
+    private final ValidationMode validationMode;
+    private final boolean incremental;
 
     private Graphviz(@Nullable MutableGraph graph, @Nullable String src, ProcessOptions processOptions) {
-        this(graph, src, Rasterizer.DEFAULT, processOptions, Options.create(), DEFAULT_PROCESSORS, null);
+        this(graph, src, Rasterizer.DEFAULT, processOptions, Options.create(), DEFAULT_PROCESSORS, null,
+                ValidationMode.SYNC, false);
     }
 
     private Graphviz(@Nullable MutableGraph graph, @Nullable String src, Rasterizer rasterizer,
                      ProcessOptions processOptions, Options options,
-                     List<GraphvizProcessor> processors, @Nullable Consumer<ValidatorMessage> messageConsumer) {
+                     List<GraphvizProcessor> processors, @Nullable Consumer<ValidatorMessage> messageConsumer,
+                     ValidationMode validationMode, boolean incremental) {
         this.graph = graph;
         this.src = src;
         this.rasterizer = rasterizer;
@@ -83,6 +88,8 @@ public final class Graphviz {
         this.options = options;
         this.processors = processors;
         this.messageConsumer = messageConsumer;
+        this.validationMode = validationMode;
+        this.incremental = incremental;
     }
 
     private static List<GraphvizEngine> availableEngines() {
@@ -215,36 +222,41 @@ public final class Graphviz {
     }
 
     public Graphviz engine(Engine engine) {
-        return new Graphviz(
-                graph, src, rasterizer, processOptions, options.engine(engine), processors, messageConsumer);
+        return new Graphviz(graph, src, rasterizer, processOptions, options.engine(engine), processors,
+                messageConsumer, validationMode, incremental);
     }
 
     public Graphviz totalMemory(@Nullable Integer totalMemory) {
         final Options opts = options.totalMemory(totalMemory);
-        return new Graphviz(graph, src, rasterizer, processOptions, opts, processors, messageConsumer);
+        return new Graphviz(graph, src, rasterizer, processOptions, opts, processors,
+                messageConsumer, validationMode, incremental);
     }
 
     public Graphviz yInvert(@Nullable Boolean yInvert) {
         final Options opts = options.yInvert(yInvert);
-        return new Graphviz(graph, src, rasterizer, processOptions, opts, processors, messageConsumer);
+        return new Graphviz(graph, src, rasterizer, processOptions, opts, processors,
+                messageConsumer, validationMode, incremental);
     }
 
     public Graphviz basedir(File basedir) {
         final Options opts = options.basedir(basedir);
-        return new Graphviz(graph, src, rasterizer, processOptions, opts, processors, messageConsumer);
+        return new Graphviz(graph, src, rasterizer, processOptions, opts, processors,
+                messageConsumer, validationMode, incremental);
     }
 
     public Graphviz width(int width) {
-        return new Graphviz(graph, src, rasterizer, processOptions.width(width), options, processors, messageConsumer);
+        return new Graphviz(graph, src, rasterizer, processOptions.width(width), options, processors,
+                messageConsumer, validationMode, incremental);
     }
 
     public Graphviz height(int height) {
-        return new Graphviz(
-                graph, src, rasterizer, processOptions.height(height), options, processors, messageConsumer);
+        return new Graphviz(graph, src, rasterizer, processOptions.height(height), options, processors,
+                messageConsumer, validationMode, incremental);
     }
 
     public Graphviz scale(double scale) {
-        return new Graphviz(graph, src, rasterizer, processOptions.scale(scale), options, processors, messageConsumer);
+        return new Graphviz(graph, src, rasterizer, processOptions.scale(scale), options, processors,
+                messageConsumer, validationMode, incremental);
     }
 
     public Graphviz preProcessor(GraphvizPreProcessor preProcessor) {
@@ -258,15 +270,41 @@ public final class Graphviz {
     public Graphviz processor(GraphvizProcessor processor) {
         final ArrayList<GraphvizProcessor> ps = new ArrayList<>(processors);
         ps.add(processor);
-        return new Graphviz(graph, src, rasterizer, processOptions, options, ps, messageConsumer);
+        return new Graphviz(graph, src, rasterizer, processOptions, options, ps,
+                messageConsumer, validationMode, incremental);
     }
 
     public Graphviz notValidating() {
-        return new Graphviz(graph, src, rasterizer, processOptions, options, processors, null);
+        return new Graphviz(graph, src, rasterizer, processOptions, options, processors,
+                null, validationMode, incremental);
     }
 
     public Graphviz validating(Consumer<ValidatorMessage> messageConsumer) {
-        return new Graphviz(graph, src, rasterizer, processOptions, options, processors, messageConsumer);
+        return validating(ValidationMode.SYNC, messageConsumer);
+    }
+
+    /**
+     * Validate the graph using the given mode.
+     * With an asynchronous mode, the attributes are collected while serializing
+     * and validated afterwards in another thread, which also calls the message consumer.
+     *
+     * @param mode            when and how often to validate
+     * @param messageConsumer the consumer of the validation messages
+     * @return a Graphviz validating in the given mode
+     */
+    public Graphviz validating(ValidationMode mode, Consumer<ValidatorMessage> messageConsumer) {
+        return new Graphviz(graph, src, rasterizer, processOptions, options, processors,
+                messageConsumer, mode, incremental);
+    }
+
+    /**
+     * Serialize the graph incrementally, see {@link Serializer#incremental()}.
+     *
+     * @return a Graphviz serializing incrementally
+     */
+    public Graphviz incremental() {
+        return new Graphviz(graph, src, rasterizer, processOptions, options, processors,
+                messageConsumer, validationMode, true);
     }
 
     public Renderer rasterize(Rasterizer rasterizer) {
@@ -276,20 +314,36 @@ public final class Graphviz {
                     + " 'org.apache.xmlgraphics:batik-rasterizer' is available on the classpath.");
         }
         final Options opts = options.format(rasterizer.format());
-        final Graphviz g = new Graphviz(graph, src, rasterizer, processOptions, opts, processors, messageConsumer);
+        final Graphviz g = new Graphviz(graph, src, rasterizer, processOptions, opts, processors,
+                messageConsumer, validationMode, incremental);
         return new Renderer(g, Format.PNG);
     }
 
     public Renderer render(Format format) {
         final Options opts = options.format(format);
-        final Graphviz g = new Graphviz(graph, src, rasterizer, processOptions, opts, processors, messageConsumer);
+        final Graphviz g = new Graphviz(graph, src, rasterizer, processOptions, opts, processors,
+                messageConsumer, validationMode, incremental);
         return new Renderer(g, format);
     }
 
     EngineResult execute() {
+        if (src == null && options.format != Format.DOT
+                && processors.stream().allMatch(GraphvizProcessor::isLineLocal)) {
+            return executeStreaming();
+        }
         final String source = src == null ? serializer().serialize(graph) : src;
-        final ProcessOptions processOpts = processOptions.dpi(dpi(source));
-        return new Graphviz(graph, source, rasterizer, processOpts, options, processors, messageConsumer).doExecute();
+        final ProcessOptions processOpts = processOptions.dpi(src == null ? dpi(graph) : dpi(source));
+        return new Graphviz(graph, source, rasterizer, processOpts, options, processors,
+                messageConsumer, validationMode, incremental).doExecute();
+    }
+
+    private EngineResult executeStreaming() {
+        final Serializer serializer = serializer();
+        final Graphviz g = new Graphviz(graph, null, rasterizer, processOptions.dpi(dpi(graph)), options, processors,
+                messageConsumer, validationMode, incremental);
+        final EngineResult result = getEngine().execute(out -> serializer.serialize(graph,
+                new MappingAppendable(out, g::applyPreProcessors)), options, rasterizer);
+        return g.applyPostProcessors(result);
     }
 
     private Serializer serializer() {
@@ -298,7 +352,16 @@ public final class Graphviz {
                 //TODO can we parse the builtInRasterizer for the correct format?
                 //TODO refactor all instanceof BuiltInRasterizer
                 .forFormat(rasterizer instanceof BuiltInRasterizer ? UNKNOWN_FORMAT : options.format.forValidator());
-        return messageConsumer == null ? serializer : serializer.validating(messageConsumer);
+        final Serializer incrementalSerializer = incremental ? serializer.incremental() : serializer;
+        return messageConsumer == null
+                ? incrementalSerializer
+                : incrementalSerializer.validating(validationMode, messageConsumer);
+    }
+
+    //known before the graph is serialized, so streamed and whole sources are processed with the same options
+    private static double dpi(MutableGraph graph) {
+        final Object dpi = graph.graphAttrs().get("dpi");
+        return dpi == null ? 72 : dpi("dpi=" + dpi);
     }
 
     private static double dpi(String src) {
@@ -320,11 +383,27 @@ public final class Graphviz {
         return src;
     }
 
+    //consecutive SVG post processors are fused into one pass over the SVG
     private EngineResult applyPostProcessors(EngineResult result) {
         EngineResult res = result;
+        final List<SvgPostProcessor> svgProcessors = new ArrayList<>();
         for (final GraphvizProcessor proc : processors) {
-            res = proc.postProcess(res, options, processOptions);
+            if (proc instanceof SvgPostProcessor) {
+                svgProcessors.add((SvgPostProcessor) proc);
+            } else {
+                res = applySvgPostProcessors(res, svgProcessors);
+                res = proc.postProcess(res, options, processOptions);
+            }
+        }
+        return applySvgPostProcessors(res, svgProcessors);
+    }
+
+    private EngineResult applySvgPostProcessors(EngineResult result, List<SvgPostProcessor> svgProcessors) {
+        if (svgProcessors.isEmpty()) {
+            return result;
         }
+        final EngineResult res = SvgPipeline.apply(svgProcessors, result, options, processOptions);
+        svgProcessors.clear();
         return res;
     }
 
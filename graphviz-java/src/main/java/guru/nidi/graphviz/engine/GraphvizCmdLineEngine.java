@@ -115,12 +115,18 @@ public class GraphvizCmdLineEngine extends AbstractGraphvizEngine {
 
     @Override
     public EngineResult execute(String src, Options options, Rasterizer rasterizer) {
+        return execute(out -> out.append(src), options, rasterizer);
+    }
+
+    @Override
+    public EngineResult execute(DotSource src, Options options, Rasterizer rasterizer) {
         try {
             final Path path = tempDir("DotEngine");
             final File dotFile = getDotFile(path);
             try (final BufferedWriter bw = new BufferedWriter(
                     new OutputStreamWriter(new FileOutputStream(dotFile), StandardCharsets.UTF_8))) {
-                bw.write(preprocessCode(src, options));
+                //the image patterns never span multiple lines, so every chunk can be preprocessed on its own
+                src.writeTo(new MappingAppendable(bw, chunk -> preprocessCode(chunk, options)));
             }
             return doExecute(path, dotFile, options, rasterizer);
         } catch (IOException | InterruptedException e) {
@@ -25,4 +25,12 @@ public interface GraphvizEngine extends AutoCloseable {
     void init(Consumer<GraphvizEngine> onOk, Consumer<GraphvizEngine> onError);
 
     EngineResult execute(String src, Options options, Rasterizer rasterizer);
+
+    /**
+     * Process a dot source that is written incrementally.
+     * Engines that can consume the source without holding all of it in memory should override this.
+     */
+    default EngineResult execute(DotSource src, Options options, Rasterizer rasterizer) {
+        return execute(src.asString(), options, rasterizer);
+    }
 }
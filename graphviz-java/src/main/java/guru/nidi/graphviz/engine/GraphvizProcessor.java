@@ -19,4 +19,14 @@ public interface GraphvizProcessor {
     String preProcess(String source, Options options, ProcessOptions processOptions);
 
     EngineResult postProcess(EngineResult result, Options options, ProcessOptions processOptions);
+
+    /**
+     * If the dot source is not needed as a whole, it is streamed to the engine in chunks of complete lines.
+     * This is only possible if all processors return true here.
+     *
+     * @return true if {@link #preProcess} never looks beyond a single line, false by default
+     */
+    default boolean isLineLocal() {
+        return false;
+    }
 }
@@ -22,4 +22,9 @@ class InvalidCharsRemover implements GraphvizPreProcessor {
     public String preProcess(String source, Options options, ProcessOptions processOptions) {
         return replaceSubSpaces(source);
     }
+
+    @Override
+    public boolean isLineLocal() {
+        return true;
+    }
 }
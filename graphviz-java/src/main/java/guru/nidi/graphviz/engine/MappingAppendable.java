@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+class MappingAppendable implements Appendable {
+    private final Appendable out;
+    private final Function<String, String> mapper;
+
+    MappingAppendable(Appendable out, Function<String, String> mapper) {
+        this.out = out;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        out.append(mapper.apply(csq.toString()));
+        return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        return append(csq.subSequence(start, end));
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        return append(String.valueOf(c));
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.*;
+
+/**
+ * Writes an RGBA PNG row by row, so the whole image never has to be in memory.
+ */
+final class PngEncoder implements Closeable {
+    static final int COLOR_INDEXED = 3;
+    static final int COLOR_RGBA = 6;
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final PngWriter.Filter filter;
+    private byte[] raw;
+    private byte[] prev;
+    private final byte[][] filtered;
+    private final ChunkStream chunks;
+    private final DeflaterOutputStream data;
+    private final Deflater deflater;
+    private int rows;
+
+    PngEncoder(OutputStream out, int width, int height) throws IOException {
+        this(out, width, height, Deflater.DEFAULT_COMPRESSION, PngWriter.Filter.SUB);
+    }
+
+    PngEncoder(OutputStream out, int width, int height, int level, PngWriter.Filter filter) throws IOException {
+        header(out, width, height, COLOR_RGBA);
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.filter = filter;
+        raw = new byte[4 * width];
+        prev = new byte[4 * width];
+        filtered = buffers(4 * width);
+        chunks = new ChunkStream(out);
+        deflater = new Deflater(level);
+        data = new DeflaterOutputStream(chunks, deflater, CHUNK_SIZE);
+    }
+
+    /**
+     * Writes the signature and the header chunk.
+     */
+    static void header(OutputStream out, int width, int height, int colorType) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive, but is " + width + "x" + height + ".");
+        }
+        out.write(SIGNATURE);
+        final ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        final DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt(height);
+        h.writeByte(8); //bit depth
+        h.writeByte(colorType);
+        h.writeByte(0); //compression
+        h.writeByte(0); //filter
+        h.writeByte(0); //interlace
+        chunk(out, "IHDR", header.toByteArray(), header.size());
+    }
+
+    /**
+     * @param image  the image to read from
+     * @param y      the row to read
+     * @param row    the array to read into
+     * @param offset the position in the array of the first pixel
+     * @param width  the number of pixels to read
+     * @return the array
+     */
+    static int[] pixels(BufferedImage image, int y, int[] row, int offset, int width) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            System.arraycopy(image.getRaster().getDataElements(0, y, width, 1, null), 0, row, offset, width);
+        } else {
+            image.getRGB(0, y, width, 1, row, offset, width);
+        }
+        return row;
+    }
+
+    static void rgba(int[] argb, int offset, int width, byte[] raw) {
+        for (int i = 0, p = 0; i < width; i++, p += 4) {
+            final int pixel = argb[offset + i];
+            raw[p] = (byte) (pixel >>> 16);
+            raw[p + 1] = (byte) (pixel >>> 8);
+            raw[p + 2] = (byte) pixel;
+            raw[p + 3] = (byte) (pixel >>> 24);
+        }
+    }
+
+    /**
+     * @param rowBytes the length of an unfiltered row
+     * @return one buffer per filter type, to be used by {@link #filter}
+     */
+    static byte[][] buffers(int rowBytes) {
+        final byte[][] buffers = new byte[5][1 + rowBytes];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i][0] = (byte) i;
+        }
+        return buffers;
+    }
+
+    /**
+     * @param filter  the filter to apply
+     * @param raw     the unfiltered row
+     * @param prev    the unfiltered previous row, all zero for the first row
+     * @param buffers the buffers created by {@link #buffers}
+     * @param bpp     the number of bytes per pixel
+     * @return the filtered row, starting with the filter type
+     */
+    static byte[] filter(PngWriter.Filter filter, byte[] raw, byte[] prev, byte[][] buffers, int bpp) {
+        if (filter != PngWriter.Filter.ADAPTIVE) {
+            final byte[] res = buffers[filter.ordinal()];
+            filter(filter.ordinal(), raw, prev, res, bpp);
+            return res;
+        }
+        //the usual heuristic: take the filter with the smallest sum of absolute values
+        byte[] best = null;
+        long bestSum = Long.MAX_VALUE;
+        for (int type = 0; type < buffers.length; type++) {
+            final long sum = filter(type, raw, prev, buffers[type], bpp);
+            if (sum < bestSum) {
+                best = buffers[type];
+                bestSum = sum;
+            }
+        }
+        return best;
+    }
+
+    private static long filter(int type, byte[] raw, byte[] prev, byte[] res, int bpp) {
+        long sum = 0;
+        for (int i = 0; i < raw.length; i++) {
+            final int x = raw[i] & 0xff;
+            final int a = i < bpp ? 0 : raw[i - bpp] & 0xff;
+            final int b = prev[i] & 0xff;
+            final int value;
+            switch (type) {
+                case 1:
+                    value = x - a;
+                    break;
+                case 2:
+                    value = x - b;
+                    break;
+                case 3:
+                    value = x - ((a + b) >>> 1);
+                    break;
+                case 4:
+                    value = x - paeth(a, b, i < bpp ? 0 : prev[i - bpp] & 0xff);
+                    break;
+                default:
+                    value = x;
+            }
+            res[i + 1] = (byte) value;
+            sum += Math.abs((byte) value);
+        }
+        return sum;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+        return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+    }
+
+    /**
+     * @param argb   the pixels, in the format of {@link java.awt.image.BufferedImage#TYPE_INT_ARGB}
+     * @param offset the position of the first pixel of the row
+     * @throws IOException if the row cannot be written
+     */
+    void writeRow(int[] argb, int offset) throws IOException {
+        if (rows == height) {
+            throw new IllegalStateException("All " + height + " rows have already been written.");
+        }
+        rgba(argb, offset, width, raw);
+        data.write(filter(filter, raw, prev, filtered, 4));
+        final byte[] temp = prev;
+        prev = raw;
+        raw = temp;
+        rows++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows < height) {
+                throw new IllegalStateException("Only " + rows + " of " + height + " rows have been written.");
+            }
+            data.finish();
+            chunks.flush();
+            chunk(out, "IEND", new byte[0], 0);
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static void chunk(OutputStream out, String type, byte[] content, int len) throws IOException {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(content, 0, len);
+        final DataOutputStream d = new DataOutputStream(out);
+        d.writeInt(len);
+        d.write(typeBytes);
+        d.write(content, 0, len);
+        d.writeInt((int) crc.getValue());
+    }
+
+    //collects the compressed data into IDAT chunks
+    static final class ChunkStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buf = new byte[CHUNK_SIZE];
+        private int len;
+
+        ChunkStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            buf[len++] = (byte) b;
+            if (len == buf.length) {
+                flush();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int l) throws IOException {
+            int o = off;
+            int rest = l;
+            while (rest > 0) {
+                final int n = Math.min(rest, buf.length - len);
+                System.arraycopy(b, o, buf, len, n);
+                len += n;
+                o += n;
+                rest -= n;
+                if (len == buf.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (len > 0) {
+                chunk(out, "IDAT", buf, len);
+                len = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
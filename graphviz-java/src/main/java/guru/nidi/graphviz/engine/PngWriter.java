@@ -0,0 +1,397 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import javax.annotation.Nullable;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.*;
+
+import static guru.nidi.graphviz.engine.PngEncoder.*;
+
+/**
+ * Writes images as PNG.
+ * The image is split into stripes of rows which are filtered and compressed in parallel.
+ * <pre>
+ * Graphviz.fromGraph(g).render(Format.PNG)
+ *     .withPngWriter(PngWriter.DEFAULT.compression(9).palette(true))
+ *     .toFile(new File("graph.png"));
+ * </pre>
+ */
+public final class PngWriter {
+    public static final PngWriter DEFAULT = new PngWriter(Deflater.DEFAULT_COMPRESSION, Filter.ADAPTIVE, false, null);
+    private static final int STRIPE_SIZE = 1 << 18;
+    private static final int MAX_COLORS = 256;
+    private static final int ADLER_BASE = 65521;
+
+    /**
+     * The filter applied to each row before compression.
+     */
+    public enum Filter {
+        NONE, SUB, UP, AVERAGE, PAETH,
+        /**
+         * Choose the best filter for each row. Slower, but usually gives the smallest files.
+         */
+        ADAPTIVE
+    }
+
+    private final int compression;
+    private final Filter filter;
+    private final boolean palette;
+    @Nullable
+    private final Executor executor;
+
+    private PngWriter(int compression, Filter filter, boolean palette, @Nullable Executor executor) {
+        this.compression = compression;
+        this.filter = filter;
+        this.palette = palette;
+        this.executor = executor;
+    }
+
+    /**
+     * @param compression the compression level from 0 (none, fastest) to 9 (best, slowest) or -1 for the default
+     * @return a new writer
+     */
+    public PngWriter compression(int compression) {
+        if (compression < Deflater.DEFAULT_COMPRESSION || compression > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9, but is "
+                    + compression + ".");
+        }
+        return new PngWriter(compression, filter, palette, executor);
+    }
+
+    public PngWriter filter(Filter filter) {
+        return new PngWriter(compression, filter, palette, executor);
+    }
+
+    /**
+     * @param palette if the image should be written with a palette of at most 256 colors.
+     *                This gives much smaller files, but is lossy if the image contains more colors.
+     *                It is ignored by {@link Renderer#toTiledFile(File, int)}.
+     * @return a new writer
+     */
+    public PngWriter palette(boolean palette) {
+        return new PngWriter(compression, filter, palette, executor);
+    }
+
+    /**
+     * @param executor the executor to compress the stripes on, the default is the common fork join pool
+     * @return a new writer
+     */
+    public PngWriter executor(Executor executor) {
+        return new PngWriter(compression, filter, palette, executor);
+    }
+
+    public void write(BufferedImage image, OutputStream out) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final Palette pal = palette ? Palette.of(image) : null;
+        header(out, width, height, pal == null ? COLOR_RGBA : COLOR_INDEXED);
+        if (pal != null) {
+            pal.write(out);
+        }
+        final int rowBytes = pal == null ? 4 * width : width;
+        final int stripeRows = Math.max(1, STRIPE_SIZE / (rowBytes + 1));
+        final List<CompletableFuture<Stripe>> stripes = new ArrayList<>();
+        for (int y = 0; y < height; y += stripeRows) {
+            final int from = y;
+            final int to = Math.min(height, y + stripeRows);
+            stripes.add(stripeRows >= height
+                    ? CompletableFuture.completedFuture(stripe(image, pal, from, to))
+                    : CompletableFuture.supplyAsync(() -> stripe(image, pal, from, to),
+                    executor == null ? ForkJoinPool.commonPool() : executor));
+        }
+        try (final ChunkStream data = new ChunkStream(out)) {
+            data.write(0x78); //zlib header: deflate with 32K window
+            data.write(0x9c);
+            long adler = 1;
+            for (final CompletableFuture<Stripe> future : stripes) {
+                final Stripe stripe = ComponentSplitter.join(future);
+                data.write(stripe.data.toByteArray());
+                adler = combineAdler(adler, stripe.adler, stripe.length);
+            }
+            new DataOutputStream(data).writeInt((int) adler);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        chunk(out, "IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    PngEncoder encoder(OutputStream out, int width, int height) throws IOException {
+        return new PngEncoder(out, width, height, compression, filter);
+    }
+
+    //Every stripe is a raw deflate stream that ends with a sync flush, only the last one is finished.
+    //Concatenated, they form one valid zlib stream.
+    private Stripe stripe(BufferedImage image, @Nullable Palette pal, int from, int to) {
+        final int width = image.getWidth();
+        final int bpp = pal == null ? 4 : 1;
+        final int[] pixels = new int[width];
+        byte[] raw = new byte[width * bpp];
+        byte[] prev = new byte[width * bpp];
+        if (from > 0) {
+            row(image, pal, from - 1, pixels, prev);
+        }
+        final byte[][] buffers = buffers(raw.length);
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final Adler32 adler = new Adler32();
+        final Deflater deflater = new Deflater(compression, true);
+        //not closed, as this would finish the stream
+        final DeflaterOutputStream out = new DeflaterOutputStream(data, deflater, 1 << 16, true);
+        try {
+            for (int y = from; y < to; y++) {
+                row(image, pal, y, pixels, raw);
+                final byte[] filtered = PngEncoder.filter(filter, raw, prev, buffers, bpp);
+                adler.update(filtered);
+                out.write(filtered);
+                final byte[] temp = prev;
+                prev = raw;
+                raw = temp;
+            }
+            if (to == image.getHeight()) {
+                out.finish();
+            } else {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return new Stripe(data, adler.getValue(), (long) (to - from) * (raw.length + 1));
+    }
+
+    private static void row(BufferedImage image, @Nullable Palette pal, int y, int[] pixels, byte[] raw) {
+        pixels(image, y, pixels, 0, pixels.length);
+        if (pal == null) {
+            rgba(pixels, 0, pixels.length, raw);
+        } else {
+            pal.indices(pixels, raw);
+        }
+    }
+
+    //the adler32 checksum of two concatenated blocks, like zlib's adler32_combine
+    static long combineAdler(long adler1, long adler2, long len2) {
+        final long rem = len2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= ADLER_BASE << 1;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static final class Stripe {
+        final ByteArrayOutputStream data;
+        final long adler;
+        final long length;
+
+        Stripe(ByteArrayOutputStream data, long adler, long length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The colors of an image, reduced by median cut if there are more than 256.
+     */
+    static final class Palette {
+        private final int[] colors;
+        private final Map<Integer, Integer> indices;
+
+        private Palette(int[] colors, Map<Integer, Integer> indices) {
+            this.colors = colors;
+            this.indices = indices;
+        }
+
+        static Palette of(BufferedImage image) {
+            final Map<Integer, int[]> counts = new HashMap<>();
+            final int[] pixels = new int[image.getWidth()];
+            for (int y = 0; y < image.getHeight(); y++) {
+                pixels(image, y, pixels, 0, pixels.length);
+                int last = 0;
+                int[] count = null;
+                for (final int pixel : pixels) {
+                    final int p = visible(pixel);
+                    if (count == null || p != last) {
+                        count = counts.computeIfAbsent(p, k -> new int[1]);
+                        last = p;
+                    }
+                    count[0]++;
+                }
+            }
+            final int[] colors = new int[counts.size()];
+            final int[] weights = new int[counts.size()];
+            int i = 0;
+            for (final Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+                colors[i] = entry.getKey();
+                weights[i] = entry.getValue()[0];
+                i++;
+            }
+            return of(colors, weights);
+        }
+
+        static Palette of(int[] colors, int[] weights) {
+            //a box is a range of colors with the channel of the biggest difference: from, to, shift, difference
+            final List<int[]> boxes = new ArrayList<>();
+            boxes.add(box(colors, 0, colors.length));
+            while (boxes.size() < MAX_COLORS) {
+                int widest = 0;
+                for (int b = 1; b < boxes.size(); b++) {
+                    if (boxes.get(b)[3] > boxes.get(widest)[3]) {
+                        widest = b;
+                    }
+                }
+                final int[] box = boxes.get(widest);
+                if (box[3] == 0) {
+                    break;
+                }
+                final int median = sortAndSplit(colors, weights, box);
+                boxes.set(widest, box(colors, box[0], median));
+                boxes.add(box(colors, median, box[1]));
+            }
+            final int[] palette = new int[boxes.size()];
+            final Map<Integer, Integer> indices = new HashMap<>();
+            for (int b = 0; b < boxes.size(); b++) {
+                final int[] box = boxes.get(b);
+                palette[b] = average(colors, weights, box);
+                for (int i = box[0]; i < box[1]; i++) {
+                    indices.put(colors[i], b);
+                }
+            }
+            return new Palette(palette, indices);
+        }
+
+        //fully transparent pixels all look the same
+        private static int visible(int argb) {
+            return (argb >>> 24) == 0 ? 0 : argb;
+        }
+
+        private static int[] box(int[] colors, int from, int to) {
+            final int[] box = {from, to, 0, 0};
+            for (int shift = 0; shift < 32; shift += 8) {
+                int min = 255;
+                int max = 0;
+                for (int i = from; i < to; i++) {
+                    final int c = (colors[i] >>> shift) & 0xff;
+                    min = Math.min(min, c);
+                    max = Math.max(max, c);
+                }
+                if (max - min > box[3]) {
+                    box[2] = shift;
+                    box[3] = max - min;
+                }
+            }
+            return box;
+        }
+
+        //sorts the box by its channel and returns the index that splits it into two halves of the same weight
+        private static int sortAndSplit(int[] colors, int[] weights, int[] box) {
+            final int[] c = Arrays.copyOfRange(colors, box[0], box[1]);
+            final int[] w = Arrays.copyOfRange(weights, box[0], box[1]);
+            final long[] entries = new long[c.length];
+            long total = 0;
+            for (int i = 0; i < c.length; i++) {
+                entries[i] = ((long) ((c[i] >>> box[2]) & 0xff) << 32) | i;
+                total += w[i];
+            }
+            Arrays.sort(entries);
+            for (int i = 0; i < entries.length; i++) {
+                colors[box[0] + i] = c[(int) entries[i]];
+                weights[box[0] + i] = w[(int) entries[i]];
+            }
+            long sum = 0;
+            for (int i = box[0]; i < box[1] - 1; i++) {
+                sum += weights[i];
+                if (2 * sum >= total) {
+                    return i + 1;
+                }
+            }
+            return box[1] - 1;
+        }
+
+        private static int average(int[] colors, int[] weights, int[] box) {
+            int res = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                long sum = 0;
+                long total = 0;
+                for (int i = box[0]; i < box[1]; i++) {
+                    sum += (long) ((colors[i] >>> shift) & 0xff) * weights[i];
+                    total += weights[i];
+                }
+                res |= (int) ((sum + total / 2) / total) << shift;
+            }
+            return res;
+        }
+
+        int size() {
+            return colors.length;
+        }
+
+        int color(int index) {
+            return colors[index];
+        }
+
+        void indices(int[] pixels, byte[] raw) {
+            int last = 0;
+            int index = -1;
+            for (int i = 0; i < pixels.length; i++) {
+                final int p = visible(pixels[i]);
+                if (index < 0 || p != last) {
+                    index = indices.get(p);
+                    last = p;
+                }
+                raw[i] = (byte) index;
+            }
+        }
+
+        void write(OutputStream out) throws IOException {
+            final byte[] plte = new byte[3 * colors.length];
+            final byte[] trns = new byte[colors.length];
+            int trnsLen = 0;
+            for (int i = 0; i < colors.length; i++) {
+                plte[3 * i] = (byte) (colors[i] >>> 16);
+                plte[3 * i + 1] = (byte) (colors[i] >>> 8);
+                plte[3 * i + 2] = (byte) colors[i];
+                trns[i] = (byte) (colors[i] >>> 24);
+                if ((colors[i] >>> 24) != 0xff) {
+                    trnsLen = i + 1;
+                }
+            }
+            chunk(out, "PLTE", plte, plte.length);
+            if (trnsLen > 0) {
+                chunk(out, "tRNS", trns, trnsLen);
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 
 import static guru.nidi.graphviz.engine.Rasterizer.NONE;
@@ -33,19 +34,34 @@ public class Renderer {
     private final Graphviz graphviz;
     private final Consumer<Graphics2D> graphicsConfigurer;
     private final Format output;
+    private final PngWriter pngWriter;
 
     Renderer(Graphviz graphviz, Format output) {
         this(graphviz, NOP_GRAPHICS_CONFIGURER, output);
     }
 
     Renderer(Graphviz graphviz, Consumer<Graphics2D> graphicsConfigurer, Format output) {
+        this(graphviz, graphicsConfigurer, output, PngWriter.DEFAULT);
+    }
+
+    private Renderer(Graphviz graphviz, Consumer<Graphics2D> graphicsConfigurer, Format output,
+                     PngWriter pngWriter) {
         this.graphviz = graphviz;
         this.graphicsConfigurer = graphicsConfigurer;
         this.output = output;
+        this.pngWriter = pngWriter;
     }
 
     public Renderer withGraphics(Consumer<Graphics2D> graphicsConfigurer) {
-        return new Renderer(graphviz, graphicsConfigurer, output);
+        return new Renderer(graphviz, graphicsConfigurer, output, pngWriter);
+    }
+
+    /**
+     * @param pngWriter the compression level, filter and palette mode to write PNG images with
+     * @return a new renderer
+     */
+    public Renderer withPngWriter(PngWriter pngWriter) {
+        return new Renderer(graphviz, graphicsConfigurer, output, pngWriter);
     }
 
     public String toString() {
@@ -106,6 +122,73 @@ public class Renderer {
         return 0;
     }
 
+    /**
+     * Rasterize the graph in tiles and write it as PNG.
+     * Only a few rows of tiles are in memory at the same time,
+     * so this also works for images that are too big for {@link #toImage()}.
+     *
+     * @param file     the file to write to, ".png" is appended if the name has no extension
+     * @param tileSize the width and height of a tile in pixels
+     * @return the written file
+     * @throws IOException if the file cannot be written
+     */
+    public File toTiledFile(File file, int tileSize) throws IOException {
+        final File target = withExt(file, output.fileExtension);
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        try (final OutputStream out = new FileOutputStream(target)) {
+            toTiledOutputStream(out, tileSize);
+        }
+        return target;
+    }
+
+    /**
+     * Rasterize the graph in tiles and write it as PNG, see {@link #toTiledFile(File, int)}.
+     * The tiles are rasterized in parallel on the common fork join pool.
+     *
+     * @param outputStream the stream to write to, it is not closed
+     * @param tileSize     the width and height of a tile in pixels
+     * @throws IOException if the stream cannot be written
+     */
+    public void toTiledOutputStream(OutputStream outputStream, int tileSize) throws IOException {
+        final String svg = tileSvg();
+        final OutputStream out = new BufferedOutputStream(outputStream, 1 << 16);
+        new TiledRasterizer(this::rasterizeTile, tileSize, pngWriter, ForkJoinPool.commonPool()).write(svg, out);
+        out.flush();
+    }
+
+    /**
+     * Write the graph as Deep Zoom image, to be shown by a zoomable viewer like OpenSeadragon.
+     * The image is created in all sizes from 1x1 pixel to full size, each cut into tiles.
+     * Every tile is written as PNG and as SVG showing the same part of the graph.
+     * The graph is laid out only once and the tiles are rasterized in parallel on the common fork join pool.
+     *
+     * @param dir      the directory to write the descriptor "graph.dzi" and the tiles "graph_files" into
+     * @param tileSize the width and height of a tile in pixels
+     * @return the descriptor file
+     * @throws IOException if a file cannot be written
+     */
+    public File toTilePyramid(File dir, int tileSize) throws IOException {
+        final String svg = tileSvg();
+        Files.createDirectories(dir.toPath());
+        return new TilePyramid(this::rasterizeTile, tileSize, pngWriter, ForkJoinPool.commonPool()).write(svg, dir);
+    }
+
+    private String tileSvg() {
+        if (!output.image) {
+            throw new IllegalStateException("Tiles can only be created for image formats, not for " + output + ".");
+        }
+        if (graphviz.rasterizer == NONE || graphviz.rasterizer instanceof BuiltInRasterizer) {
+            throw new IllegalStateException("Tiles can only be created with the Batik or Salamander rasterizer.");
+        }
+        return execute().map(file -> {
+            throw new IllegalStateException("Expected an SVG result, but found a File.");
+        }, string -> string);
+    }
+
+    private BufferedImage rasterizeTile(String tile) {
+        return graphviz.rasterizer.rasterize(graphviz, graphicsConfigurer, tile);
+    }
+
     public BufferedImage toImage() {
         return toImage(execute());
     }
@@ -140,8 +223,8 @@ public class Renderer {
     }
 
     private void writeToFile(File output, String format, BufferedImage img) {
-        try {
-            ImageIO.write(img, format, output);
+        try (final OutputStream out = new FileOutputStream(output)) {
+            write(out, format, img);
         } catch (IOException e) {
             throw new GraphvizException("Problem writing to file", e);
         }
@@ -149,9 +232,19 @@ public class Renderer {
 
     private void writeToOutputStream(OutputStream outputStream, String format, BufferedImage img) {
         try (final OutputStream closing = outputStream) {
-            ImageIO.write(img, format, closing);
+            write(closing, format, img);
         } catch (IOException e) {
             throw new GraphvizException("Problem writing to output stream", e);
         }
     }
+
+    private void write(OutputStream out, String format, BufferedImage img) throws IOException {
+        if ("png".equals(format)) {
+            final OutputStream buffered = new BufferedOutputStream(out, 1 << 16);
+            pngWriter.write(img, buffered);
+            buffered.flush();
+        } else {
+            ImageIO.write(img, format, out);
+        }
+    }
 }
@@ -26,24 +26,27 @@ import java.util.function.Consumer;
 import static java.awt.RenderingHints.*;
 
 class SalamanderRasterizer extends SvgRasterizer {
+    //a universe is not thread safe, but can load many documents one after the other
+    private static final ThreadLocal<SVGUniverse> UNIVERSES = ThreadLocal.withInitial(SVGUniverse::new);
+
     @Override
     public BufferedImage doRasterize(Graphviz graphviz, Consumer<Graphics2D> graphicsConfigurer, String svg) {
-        final SVGDiagram diagram = createDiagram(svg);
-        final BufferedImage image = new BufferedImage(
-                (int) diagram.getWidth(), (int) diagram.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        final Graphics2D graphics = image.createGraphics();
-        configGraphics(graphics);
-        graphicsConfigurer.accept(graphics);
-        renderDiagram(diagram, graphics);
-        return image;
-    }
-
-    private SVGDiagram createDiagram(String svg) {
-        final SVGUniverse universe = new SVGUniverse();
-        final URI uri = universe.loadSVG(new StringReader(svg), "//graph/");
-        final SVGDiagram diagram = universe.getDiagram(uri);
-        diagram.setIgnoringClipHeuristic(true);
-        return diagram;
+        final SVGUniverse universe = UNIVERSES.get();
+        final URI uri = universe.loadSVG(new StringReader(svg), "//graph/", true);
+        try {
+            final SVGDiagram diagram = universe.getDiagram(uri);
+            diagram.setIgnoringClipHeuristic(true);
+            final BufferedImage image = new BufferedImage(
+                    (int) diagram.getWidth(), (int) diagram.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D graphics = image.createGraphics();
+            configGraphics(graphics);
+            graphicsConfigurer.accept(graphics);
+            renderDiagram(diagram, graphics);
+            graphics.dispose();
+            return image;
+        } finally {
+            universe.removeDocument(uri);
+        }
     }
 
     private void renderDiagram(SVGDiagram diagram, Graphics2D graphics) {
@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import guru.nidi.graphviz.model.SpatialIndex;
+import guru.nidi.graphviz.model.SvgElementFinder;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Removes the nodes, edges and clusters of a rendered graph that are outside of a rectangle,
+ * so the SVG of a small part of a big graph stays small.
+ * The SVG is parsed only once, clipping is done on the text and can be done from multiple threads.
+ * SVGs that don't look like a rendered graph are not clipped.
+ */
+final class SvgClipper {
+    private static final Pattern G_TAG = Pattern.compile("<(/?)g\\b[^>]*>");
+    private static final Pattern CLASS = Pattern.compile("\\bclass=\"([^\"]*)\"");
+    //the size of texts is only estimated by the index
+    private static final double MARGIN = 16;
+
+    private final String svg;
+    private final List<int[]> shapes = new ArrayList<>();
+    private final Map<Element, Integer> ids = new IdentityHashMap<>();
+    @Nullable
+    private final SpatialIndex index;
+
+    /**
+     * @param svg    the SVG
+     * @param width  the width of the whole image in pixels
+     * @param height the height of the whole image in pixels
+     */
+    SvgClipper(String svg, int width, int height) {
+        this.svg = svg;
+        final SvgElementFinder finder = new SvgElementFinder(svg.substring(svg.indexOf("<svg")));
+        index = index(finder, width, height);
+        if (index != null) {
+            findShapes();
+            final NodeList gs = finder.findGraph().getOwnerDocument().getElementsByTagName("g");
+            for (int i = 0; i < gs.getLength(); i++) {
+                final Element g = (Element) gs.item(i);
+                if (isShape(g.getAttribute("class"))) {
+                    ids.put(g, ids.size());
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private static SpatialIndex index(SvgElementFinder finder, int width, int height) {
+        final Element graph = finder.findGraph();
+        if (graph == null || !graph.getOwnerDocument().getDocumentElement().hasAttribute("viewBox")) {
+            return null;
+        }
+        try {
+            return new SpatialIndex(finder, width, height);
+        } catch (IllegalArgumentException e) {
+            //an unexpected transformation
+            return null;
+        }
+    }
+
+    //the start and end of all shape g elements, in document order
+    private void findShapes() {
+        final Deque<int[]> open = new ArrayDeque<>();
+        final Matcher matcher = G_TAG.matcher(svg);
+        while (matcher.find()) {
+            final String tag = matcher.group();
+            if (!matcher.group(1).isEmpty()) {
+                final int[] shape = open.poll();
+                if (shape != null && shape.length > 0) {
+                    shape[1] = matcher.end();
+                }
+            } else {
+                final Matcher cls = CLASS.matcher(tag);
+                final int[] shape = cls.find() && isShape(cls.group(1))
+                        ? new int[]{matcher.start(), matcher.end()} : new int[0];
+                if (shape.length > 0) {
+                    shapes.add(shape);
+                }
+                if (!tag.endsWith("/>")) {
+                    open.push(shape);
+                }
+            }
+        }
+    }
+
+    private static boolean isShape(String cls) {
+        return cls.contains("node") || cls.contains("edge") || cls.contains("cluster");
+    }
+
+    /**
+     * @param x      the x coordinate of the rectangle in pixels
+     * @param y      the y coordinate of the rectangle in pixels
+     * @param width  the width of the rectangle in pixels
+     * @param height the height of the rectangle in pixels
+     * @return the SVG without the shapes that don't intersect the rectangle
+     */
+    String clip(double x, double y, double width, double height) {
+        if (index == null || ids.size() != shapes.size()) {
+            return svg;
+        }
+        final BitSet keep = new BitSet(shapes.size());
+        for (final Element e : index.in(x - MARGIN, y - MARGIN, width + 2 * MARGIN, height + 2 * MARGIN)) {
+            keep.set(ids.get(e));
+        }
+        final StringBuilder s = new StringBuilder();
+        int pos = 0;
+        for (int i = 0; i < shapes.size(); i++) {
+            final int[] shape = shapes.get(i);
+            //shapes inside an already removed shape are gone anyway
+            if (!keep.get(i) && shape[0] >= pos) {
+                s.append(svg, pos, shape[0]);
+                pos = shape[1];
+            }
+        }
+        return s.append(svg, pos, svg.length()).toString();
+    }
+}
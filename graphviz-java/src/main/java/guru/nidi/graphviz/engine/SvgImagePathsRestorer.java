@@ -15,19 +15,28 @@
  */
 package guru.nidi.graphviz.engine;
 
+import javax.annotation.Nullable;
 import java.util.regex.Pattern;
 
 import static guru.nidi.graphviz.engine.Format.*;
 import static guru.nidi.graphviz.engine.StringFunctions.replaceRegex;
 
-class SvgImagePathsRestorer implements GraphvizPostProcessor {
+class SvgImagePathsRestorer implements SvgPostProcessor {
     private static final Pattern LINK_PATTERN = Pattern.compile("xlink:href=\"(.+?)\"");
 
+    @Nullable
     @Override
-    public EngineResult postProcess(EngineResult result, Options options, ProcessOptions processOptions) {
-        if (options.format != SVG && options.format != SVG_STANDALONE) {
-            return result;
+    public SvgTransformer transformer(Options options, ProcessOptions processOptions) {
+        if ((options.format != SVG && options.format != SVG_STANDALONE) || options.images.isEmpty()) {
+            return null;
         }
-        return result.mapString(svg -> replaceRegex(svg, LINK_PATTERN, options::originalImagePath));
+        return (name, tag) -> tag.contains("xlink:href=")
+                ? replaceRegex(tag, LINK_PATTERN, options::originalImagePath)
+                : tag;
+    }
+
+    @Override
+    public boolean isLineLocal() {
+        return true;
     }
 }
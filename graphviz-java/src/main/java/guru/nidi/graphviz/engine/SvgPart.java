@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import javax.annotation.Nullable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Locale.ENGLISH;
+
+/**
+ * The svg element of a rendered graph, to be nested into another SVG.
+ */
+final class SvgPart {
+    private static final Pattern SVG_TAG = Pattern.compile("<svg\\b[^>]*>");
+    private static final Pattern WIDTH = Pattern.compile("\\bwidth=\"([0-9.]+)(p[tx])?\"");
+    private static final Pattern HEIGHT = Pattern.compile("\\bheight=\"([0-9.]+)(p[tx])?\"");
+    private static final Pattern VIEW_BOX = Pattern.compile(
+            "\\bviewBox=\"([-0-9.]+)[ ,]+([-0-9.]+)[ ,]+([0-9.]+)[ ,]+([0-9.]+)\"");
+    private static final Pattern REFERENCE = Pattern.compile("(\\bid=\"|url\\(#|href=\"#)");
+    private static final double PX_PER_PT = 4 / 3d;
+
+    private final String element;
+    private final String tag;
+    private final String name;
+
+    private SvgPart(String element, String tag, String name) {
+        this.element = element;
+        this.tag = tag;
+        this.name = name;
+    }
+
+    /**
+     * @param svg  the rendered SVG, possibly with XML declaration and doctype
+     * @param name the name of the part used in error messages
+     * @return the part
+     */
+    static SvgPart of(String svg, String name) {
+        final int start = svg.indexOf("<svg");
+        final int end = svg.lastIndexOf("</svg>");
+        if (start < 0 || end < 0) {
+            throw new GraphvizException(name + " is not an SVG.");
+        }
+        final String element = svg.substring(start, end + 6);
+        final Matcher tag = SVG_TAG.matcher(element);
+        if (!tag.lookingAt()) {
+            throw new GraphvizException(name + " is not an SVG.");
+        }
+        return new SvgPart(element, tag.group(), name);
+    }
+
+    double width() {
+        return pixels(WIDTH);
+    }
+
+    double height() {
+        return pixels(HEIGHT);
+    }
+
+    /**
+     * @return the width and height of the graph in points
+     */
+    double[] size() {
+        final double[] viewBox = viewBox();
+        return viewBox == null
+                ? new double[]{width() / PX_PER_PT, height() / PX_PER_PT}
+                : new double[]{viewBox[2], viewBox[3]};
+    }
+
+    /**
+     * @return x, y, width and height of the view box
+     */
+    @Nullable
+    double[] viewBox() {
+        final Matcher matcher = VIEW_BOX.matcher(tag);
+        if (!matcher.find()) {
+            return null;
+        }
+        final double[] viewBox = new double[4];
+        for (int i = 0; i < 4; i++) {
+            viewBox[i] = Double.parseDouble(matcher.group(i + 1));
+        }
+        return viewBox;
+    }
+
+    /**
+     * @param width   the width in pixels
+     * @param height  the height in pixels
+     * @param viewBox x, y, width and height of the view box
+     * @return the svg element showing the given part of the graph in the given size
+     */
+    String viewport(int width, int height, double[] viewBox) {
+        //tiles must fit together exactly, so more precision is needed
+        final String box = String.format(ENGLISH, "viewBox=\"%.4f %.4f %.4f %.4f\"",
+                viewBox[0], viewBox[1], viewBox[2], viewBox[3]);
+        final String sized = HEIGHT.matcher(WIDTH.matcher(tag).replaceFirst("width=\"" + width + "px\""))
+                .replaceFirst("height=\"" + height + "px\"");
+        final Matcher matcher = VIEW_BOX.matcher(sized);
+        final String viewBoxed = matcher.find()
+                ? sized.substring(0, matcher.start()) + box + sized.substring(matcher.end())
+                : sized.substring(0, 4) + " " + box + sized.substring(4);
+        return viewBoxed + element.substring(tag.length());
+    }
+
+    private double pixels(Pattern pattern) {
+        final Matcher matcher = pattern.matcher(tag);
+        if (!matcher.find()) {
+            throw new GraphvizException(name + " has no size.");
+        }
+        final double value = Double.parseDouble(matcher.group(1));
+        return "pt".equals(matcher.group(2)) ? value * PX_PER_PT : value;
+    }
+
+    /**
+     * @param prefix the prefix for all ids, to keep them unique in the outer SVG
+     * @return the svg element
+     */
+    String element(String prefix) {
+        return REFERENCE.matcher(element).replaceAll("$1" + prefix);
+    }
+
+    /**
+     * @param prefix the prefix for all ids, to keep them unique in the outer SVG
+     * @param width  the width in the units of the outer SVG
+     * @param height the height in the units of the outer SVG
+     * @return the svg element scaled to the given size
+     */
+    String element(String prefix, double width, double height) {
+        final String sized = HEIGHT.matcher(WIDTH.matcher(tag).replaceFirst("width=\"" + format(width) + "\""))
+                .replaceFirst("height=\"" + format(height) + "\"");
+        return REFERENCE.matcher(sized + element.substring(tag.length())).replaceAll("$1" + prefix);
+    }
+
+    static String format(double value) {
+        return String.format(ENGLISH, "%.2f", value);
+    }
+}
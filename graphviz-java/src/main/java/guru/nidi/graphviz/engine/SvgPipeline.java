@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies {@link SvgPostProcessor}s in a single pass over the SVG.
+ * Only the tags are looked at and as soon as all transformers are done, the rest is copied as is.
+ */
+final class SvgPipeline {
+    private SvgPipeline() {
+    }
+
+    static EngineResult apply(List<SvgPostProcessor> processors, EngineResult result,
+                              Options options, ProcessOptions processOptions) {
+        final List<SvgTransformer> transformers = new ArrayList<>();
+        for (final SvgPostProcessor processor : processors) {
+            final SvgTransformer transformer = processor.transformer(options, processOptions);
+            if (transformer != null) {
+                transformers.add(transformer);
+            }
+        }
+        return transformers.isEmpty() ? result : result.mapString(svg -> transform(svg, transformers));
+    }
+
+    static String transform(String svg, List<SvgTransformer> transformers) {
+        int pos = 0;
+        int root = -1;
+        while (root < 0 && pos < svg.length()) {
+            final int lt = svg.indexOf('<', pos);
+            if (lt < 0) {
+                return svg;
+            }
+            final int end = markupEnd(svg, lt);
+            if (end < 0) {
+                root = lt;
+            }
+            pos = end;
+        }
+        if (root < 0) {
+            return svg;
+        }
+        final StringBuilder s = new StringBuilder(svg.length() + 64);
+        String prolog = svg.substring(0, root);
+        for (final SvgTransformer transformer : transformers) {
+            prolog = transformer.prolog(prolog);
+        }
+        s.append(prolog);
+        final List<SvgTransformer> active = new ArrayList<>(transformers);
+        pos = root;
+        while (!active.isEmpty()) {
+            final int lt = svg.indexOf('<', pos);
+            if (lt < 0) {
+                break;
+            }
+            final int markup = markupEnd(svg, lt);
+            if (markup >= 0) {
+                s.append(svg, pos, markup);
+                pos = markup;
+            } else {
+                final int end = tagEnd(svg, lt);
+                int nameEnd = lt + 1;
+                while (nameEnd < end && " \t\r\n/>".indexOf(svg.charAt(nameEnd)) < 0) {
+                    nameEnd++;
+                }
+                final String name = svg.substring(lt + 1, nameEnd);
+                String tag = svg.substring(lt, end);
+                for (final SvgTransformer transformer : active) {
+                    tag = transformer.startTag(name, tag);
+                }
+                s.append(svg, pos, lt).append(tag);
+                pos = end;
+                active.removeIf(SvgTransformer::isDone);
+            }
+        }
+        return s.append(svg, pos, svg.length()).toString();
+    }
+
+    //the end of an end tag, comment, CDATA section, processing instruction or doctype, -1 for a start tag
+    private static int markupEnd(String svg, int lt) {
+        if (svg.startsWith("<!--", lt)) {
+            return end(svg, svg.indexOf("-->", lt + 4), 3);
+        }
+        if (svg.startsWith("<![CDATA[", lt)) {
+            return end(svg, svg.indexOf("]]>", lt + 9), 3);
+        }
+        if (svg.startsWith("<?", lt)) {
+            return end(svg, svg.indexOf("?>", lt + 2), 2);
+        }
+        if (svg.startsWith("<!", lt) || svg.startsWith("</", lt)) {
+            return end(svg, svg.indexOf('>', lt + 2), 1);
+        }
+        return -1;
+    }
+
+    private static int tagEnd(String svg, int lt) {
+        char quote = 0;
+        for (int i = lt + 1; i < svg.length(); i++) {
+            final char c = svg.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i + 1;
+            }
+        }
+        return svg.length();
+    }
+
+    private static int end(String svg, int pos, int len) {
+        return pos < 0 ? svg.length() : pos + len;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import javax.annotation.Nullable;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * A post processor that changes the tags of an SVG.
+ * Consecutive SVG post processors are applied together in one pass over the SVG,
+ * so their {@link #postProcess} method is not called then.
+ */
+@FunctionalInterface
+public interface SvgPostProcessor extends GraphvizPostProcessor {
+    /**
+     * @param options        the options of the rendering
+     * @param processOptions the process options of the rendering
+     * @return the transformer for one SVG or null if there is nothing to do
+     */
+    @Nullable
+    SvgTransformer transformer(Options options, ProcessOptions processOptions);
+
+    @Override
+    default EngineResult postProcess(EngineResult result, Options options, ProcessOptions processOptions) {
+        return SvgPipeline.apply(singletonList(this), result, options, processOptions);
+    }
+}
@@ -20,6 +20,9 @@ import java.awt.image.BufferedImage;
 import java.util.function.Consumer;
 
 abstract class SvgRasterizer implements Rasterizer {
+    private static final String HREF = "xlink:href=\"";
+    private static final String STROKE = "stroke=\"";
+
     @Override
     public Format format() {
         return Format.SVG;
@@ -27,17 +30,59 @@ abstract class SvgRasterizer implements Rasterizer {
 
     @Override
     public BufferedImage rasterize(Graphviz graphviz, Consumer<Graphics2D> graphicsConfigurer, String input) {
-        final String svg = input
-                .replace("xlink:href=\"file://", "xlink:href= \"file://")
-                .replace("xlink:href=\"http://", "xlink:href= \"http://")
-                .replace("xlink:href=\"https://", "xlink:href= \"https://")
-                .replace("xlink:href=\"", "xlink:href=\"file://")
-                .replace("stroke=\"transparent\"", "stroke=\"#fff\" stroke-opacity=\"0.0\"")
-                .replace("stroke: transparent", "stroke: #fff; stroke-opacity: 0.0")
-                .replaceAll("stroke=\".*?:.*?\"", "stroke=\"none\"")
-                .replace("fill=\"transparent\"", "fill=\"#fff\" fill-opacity=\"0.0\"")
-                .replace("fill: transparent", "fill: #fff; fill-opacity: 0.0");
-        return doRasterize(graphviz, graphicsConfigurer, svg);
+        return doRasterize(graphviz, graphicsConfigurer, fixSvg(input));
+    }
+
+    /**
+     * Adjust the SVG to what the rasterizers understand, in one pass over the string.
+     * <ul>
+     * <li>relative image references are made absolute file references,
+     * absolute ones get a space so that they are not touched by the rasterizer</li>
+     * <li>transparent strokes and fills are made white with opacity 0</li>
+     * <li>multi colored strokes (containing a ':') are removed</li>
+     * </ul>
+     */
+    static String fixSvg(String svg) {
+        StringBuilder s = null;
+        int copied = 0;
+        int pos = 0;
+        while (pos < svg.length()) {
+            final char c = svg.charAt(pos);
+            int end = -1;
+            String replacement = null;
+            if (c == 'x' && svg.startsWith(HREF, pos)) {
+                end = pos + HREF.length();
+                replacement = svg.startsWith("file://", end) || svg.startsWith("http://", end)
+                        || svg.startsWith("https://", end) ? "xlink:href= \"" : "xlink:href=\"file://";
+            } else if (c == 's' && svg.startsWith(STROKE, pos)) {
+                final int quote = svg.indexOf('"', pos + STROKE.length());
+                final int newline = svg.indexOf('\n', pos + STROKE.length());
+                if (quote >= 0 && (newline < 0 || quote < newline)) {
+                    final String value = svg.substring(pos + STROKE.length(), quote);
+                    end = quote + 1;
+                    replacement = "transparent".equals(value) ? "stroke=\"#fff\" stroke-opacity=\"0.0\""
+                            : value.indexOf(':') >= 0 ? "stroke=\"none\"" : null;
+                }
+            } else if (c == 's' && svg.startsWith("stroke: transparent", pos)) {
+                end = pos + 19;
+                replacement = "stroke: #fff; stroke-opacity: 0.0";
+            } else if (c == 'f' && svg.startsWith("fill=\"transparent\"", pos)) {
+                end = pos + 18;
+                replacement = "fill=\"#fff\" fill-opacity=\"0.0\"";
+            } else if (c == 'f' && svg.startsWith("fill: transparent", pos)) {
+                end = pos + 17;
+                replacement = "fill: #fff; fill-opacity: 0.0";
+            }
+            if (replacement != null) {
+                if (s == null) {
+                    s = new StringBuilder(svg.length() + 256);
+                }
+                s.append(svg, copied, pos).append(replacement);
+                copied = end;
+            }
+            pos = end < 0 ? pos + 1 : end;
+        }
+        return s == null ? svg : s.append(svg, copied, svg.length()).toString();
     }
 
     abstract BufferedImage doRasterize(Graphviz graphviz, Consumer<Graphics2D> graphicsConfigurer, String svg);
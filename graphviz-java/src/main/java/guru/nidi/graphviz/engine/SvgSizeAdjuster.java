@@ -19,45 +19,113 @@ import guru.nidi.graphviz.model.SvgSizeAnalyzer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static guru.nidi.graphviz.engine.Format.*;
 
-class SvgSizeAdjuster implements GraphvizPostProcessor {
+class SvgSizeAdjuster implements SvgPostProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(SvgSizeAdjuster.class);
+    private static final Pattern SVG_SIZE = Pattern.compile(
+            "<svg width=\"(?<width>\\d+)(?<unit>p[tx])\" height=\"(?<height>\\d+)p[tx]\"");
+    private static final String TRANSFORM = "transform=\"";
 
+    @Nullable
     @Override
-    public EngineResult postProcess(EngineResult result, Options options, ProcessOptions procOptions) {
+    public SvgTransformer transformer(Options options, ProcessOptions processOptions) {
         if (options.format != SVG && options.format != SVG_STANDALONE && options.format != PNG) {
-            return result;
+            return null;
         }
-        return result.mapString(s -> doPostProcess(s, procOptions, options.format != SVG_STANDALONE));
+        return new Adjuster(processOptions, options.format != SVG_STANDALONE);
     }
 
-    private String doPostProcess(String result, ProcessOptions procOptions, boolean prefix) {
-        final String unprefixed = prefix ? withoutPrefix(result) : result;
-        return pointsToPixels(unprefixed, procOptions.dpi, procOptions.width, procOptions.height, procOptions.scale);
-
+    @Override
+    public boolean isLineLocal() {
+        return true;
     }
 
-    private static String withoutPrefix(String svg) {
-        final int pos = svg.indexOf("<svg ");
-        return pos < 0 ? svg : svg.substring(pos);
-    }
+    //sets the size of the svg element and the scale of the first transformed g element
+    private static final class Adjuster implements SvgTransformer {
+        private final ProcessOptions procOptions;
+        private final boolean prefix;
+        @Nullable
+        private String unit;
+        private boolean done;
 
-    private static String pointsToPixels(String svg, double dpi, int width, int height, double scale) {
-        try {
-            final SvgSizeAnalyzer analyzer = SvgSizeAnalyzer.svg(svg);
-            setSize(analyzer, width, height, scale);
-            setScale(analyzer, dpi);
-            return analyzer.getSvg();
-        } catch (IllegalArgumentException e) {
-            LOG.warn(e.getMessage());
-            return svg;
+        Adjuster(ProcessOptions procOptions, boolean prefix) {
+            this.procOptions = procOptions;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public String prolog(String prolog) {
+            return prefix ? "" : prolog;
+        }
+
+        @Override
+        public String startTag(String name, String tag) {
+            final String u = unit;
+            if (u == null) {
+                return svg(tag);
+            }
+            if ("g".equals(name)) {
+                return g(tag, u);
+            }
+            return tag;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        private String svg(String tag) {
+            final Matcher matcher = SVG_SIZE.matcher(tag);
+            if (!matcher.lookingAt()) {
+                return fail(tag);
+            }
+            unit = matcher.group("unit");
+            final int[] size = size(Integer.parseInt(matcher.group("width")), Integer.parseInt(matcher.group("height")),
+                    procOptions.width, procOptions.height, procOptions.scale);
+            return "<svg width=\"" + size[0] + "px\" height=\"" + size[1] + "px\"" + tag.substring(matcher.end());
+        }
+
+        private String g(String tag, String unit) {
+            final int start = tag.indexOf(TRANSFORM);
+            if (start < 0) {
+                return tag;
+            }
+            done = true;
+            final int valueStart = start + TRANSFORM.length();
+            final double pixelScale = pixelScale(unit, procOptions.dpi);
+            final int translate = tag.indexOf("translate(", valueStart);
+            if (tag.startsWith("scale(", valueStart) && translate >= 0) {
+                final int end = tag.indexOf(')', translate) + 1;
+                try {
+                    final SvgSizeAnalyzer analyzer = SvgSizeAnalyzer.transform(tag.substring(valueStart, end));
+                    analyzer.setScale(analyzer.getScaleX() / pixelScale, analyzer.getScaleY() / pixelScale);
+                    return tag.substring(0, valueStart) + analyzer.getTransform() + tag.substring(end);
+                } catch (IllegalArgumentException e) {
+                    //not the usual format
+                }
+            }
+            //e.g. negative rotation, scale the whole transformation
+            return pixelScale == 1 ? tag
+                    : tag.substring(0, valueStart) + "scale(" + 1 / pixelScale + " " + 1 / pixelScale + ") "
+                    + tag.substring(valueStart);
+        }
+
+        private String fail(String tag) {
+            LOG.warn("Generated SVG has not the expected format. There might be image size problems.");
+            done = true;
+            return tag;
         }
     }
 
-    private static void setSize(SvgSizeAnalyzer analyzer, int width, int height, double scale) {
-        double w = analyzer.getWidth();
-        double h = analyzer.getHeight();
+    private static int[] size(int svgWidth, int svgHeight, int width, int height, double scale) {
+        double w = svgWidth;
+        double h = svgHeight;
         if (width > 0 && height > 0) {
             w = width;
             h = height;
@@ -68,14 +136,10 @@ class SvgSizeAdjuster implements GraphvizPostProcessor {
             w *= height / h;
             h = height;
         }
-        analyzer.setSize((int) Math.round(w * scale), (int) Math.round(h * scale));
+        return new int[]{(int) Math.round(w * scale), (int) Math.round(h * scale)};
     }
 
-    private static void setScale(SvgSizeAnalyzer analyzer, double dpi) {
-        final double pixelScale = analyzer.getUnit().equals("px") ? 1 : Math.round(10000 * dpi / 72) / 10000d;
-        final double scaleX = analyzer.getScaleX() / pixelScale;
-        final double scaleY = analyzer.getScaleY() / pixelScale;
-        analyzer.setScale(scaleX, scaleY);
+    private static double pixelScale(String unit, double dpi) {
+        return unit.equals("px") ? 1 : Math.round(10000 * dpi / 72) / 10000d;
     }
-
 }
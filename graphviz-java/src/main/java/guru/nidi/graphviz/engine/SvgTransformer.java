@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+/**
+ * Changes the tags of one SVG, see {@link SvgPostProcessor}.
+ */
+public interface SvgTransformer {
+    /**
+     * @param prolog everything before the svg element: XML declaration, doctype and comments
+     * @return the prolog to write
+     */
+    default String prolog(String prolog) {
+        return prolog;
+    }
+
+    /**
+     * @param name the name of the element
+     * @param tag  the complete start tag, from '&lt;' to '&gt;'
+     * @return the tag to write
+     */
+    String startTag(String name, String tag);
+
+    /**
+     * Once all transformers are done, the rest of the SVG is copied without looking at it.
+     *
+     * @return if this transformer will not change any more tags
+     */
+    default boolean isDone() {
+        return false;
+    }
+}
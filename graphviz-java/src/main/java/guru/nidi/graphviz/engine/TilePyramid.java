@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import guru.nidi.graphviz.engine.TiledRasterizer.Viewport;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes a Deep Zoom image (DZI) of an SVG: the image in all sizes from 1x1 pixel to full size,
+ * each size cut into tiles. Every tile is written as PNG and as SVG showing the same part of the graph.
+ * <pre>
+ * dir/graph.dzi
+ * dir/graph_files/0/0_0.png         1x1 pixel
+ * dir/graph_files/0/0_0.svg
+ * ...
+ * dir/graph_files/12/3_2.png        column 3, row 2 in full size
+ * </pre>
+ * The tiles are rasterized independently and in parallel, so only a few tiles are in memory at the same time.
+ * The SVG of a tile only contains the nodes, edges and clusters that are visible in it.
+ */
+final class TilePyramid {
+    static final String NAME = "graph";
+
+    private final Function<String, BufferedImage> rasterizer;
+    private final int tileSize;
+    private final PngWriter png;
+    private final Executor executor;
+
+    /**
+     * @param rasterizer rasterizes an SVG into an image of the size given in the SVG
+     * @param tileSize   the width and height of a tile in pixels
+     * @param png        the writer for the tiles
+     * @param executor   the executor to rasterize the tiles on
+     */
+    TilePyramid(Function<String, BufferedImage> rasterizer, int tileSize, PngWriter png, Executor executor) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive, but is " + tileSize + ".");
+        }
+        this.rasterizer = rasterizer;
+        this.tileSize = tileSize;
+        this.png = png;
+        this.executor = executor;
+    }
+
+    /**
+     * @param svg the SVG
+     * @param dir the directory to write into
+     * @return the DZI descriptor file
+     * @throws IOException if a file cannot be written
+     */
+    File write(String svg, File dir) throws IOException {
+        final SvgPart part = SvgPart.of(svg, "Graph");
+        final int width = (int) Math.round(part.width());
+        final int height = (int) Math.round(part.height());
+        final int maxLevel = levels(width, height) - 1;
+        final Viewport full = new Viewport(part, width, height);
+        final SvgClipper clipper = new SvgClipper(svg, width, height);
+        final List<CompletableFuture<Void>> tiles = new ArrayList<>();
+        for (int level = maxLevel; level >= 0; level--) {
+            final int levelWidth = (int) Math.ceil(width / Math.pow(2, maxLevel - level));
+            final int levelHeight = (int) Math.ceil(height / Math.pow(2, maxLevel - level));
+            final Viewport viewport = new Viewport(part, levelWidth, levelHeight);
+            final File levelDir = new File(dir, NAME + "_files/" + level);
+            Files.createDirectories(levelDir.toPath());
+            for (int row = 0; row * tileSize < levelHeight; row++) {
+                for (int col = 0; col * tileSize < levelWidth; col++) {
+                    final int x = col * tileSize;
+                    final int y = row * tileSize;
+                    final int w = Math.min(tileSize, levelWidth - x);
+                    final int h = Math.min(tileSize, levelHeight - y);
+                    final String name = col + "_" + row;
+                    tiles.add(CompletableFuture.runAsync(() -> writeTile(
+                            tile(clipper, full, viewport.viewBox(x, y, w, h), w, h), levelDir, name), executor));
+                }
+            }
+        }
+        try {
+            for (final CompletableFuture<Void> tile : tiles) {
+                ComponentSplitter.join(tile);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        final File descriptor = new File(dir, NAME + ".dzi");
+        try (final Writer out = new OutputStreamWriter(new FileOutputStream(descriptor), UTF_8)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"png\" Overlap=\"0\""
+                    + " TileSize=\"" + tileSize + "\">\n"
+                    + "<Size Width=\"" + width + "\" Height=\"" + height + "\"/>\n"
+                    + "</Image>\n");
+        }
+        return descriptor;
+    }
+
+    //the level with the full size is the first one where the bigger side is at least 2^level
+    static int levels(int width, int height) {
+        final int size = Math.max(width, height);
+        return 33 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    private static String tile(SvgClipper clipper, Viewport full, double[] viewBox, int width, int height) {
+        final double[] pixels = full.pixels(viewBox);
+        return SvgPart.of(clipper.clip(pixels[0], pixels[1], pixels[2], pixels[3]), "Tile")
+                .viewport(width, height, viewBox);
+    }
+
+    private void writeTile(String tile, File dir, String name) {
+        try {
+            try (final Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, name + ".svg")), UTF_8)) {
+                out.write(tile);
+            }
+            final File file = new File(dir, name + ".png");
+            try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                png.write(rasterizer.apply(tile), out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
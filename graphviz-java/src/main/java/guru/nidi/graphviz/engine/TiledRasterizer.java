@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Rasterizes an SVG in tiles and writes it as PNG.
+ * The tiles of a row are rasterized in parallel, while the previous row is being encoded,
+ * so at most two rows of tiles are in memory at the same time.
+ * The SVG of a tile only contains the nodes, edges and clusters that are visible in it.
+ */
+final class TiledRasterizer {
+    private final Function<String, BufferedImage> rasterizer;
+    private final int tileSize;
+    private final PngWriter png;
+    private final Executor executor;
+
+    /**
+     * @param rasterizer rasterizes an SVG into an image of the size given in the SVG
+     * @param tileSize   the width and height of a tile in pixels
+     * @param png        the compression level and filter to use
+     * @param executor   the executor to rasterize the tiles on
+     */
+    TiledRasterizer(Function<String, BufferedImage> rasterizer, int tileSize, PngWriter png, Executor executor) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive, but is " + tileSize + ".");
+        }
+        this.rasterizer = rasterizer;
+        this.tileSize = tileSize;
+        this.png = png;
+        this.executor = executor;
+    }
+
+    void write(String svg, OutputStream out) throws IOException {
+        final SvgPart part = SvgPart.of(svg, "Graph");
+        final int width = (int) Math.round(part.width());
+        final int height = (int) Math.round(part.height());
+        final Viewport viewport = new Viewport(part, width, height);
+        final SvgClipper clipper = new SvgClipper(svg, width, height);
+        try (final PngEncoder encoder = png.encoder(out, width, height)) {
+            final int[] row = new int[width];
+            List<CompletableFuture<BufferedImage>> tiles = tileRow(viewport, clipper, 0);
+            for (int y = 0; y < height; y += tileSize) {
+                final List<BufferedImage> images = new ArrayList<>();
+                for (final CompletableFuture<BufferedImage> tile : tiles) {
+                    images.add(ComponentSplitter.join(tile));
+                }
+                tiles = tileRow(viewport, clipper, y + tileSize);
+                final int tileHeight = Math.min(tileSize, height - y);
+                for (int r = 0; r < tileHeight; r++) {
+                    for (int i = 0; i < images.size(); i++) {
+                        copyRow(images.get(i), r, row, i * tileSize, Math.min(tileSize, width - i * tileSize));
+                    }
+                    encoder.writeRow(row, 0);
+                }
+            }
+        }
+    }
+
+    private List<CompletableFuture<BufferedImage>> tileRow(Viewport viewport, SvgClipper clipper, int y) {
+        final List<CompletableFuture<BufferedImage>> tiles = new ArrayList<>();
+        if (y < viewport.height) {
+            final int h = Math.min(tileSize, viewport.height - y);
+            for (int x = 0; x < viewport.width; x += tileSize) {
+                final String tile = viewport.tile(clipper, x, y, Math.min(tileSize, viewport.width - x), h);
+                tiles.add(CompletableFuture.supplyAsync(() -> rasterizer.apply(tile), executor));
+            }
+        }
+        return tiles;
+    }
+
+    //rasterizers may round the size of a tile differently, missing pixels are transparent
+    private static void copyRow(BufferedImage image, int y, int[] row, int offset, int width) {
+        final int w = y < image.getHeight() ? Math.min(width, image.getWidth()) : 0;
+        if (w > 0) {
+            PngEncoder.pixels(image, y, row, offset, w);
+        }
+        Arrays.fill(row, offset + w, offset + width, 0);
+    }
+
+    /**
+     * Maps pixels to the user coordinates of the SVG,
+     * like the default preserveAspectRatio (xMidYMid meet) does.
+     */
+    static final class Viewport {
+        final int width;
+        final int height;
+        final double[] viewBox;
+        final double scale;
+        final double offsetX;
+        final double offsetY;
+
+        /**
+         * @param part   the SVG
+         * @param width  the width of the whole image in pixels
+         * @param height the height of the whole image in pixels
+         */
+        Viewport(SvgPart part, int width, int height) {
+            this.width = width;
+            this.height = height;
+            final double[] box = part.viewBox();
+            viewBox = box == null ? new double[]{0, 0, part.width(), part.height()} : box;
+            scale = Math.min(width / viewBox[2], height / viewBox[3]);
+            offsetX = (width - viewBox[2] * scale) / 2;
+            offsetY = (height - viewBox[3] * scale) / 2;
+        }
+
+        /**
+         * @param clipper the clipper of the SVG, for an image of this size
+         * @return the SVG of the given pixels
+         */
+        String tile(SvgClipper clipper, int x, int y, int w, int h) {
+            return SvgPart.of(clipper.clip(x, y, w, h), "Tile").viewport(w, h, viewBox(x, y, w, h));
+        }
+
+        /**
+         * @return x, y, width and height of the view box showing the given pixels
+         */
+        double[] viewBox(int x, int y, int w, int h) {
+            return new double[]{
+                    viewBox[0] + (x - offsetX) / scale, viewBox[1] + (y - offsetY) / scale, w / scale, h / scale};
+        }
+
+        /**
+         * @param box x, y, width and height of a view box
+         * @return x, y, width and height of the pixels showing the view box
+         */
+        double[] pixels(double[] box) {
+            return new double[]{
+                    (box[0] - viewBox[0]) * scale + offsetX, (box[1] - viewBox[1]) * scale + offsetY,
+                    box[2] * scale, box[3] * scale};
+        }
+    }
+}
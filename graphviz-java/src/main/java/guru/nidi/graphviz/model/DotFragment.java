@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A cached part of the DOT representation of a graph.
+ * It is kept in the {@link ModelCache} of the node or graph it was created from, so it is dropped when they
+ * or anything they link to is modified.
+ * It can only be reused in the same context, e.g. with the same direction of edges.
+ * If it was written while validating, it also keeps the attributes that have validation messages
+ * or, if the validation was deferred, all attributes to validate,
+ * so the messages can be reported again when the fragment is reused with the same validation.
+ */
+final class DotFragment {
+    final String dot;
+    private final int context;
+    @Nullable
+    private final Object validation;
+    final List<SerializerImpl.Check> checks;
+
+    DotFragment(String dot, int context, @Nullable Object validation, @Nullable List<SerializerImpl.Check> checks) {
+        this.dot = dot;
+        this.context = context;
+        this.validation = validation;
+        this.checks = checks == null ? Collections.emptyList() : checks;
+    }
+
+    /**
+     * @param context    the context the fragment is used in
+     * @param validation the validation whose messages are replayed, null if the messages are not needed
+     * @return if the fragment can be used
+     */
+    boolean isValid(int context, @Nullable Object validation) {
+        return this.context == context && (validation == null || validation.equals(this.validation));
+    }
+}
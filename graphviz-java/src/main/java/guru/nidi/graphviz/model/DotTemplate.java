@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import guru.nidi.graphviz.attribute.SimpleLabel;
+
+import java.util.*;
+
+/**
+ * The DOT of a graph with holes that are filled in later, to render many graphs of the same structure quickly.
+ * A hole can be used as or inside node names, labels and attribute values.
+ * <pre>{@code
+ * DotTemplate template = DotTemplate.compile(mutGraph().add(mutNode("a").add(Label.of(hole("title")))));
+ * Graphviz.fromString(template.instantiate(singletonMap("title", "Hello")))
+ * }</pre>
+ * Values filled into quoted strings are escaped, values filled into HTML labels are inserted unchanged.
+ */
+public final class DotTemplate {
+    private static final char MARKER = '\u0000';
+
+    private final String[] parts;
+    private final String[] holes;
+    private final boolean[] html;
+    private final int length;
+
+    private DotTemplate(String[] parts, String[] holes, boolean[] html) {
+        this.parts = parts;
+        this.holes = holes;
+        this.html = html;
+        int len = 0;
+        for (final String part : parts) {
+            len += part.length();
+        }
+        length = len;
+    }
+
+    /**
+     * A placeholder for a value given when the template is instantiated.
+     *
+     * @param name the name of the hole
+     * @return the placeholder
+     */
+    public static String hole(String name) {
+        if (name.indexOf(MARKER) >= 0) {
+            throw new IllegalArgumentException("The name of a hole must not contain \\u0000.");
+        }
+        return MARKER + name + MARKER;
+    }
+
+    public static DotTemplate compile(MutableGraph graph) {
+        return compile(graph, new Serializer().notValidating());
+    }
+
+    /**
+     * Serialize the graph once and split it at the holes.
+     * The placeholders are not valid attribute values, so the serializer should not validate.
+     *
+     * @param graph      the graph containing the holes
+     * @param serializer the serializer to use
+     * @return the template
+     */
+    public static DotTemplate compile(MutableGraph graph, Serializer serializer) {
+        final String dot = serializer.serialize(graph);
+        final List<String> parts = new ArrayList<>();
+        final List<String> holes = new ArrayList<>();
+        final List<Boolean> html = new ArrayList<>();
+        final Context context = new Context();
+        int pos = 0;
+        int start;
+        while ((start = dot.indexOf(MARKER, pos)) >= 0) {
+            final int end = dot.indexOf(MARKER, start + 1);
+            if (end < 0) {
+                throw new IllegalStateException("Unterminated hole at " + start + ".");
+            }
+            context.scan(dot, pos, start);
+            if (!context.inQuote && context.htmlDepth == 0) {
+                throw new IllegalStateException("Hole '" + dot.substring(start + 1, end)
+                        + "' is neither in a string nor in an HTML label.");
+            }
+            parts.add(dot.substring(pos, start));
+            holes.add(dot.substring(start + 1, end));
+            html.add(context.htmlDepth > 0);
+            pos = end + 1;
+        }
+        parts.add(dot.substring(pos));
+        final boolean[] htmls = new boolean[html.size()];
+        for (int i = 0; i < htmls.length; i++) {
+            htmls[i] = html.get(i);
+        }
+        return new DotTemplate(parts.toArray(new String[0]), holes.toArray(new String[0]), htmls);
+    }
+
+    public Set<String> holes() {
+        return new LinkedHashSet<>(Arrays.asList(holes));
+    }
+
+    /**
+     * Fill the holes with the given values.
+     *
+     * @param values the values of the holes by name
+     * @return the DOT of the graph
+     * @throws IllegalArgumentException if there is no value for a hole
+     */
+    public String instantiate(Map<String, ?> values) {
+        final String[] filled = new String[holes.length];
+        int len = length;
+        for (int i = 0; i < holes.length; i++) {
+            final Object value = values.get(holes[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("No value for hole '" + holes[i] + "'.");
+            }
+            filled[i] = html[i] ? value.toString() : SimpleLabel.of(value.toString()).simpleSerialized();
+            len += filled[i].length();
+        }
+        final StringBuilder str = new StringBuilder(len);
+        for (int i = 0; i < holes.length; i++) {
+            str.append(parts[i]).append(filled[i]);
+        }
+        return str.append(parts[holes.length]).toString();
+    }
+
+    //just enough of the DOT syntax to know if a position is inside a string or an HTML label
+    private static final class Context {
+        boolean inQuote;
+        boolean escaped;
+        int htmlDepth;
+
+        void scan(String dot, int from, int to) {
+            for (int i = from; i < to; i++) {
+                final char c = dot.charAt(i);
+                if (htmlDepth > 0) {
+                    if (c == '<') {
+                        htmlDepth++;
+                    } else if (c == '>') {
+                        htmlDepth--;
+                    }
+                } else if (inQuote) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inQuote = false;
+                    }
+                } else if (c == '"') {
+                    inQuote = true;
+                } else if (c == '<') {
+                    htmlDepth++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import guru.nidi.graphviz.attribute.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.Map.Entry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A graph given as arrays of node indices, to load large graphs with little overhead.
+ * Node i is named names[i] and edge i goes from node from[i] to node to[i].
+ * Attributes are given as columns, one value per node or edge, where null means the attribute is not set.
+ * The arrays are not copied and must not be modified afterwards.
+ */
+public final class EdgeList {
+    private static final int FLUSH_SIZE = 8192;
+
+    private final String[] names;
+    private final int[] from;
+    private final int[] to;
+    private final boolean directed;
+    private final Map<String, Object[]> nodeAttributes;
+    private final Map<String, Object[]> edgeAttributes;
+
+    private EdgeList(String[] names, int[] from, int[] to, boolean directed,
+                     Map<String, Object[]> nodeAttributes, Map<String, Object[]> edgeAttributes) {
+        this.names = names;
+        this.from = from;
+        this.to = to;
+        this.directed = directed;
+        this.nodeAttributes = nodeAttributes;
+        this.edgeAttributes = edgeAttributes;
+    }
+
+    public static EdgeList of(String[] names, int[] from, int[] to) {
+        if (from.length != to.length) {
+            throw new IllegalArgumentException("from and to must have the same length, but have "
+                    + from.length + " and " + to.length + ".");
+        }
+        checkIndices(names, from);
+        checkIndices(names, to);
+        return new EdgeList(names, from, to, false, new LinkedHashMap<>(), new LinkedHashMap<>());
+    }
+
+    private static void checkIndices(String[] names, int[] indices) {
+        for (final int index : indices) {
+            if (index < 0 || index >= names.length) {
+                throw new IllegalArgumentException("Node index " + index + " is not between 0 and "
+                        + (names.length - 1) + ".");
+            }
+        }
+    }
+
+    /**
+     * Read an edge list in CSV or TSV format.
+     * The first line names the columns. The first two columns contain the names of the source and target nodes,
+     * all other columns are edge attributes with the column name as key. Empty values are ignored.
+     * Values cannot be quoted, so they must not contain the separator.
+     *
+     * @param in        the input to read
+     * @param separator the column separator, usually ',' or '\t'
+     * @return the edge list
+     * @throws IOException if the input cannot be read
+     */
+    public static EdgeList read(Reader in, char separator) throws IOException {
+        final BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        final String header = reader.readLine();
+        if (header == null) {
+            return of(new String[0], new int[0], new int[0]);
+        }
+        final String[] keys = split(header, separator, Integer.MAX_VALUE);
+        if (keys.length < 2) {
+            throw new IllegalArgumentException("Expected at least 2 columns, but found " + keys.length + ".");
+        }
+        final Map<String, Integer> indices = new HashMap<>();
+        final List<String> names = new ArrayList<>();
+        final List<List<Object>> columns = new ArrayList<>();
+        for (int i = 2; i < keys.length; i++) {
+            columns.add(new ArrayList<>());
+        }
+        int[] from = new int[1024];
+        int[] to = new int[1024];
+        int edges = 0;
+        String line;
+        int lineNum = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNum++;
+            if (line.isEmpty()) {
+                continue;
+            }
+            final String[] values = split(line, separator, keys.length);
+            if (values.length < 2) {
+                throw new IllegalArgumentException("Line " + lineNum + ": Expected at least 2 columns, but found "
+                        + values.length + ".");
+            }
+            if (edges == from.length) {
+                from = Arrays.copyOf(from, edges * 2);
+                to = Arrays.copyOf(to, edges * 2);
+            }
+            from[edges] = index(values[0], indices, names);
+            to[edges] = index(values[1], indices, names);
+            for (int i = 2; i < keys.length; i++) {
+                columns.get(i - 2).add(i < values.length && !values[i].isEmpty() ? values[i] : null);
+            }
+            edges++;
+        }
+        EdgeList list = of(names.toArray(new String[0]), Arrays.copyOf(from, edges), Arrays.copyOf(to, edges));
+        for (int i = 2; i < keys.length; i++) {
+            list = list.edgeAttribute(keys[i], columns.get(i - 2).toArray());
+        }
+        return list;
+    }
+
+    public static EdgeList read(Path file, char separator) throws IOException {
+        try (final Reader in = Files.newBufferedReader(file, UTF_8)) {
+            return read(in, separator);
+        }
+    }
+
+    private static String[] split(String line, char separator, int max) {
+        final List<String> values = new ArrayList<>();
+        int start = 0;
+        int end;
+        while (values.size() < max - 1 && (end = line.indexOf(separator, start)) >= 0) {
+            values.add(line.substring(start, end));
+            start = end + 1;
+        }
+        values.add(line.substring(start));
+        return values.toArray(new String[0]);
+    }
+
+    private static int index(String name, Map<String, Integer> indices, List<String> names) {
+        final Integer index = indices.putIfAbsent(name, names.size());
+        if (index != null) {
+            return index;
+        }
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    public EdgeList directed() {
+        return new EdgeList(names, from, to, true, nodeAttributes, edgeAttributes);
+    }
+
+    public EdgeList nodeAttribute(String key, Object[] values) {
+        if (values.length != names.length) {
+            throw new IllegalArgumentException("Attribute '" + key + "' must have a value for each of the "
+                    + names.length + " nodes, but has " + values.length + ".");
+        }
+        return new EdgeList(names, from, to, directed, with(nodeAttributes, key, values), edgeAttributes);
+    }
+
+    public EdgeList edgeAttribute(String key, Object[] values) {
+        if (values.length != from.length) {
+            throw new IllegalArgumentException("Attribute '" + key + "' must have a value for each of the "
+                    + from.length + " edges, but has " + values.length + ".");
+        }
+        return new EdgeList(names, from, to, directed, nodeAttributes, with(edgeAttributes, key, values));
+    }
+
+    private static Map<String, Object[]> with(Map<String, Object[]> attributes, String key, Object[] values) {
+        final Map<String, Object[]> res = new LinkedHashMap<>(attributes);
+        res.put(key, values);
+        return res;
+    }
+
+    /**
+     * The names of the nodes in the order of their indices, e.g. to create the node attributes of a read edge list.
+     *
+     * @return the node names
+     */
+    public String[] names() {
+        return names.clone();
+    }
+
+    public int nodeCount() {
+        return names.length;
+    }
+
+    public int edgeCount() {
+        return from.length;
+    }
+
+    /**
+     * Create a graph containing all nodes and edges.
+     * The nodes and links are created directly, so they don't get attributes from a {@link CreationContext}.
+     *
+     * @return the graph
+     */
+    public MutableGraph toGraph() {
+        final OrderedSet<MutableNode> nodes = new OrderedSet<>();
+        final MutableNode[] mutNodes = new MutableNode[names.length];
+        for (int i = 0; i < names.length; i++) {
+            mutNodes[i] = new MutableNode(Label.of(names[i]), Collections.emptyList(), nodeAttributes(i));
+            nodes.add(mutNodes[i]);
+        }
+        final Link[][] links = new Link[names.length][];
+        final int[] linkCount = new int[names.length];
+        for (final int f : from) {
+            linkCount[f]++;
+        }
+        final Port port = new Port(null, null);
+        final ImmutablePortNode[] targets = new ImmutablePortNode[names.length];
+        for (int i = 0; i < from.length; i++) {
+            final int f = from[i];
+            if (links[f] == null) {
+                links[f] = new Link[linkCount[f]];
+                linkCount[f] = 0;
+            }
+            final int t = to[i];
+            if (targets[t] == null) {
+                targets[t] = new ImmutablePortNode(mutNodes[t], port);
+            }
+            links[f][linkCount[f]++] = new Link(mutNodes[f], targets[t], edgeAttributes(i));
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (links[i] != null) {
+                mutNodes[i].links.addOwned(Arrays.asList(links[i]));
+            }
+        }
+        return new MutableGraph(false, directed, false, Label.of(""), nodes, new OrderedSet<>(), new ArrayList<>(),
+                null, null, null);
+    }
+
+    private Attributes<ForNode> nodeAttributes(int index) {
+        return attributes(nodeAttributes, index);
+    }
+
+    private Attributes<ForLink> edgeAttributes(int index) {
+        return attributes(edgeAttributes, index);
+    }
+
+    private static <F extends For> MapAttributes<F> attributes(Map<String, Object[]> columns, int index) {
+        final MapAttributes<F> attrs = new MapAttributes<>();
+        for (final Entry<String, Object[]> column : columns.entrySet()) {
+            final Object value = column.getValue()[index];
+            if (value != null) {
+                attrs.add(column.getKey(), value);
+            }
+        }
+        return attrs;
+    }
+
+    /**
+     * Write the graph in DOT format without creating a model.
+     * The nodes with attributes or without edges are written first, then all edges in their order.
+     * The attributes are not validated.
+     *
+     * @param out the output to append to
+     * @throws IOException if the output cannot be written
+     */
+    public void writeTo(Appendable out) throws IOException {
+        final String[] serialized = new String[names.length];
+        final boolean[] linked = new boolean[names.length];
+        for (int i = 0; i < from.length; i++) {
+            linked[from[i]] = true;
+            linked[to[i]] = true;
+        }
+        final StringBuilder str = new StringBuilder(directed ? "digraph {\n" : "graph {\n");
+        for (int i = 0; i < names.length; i++) {
+            serialized[i] = SimpleLabel.of(names[i]).serialized();
+            final int len = str.length();
+            str.append(serialized[i]);
+            attrs(str, nodeAttributes, i);
+            if (linked[i] && str.length() == len + serialized[i].length()) {
+                str.setLength(len);
+            } else {
+                newLine(str, out);
+            }
+        }
+        final String edgeOp = directed ? " -> " : " -- ";
+        for (int i = 0; i < from.length; i++) {
+            str.append(serialized[from[i]]).append(edgeOp).append(serialized[to[i]]);
+            attrs(str, edgeAttributes, i);
+            newLine(str, out);
+        }
+        out.append(str.append('}'));
+    }
+
+    private static void attrs(StringBuilder str, Map<String, Object[]> columns, int index) {
+        boolean first = true;
+        for (final Entry<String, Object[]> column : columns.entrySet()) {
+            final Object value = column.getValue()[index];
+            if (value != null) {
+                str.append(first ? " [" : ",")
+                        .append(SimpleLabel.of(column.getKey()).serialized())
+                        .append('=')
+                        .append(SimpleLabel.of(value).serialized());
+                first = false;
+            }
+        }
+        if (!first) {
+            str.append(']');
+        }
+    }
+
+    private static void newLine(StringBuilder str, Appendable out) throws IOException {
+        str.append('\n');
+        if (str.length() >= FLUSH_SIZE) {
+            out.append(str);
+            str.setLength(0);
+        }
+    }
+}
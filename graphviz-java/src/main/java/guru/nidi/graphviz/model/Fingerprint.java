@@ -0,0 +1,254 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import guru.nidi.graphviz.attribute.*;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * A 128 bit hash of a graph, computed directly from the model.
+ * It covers everything that is serialized to DOT, including the attributes of nodes that are only reached
+ * through links, and does not depend on the order attributes were added.
+ * Fingerprints of nodes and subgraphs are cached and only recomputed when they or their links have been modified,
+ * see {@link MutableGraph#fingerprint()}.
+ */
+public final class Fingerprint {
+    private static final SafeRecursion<MutableGraph> RECURSION = new SafeRecursion<>();
+
+    private final long high;
+    private final long low;
+
+    Fingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public long high() {
+        return high;
+    }
+
+    public long low() {
+        return low;
+    }
+
+    static Fingerprint of(MutableGraph graph) {
+        final ModelCache cache = ModelCache.of(graph);
+        final Fingerprint cached = cache.fingerprint;
+        if (cached != null) {
+            return cached;
+        }
+        return RECURSION.recurse(graph, new Hasher('R').add(graph.name).build(), () -> {
+            final Hasher hasher = new Hasher('G')
+                    .add(graph.strict).add(graph.directed).add(graph.cluster).add(graph.name)
+                    .add(attributes(graph.graphAttrs)).add(attributes(graph.nodeAttrs))
+                    .add(attributes(graph.linkAttrs));
+            hasher.add(graph.nodes.size());
+            for (final MutableNode node : graph.nodes) {
+                hasher.add(of(node));
+            }
+            hasher.add(graph.subgraphs.size());
+            for (final MutableGraph subgraph : graph.subgraphs) {
+                hasher.add(of(subgraph));
+            }
+            final List<MutableNode> linked = linkedOnly(graph);
+            hasher.add(linked.size());
+            for (final MutableNode node : linked) {
+                hasher.add(of(node));
+            }
+            final Fingerprint fingerprint = links(hasher, graph.links).build();
+            cache.fingerprint = fingerprint;
+            return fingerprint;
+        });
+    }
+
+    private static Fingerprint of(MutableNode node) {
+        final ModelCache cache = ModelCache.of(node);
+        Fingerprint fingerprint = cache.fingerprint;
+        if (fingerprint == null) {
+            final Hasher hasher = new Hasher('N').add(node.name).add(attributes(node.attributes));
+            fingerprint = links(hasher, node.links).build();
+            cache.fingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    //the nodes that are not in the graph, but reached through links from its nodes and subgraphs.
+    //they are declared in the graph by the serializer, so their attributes are part of the graph's fingerprint
+    private static List<MutableNode> linkedOnly(MutableGraph graph) {
+        final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        visited.addAll(graph.nodes);
+        visited.addAll(graph.subgraphs);
+        final List<MutableNode> linked = new ArrayList<>();
+        final Deque<LinkSource> todo = new ArrayDeque<>(graph.nodes);
+        todo.addAll(graph.subgraphs);
+        while (!todo.isEmpty()) {
+            for (final Link link : todo.pop().links()) {
+                final LinkSource target = link.to.asLinkSource();
+                if (visited.add(target)) {
+                    if (target instanceof MutableNode) {
+                        linked.add((MutableNode) target);
+                    }
+                    todo.push(target);
+                }
+            }
+        }
+        return linked;
+    }
+
+    private static Hasher links(Hasher hasher, LinkList links) {
+        hasher.add(links.size());
+        for (final Link link : links) {
+            endpoint(hasher, link.from);
+            endpoint(hasher, link.to);
+            hasher.add(attributes(link.attributes));
+        }
+        return hasher;
+    }
+
+    //nodes are identified by their name, graphs by their content
+    private static void endpoint(Hasher hasher, @Nullable Object endpoint) {
+        if (endpoint instanceof ImmutablePortNode) {
+            final ImmutablePortNode node = (ImmutablePortNode) endpoint;
+            hasher.add('P').add(node.name()).add(node.port().record()).add(node.port().compass());
+        } else if (endpoint instanceof MutableNode) {
+            hasher.add('N').add(((MutableNode) endpoint).name);
+        } else if (endpoint instanceof MutableGraph) {
+            hasher.add('G').add(of((MutableGraph) endpoint));
+        } else {
+            hasher.add('-');
+        }
+    }
+
+    //the sum of the hashes of all attributes, so the order of the attributes does not matter
+    private static Fingerprint attributes(Attributes<?> attributes) {
+        long high = 0;
+        long low = 0;
+        int count = 0;
+        for (final Entry<String, Object> attr : attributes) {
+            if (!attr.getKey().startsWith("$") && attr.getValue() != null) {
+                final Fingerprint f = new Hasher('A')
+                        .add(attr.getKey()).add(SimpleLabel.of(attr.getValue()).serialized()).build();
+                high += f.high;
+                low += f.low;
+                count++;
+            }
+        }
+        return new Hasher('S').add(count).add(high).add(low).build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Fingerprint that = (Fingerprint) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high ^ (high >>> 32) ^ low ^ (low >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+    /**
+     * The 128 bit variant of MurmurHash3, fed with longs instead of bytes.
+     */
+    static final class Hasher {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private long h1;
+        private long h2;
+        private long length;
+
+        Hasher(char kind) {
+            add(kind);
+        }
+
+        Hasher add(long value) {
+            h1 ^= Long.rotateLeft(value * C1, 31) * C2;
+            h1 = (Long.rotateLeft(h1, 27) + h2) * 5 + 0x52dce729;
+            h2 ^= Long.rotateLeft(value * C2, 33) * C1;
+            h2 = (Long.rotateLeft(h2, 31) + h1) * 5 + 0x38495ab5;
+            length++;
+            return this;
+        }
+
+        Hasher add(boolean value) {
+            return add(value ? 1 : 0);
+        }
+
+        Hasher add(@Nullable String value) {
+            if (value == null) {
+                return add(-1);
+            }
+            add(value.length());
+            long block = 0;
+            for (int i = 0; i < value.length(); i++) {
+                block = (block << 16) | value.charAt(i);
+                if ((i & 3) == 3) {
+                    add(block);
+                    block = 0;
+                }
+            }
+            return add(block);
+        }
+
+        Hasher add(@Nullable Enum<?> value) {
+            return add(value == null ? -1 : value.ordinal());
+        }
+
+        Hasher add(Label label) {
+            return add(label.serialized());
+        }
+
+        Hasher add(@Nullable Fingerprint fingerprint) {
+            return fingerprint == null ? add(0) : add(fingerprint.high).add(fingerprint.low);
+        }
+
+        Fingerprint build() {
+            long a = h1 ^ length;
+            long b = h2 ^ length;
+            a += b;
+            b += a;
+            a = mix(a);
+            b = mix(b);
+            a += b;
+            b += a;
+            return new Fingerprint(a, b);
+        }
+
+        private static long mix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb53fe1a85ec3L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
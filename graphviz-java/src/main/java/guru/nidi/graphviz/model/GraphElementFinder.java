@@ -37,8 +37,9 @@ public class GraphElementFinder extends SvgElementFinder {
 
     GraphElementFinder(SvgElementFinder finder, MutableGraph graph) {
         super(finder);
-        nodes = graph.nodes().stream().collect(toMap(n -> name(n), n -> n));
-        links = graph.edges().stream().collect(toMap(e -> name(e.from()) + "--" + name(e.to()), e -> e));
+        final GraphIndex index = graph.index();
+        nodes = index.nodes().stream().collect(toMap(n -> name(n), n -> n, (a, b) -> a));
+        links = index.edges().stream().collect(toMap(e -> name(e.from()) + "--" + name(e.to()), e -> e, (a, b) -> a));
         graphs = graph.graphs().stream().collect(toMap(g -> name(g), g -> g));
     }
 
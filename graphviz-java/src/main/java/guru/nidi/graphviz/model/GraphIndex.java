@@ -0,0 +1,274 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import guru.nidi.graphviz.attribute.Label;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * An indexed snapshot of the nodes and edges of a graph and all its subgraphs.
+ * Nodes and edges are numbered from 0 and adjacency is stored in compressed arrays,
+ * so lookups and traversals don't need to walk the model again.
+ * Nodes are identified by identity, if there are multiple nodes with the same name, lookups by name return the first.
+ * Any modification of the graph or of a node, subgraph or link target in it makes the index outdated,
+ * {@link MutableGraph#index()} then creates a new one.
+ * Modifications of other graphs don't affect the index.
+ * Modifications done directly on the collections returned by {@link MutableGraph#rootNodes()}
+ * or {@link MutableGraph#graphs()} are not detected.
+ */
+public final class GraphIndex {
+    private final List<MutableNode> nodes;
+    private final List<Link> edges;
+    private final Map<MutableNode, Integer> ids = new IdentityHashMap<>();
+    private final Map<Label, Integer> names = new HashMap<>();
+    private final Map<Long, Integer> endpoints = new HashMap<>();
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final int[] outOffsets;
+    private final int[] outEdges;
+    private final int[] inOffsets;
+    private final int[] inEdges;
+    private int maxOutDegree;
+    private int maxInDegree;
+
+    GraphIndex(MutableGraph graph) {
+        final List<MutableNode> nodeList = new ArrayList<>();
+        final List<Link> edgeList = new ArrayList<>();
+        collect(graph, nodeList, edgeList);
+        nodes = Collections.unmodifiableList(nodeList);
+        edges = Collections.unmodifiableList(edgeList);
+        for (int i = 0; i < nodeList.size(); i++) {
+            names.putIfAbsent(nodeList.get(i).name(), i);
+        }
+        edgeFrom = new int[edgeList.size()];
+        edgeTo = new int[edgeList.size()];
+        outOffsets = new int[nodeList.size() + 1];
+        inOffsets = new int[nodeList.size() + 1];
+        for (int i = 0; i < edgeList.size(); i++) {
+            final Link edge = edgeList.get(i);
+            edgeFrom[i] = id(nodeOf(edge.from));
+            edgeTo[i] = id(nodeOf(edge.to));
+            if (edgeFrom[i] >= 0 && edgeTo[i] >= 0) {
+                outOffsets[edgeFrom[i] + 1]++;
+                inOffsets[edgeTo[i] + 1]++;
+                endpoints.putIfAbsent(key(edgeFrom[i], edgeTo[i]), i);
+            }
+        }
+        for (int i = 0; i < nodeList.size(); i++) {
+            maxOutDegree = Math.max(maxOutDegree, outOffsets[i + 1]);
+            maxInDegree = Math.max(maxInDegree, inOffsets[i + 1]);
+            outOffsets[i + 1] += outOffsets[i];
+            inOffsets[i + 1] += inOffsets[i];
+        }
+        outEdges = new int[outOffsets[nodeList.size()]];
+        inEdges = new int[inOffsets[nodeList.size()]];
+        final int[] outPos = Arrays.copyOf(outOffsets, nodeList.size());
+        final int[] inPos = Arrays.copyOf(inOffsets, nodeList.size());
+        for (int i = 0; i < edgeList.size(); i++) {
+            if (edgeFrom[i] >= 0 && edgeTo[i] >= 0) {
+                outEdges[outPos[edgeFrom[i]]++] = i;
+                inEdges[inPos[edgeTo[i]]++] = i;
+            }
+        }
+    }
+
+    //nodes are in the same order as in MutableGraph.nodes(), but collected iteratively and by identity
+    private void collect(MutableGraph graph, List<MutableNode> nodeList, List<Link> edgeList) {
+        for (final MutableGraph sub : graph.subgraphs) {
+            collect(sub, nodeList, edgeList);
+        }
+        for (final MutableNode node : graph.nodes) {
+            collect(node, nodeList, edgeList);
+        }
+        collectLinks(graph.links, nodeList, edgeList);
+    }
+
+    private void collect(MutableNode start, List<MutableNode> nodeList, List<Link> edgeList) {
+        final Deque<MutableNode> todo = new ArrayDeque<>();
+        todo.push(start);
+        while (!todo.isEmpty()) {
+            final MutableNode node = todo.pop();
+            if (!ids.containsKey(node)) {
+                ids.put(node, nodeList.size());
+                nodeList.add(node);
+                edgeList.addAll(node.links);
+                for (int i = node.links.size() - 1; i >= 0; i--) {
+                    final MutableNode target = nodeOf(node.links.get(i).to);
+                    if (target != null) {
+                        todo.push(target);
+                    }
+                }
+            }
+        }
+    }
+
+    private void collectLinks(List<Link> links, List<MutableNode> nodeList, List<Link> edgeList) {
+        for (final Link link : links) {
+            edgeList.add(link);
+            final MutableNode target = nodeOf(link.to);
+            if (target != null) {
+                collect(target, nodeList, edgeList);
+            }
+        }
+    }
+
+    @Nullable
+    private static MutableNode nodeOf(@Nullable Object endpoint) {
+        if (endpoint instanceof MutableNode) {
+            return (MutableNode) endpoint;
+        }
+        if (endpoint instanceof ImmutablePortNode) {
+            return ((ImmutablePortNode) endpoint).node();
+        }
+        return null;
+    }
+
+    private static long key(int from, int to) {
+        return ((long) from << 32) | to;
+    }
+
+    public int nodeCount() {
+        return nodes.size();
+    }
+
+    public int edgeCount() {
+        return edges.size();
+    }
+
+    /**
+     * @return all nodes, the position in the list is the node's id
+     */
+    public List<MutableNode> nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return all edges, the position in the list is the edge's id
+     */
+    public List<Link> edges() {
+        return edges;
+    }
+
+    public MutableNode node(int id) {
+        return nodes.get(id);
+    }
+
+    @Nullable
+    public MutableNode node(String name) {
+        final int id = id(name);
+        return id < 0 ? null : nodes.get(id);
+    }
+
+    public int id(@Nullable MutableNode node) {
+        final Integer id = ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    public int id(String name) {
+        return id(Label.of(name));
+    }
+
+    public int id(Label name) {
+        final Integer id = names.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public Link edge(int id) {
+        return edges.get(id);
+    }
+
+    /**
+     * @param from the id of the source node
+     * @param to   the id of the target node
+     * @return the id of the first edge between the two nodes or -1 if there is none
+     */
+    public int edge(int from, int to) {
+        final Integer id = endpoints.get(key(from, to));
+        return id == null ? -1 : id;
+    }
+
+    @Nullable
+    public Link edge(String from, String to) {
+        final int id = edge(id(from), id(to));
+        return id < 0 ? null : edges.get(id);
+    }
+
+    /**
+     * @param edge the id of the edge
+     * @return the id of the source node or -1 if the source is not a node
+     */
+    public int from(int edge) {
+        return edgeFrom[edge];
+    }
+
+    /**
+     * @param edge the id of the edge
+     * @return the id of the target node or -1 if the target is not a node
+     */
+    public int to(int edge) {
+        return edgeTo[edge];
+    }
+
+    public int[] outEdges(int node) {
+        return Arrays.copyOfRange(outEdges, outOffsets[node], outOffsets[node + 1]);
+    }
+
+    public int[] inEdges(int node) {
+        return Arrays.copyOfRange(inEdges, inOffsets[node], inOffsets[node + 1]);
+    }
+
+    public int[] successors(int node) {
+        final int[] res = outEdges(node);
+        for (int i = 0; i < res.length; i++) {
+            res[i] = edgeTo[res[i]];
+        }
+        return res;
+    }
+
+    public int[] predecessors(int node) {
+        final int[] res = inEdges(node);
+        for (int i = 0; i < res.length; i++) {
+            res[i] = edgeFrom[res[i]];
+        }
+        return res;
+    }
+
+    public int outDegree(int node) {
+        return outOffsets[node + 1] - outOffsets[node];
+    }
+
+    public int inDegree(int node) {
+        return inOffsets[node + 1] - inOffsets[node];
+    }
+
+    public int degree(int node) {
+        return outDegree(node) + inDegree(node);
+    }
+
+    public int maxOutDegree() {
+        return maxOutDegree;
+    }
+
+    public int maxInDegree() {
+        return maxInDegree;
+    }
+
+    public double averageDegree() {
+        return nodes.isEmpty() ? 0 : (outEdges.length + inEdges.length) / (double) nodes.size();
+    }
+}
@@ -25,7 +25,7 @@ class ImmutableGraph extends MutableGraph implements Graph {
     }
 
     private ImmutableGraph(boolean strict, boolean directed, boolean cluster, Label name,
-                           LinkedHashSet<MutableNode> nodes, LinkedHashSet<MutableGraph> subgraphs, List<Link> links,
+                           OrderedSet<MutableNode> nodes, OrderedSet<MutableGraph> subgraphs, List<Link> links,
                            MutableAttributed<MutableGraph, ForNode> nodeAttributes,
                            MutableAttributed<MutableGraph, ForLink> linkAttributes,
                            MutableAttributed<MutableGraph, ForGraph> graphAttributes) {
@@ -37,9 +37,10 @@ class ImmutableGraph extends MutableGraph implements Graph {
         return copyOfMut(this);
     }
 
+    //nodes, subgraphs and links are persistent collections, so copying them is cheap
     static ImmutableGraph copyOfMut(MutableGraph g) {
         return new ImmutableGraph(g.strict, g.directed, g.cluster, g.name,
-                new LinkedHashSet<>(g.nodes), new LinkedHashSet<>(g.subgraphs), new ArrayList<>(g.links),
+                OrderedSet.copyOf(g.nodes), OrderedSet.copyOf(g.subgraphs), g.links,
                 g.nodeAttrs, g.linkAttrs, g.graphAttrs);
     }
 
@@ -52,8 +52,9 @@ class ImmutableNode extends MutableNode implements Node {
         return (ImmutableNode) copyOfMut().add(attrs);
     }
 
+    //links and attributes are copied with structural sharing, see LinkList and MapAttributes
     private ImmutableNode copyOfMut() {
-        return new ImmutableNode(name, new ArrayList<>(links), attributes.copy());
+        return new ImmutableNode(name, links, attributes.copy());
     }
 
     @Override
@@ -81,6 +81,7 @@ class ImmutablePortNode implements PortNode, LinkSource, LinkTarget {
     @Override
     public void addTo(MutableGraph graph) {
         graph.nodes.add(node);
+        ModelCache.modified(graph);
     }
 
     @Override
@@ -117,6 +117,21 @@ public final class Link implements Attributed<Link, ForLink>, LinkTarget {
 
     @Override
     public int hashCode() {
-        return Objects.hash(from, to, attributes);
+        return Objects.hash(hashOf(from), hashOf(to), attributes);
+    }
+
+    //only hash the names of the endpoints, hashing the endpoints themselves would recurse through the whole graph
+    private static int hashOf(@Nullable Object endpoint) {
+        if (endpoint instanceof ImmutablePortNode) {
+            final ImmutablePortNode node = (ImmutablePortNode) endpoint;
+            return Objects.hash(node.name(), node.port());
+        }
+        if (endpoint instanceof PortSource) {
+            return ((PortSource) endpoint).port.hashCode();
+        }
+        if (endpoint instanceof Named) {
+            return Objects.hashCode(((Named) endpoint).name());
+        }
+        return Objects.hashCode(endpoint);
     }
 }
@@ -16,39 +16,99 @@
 package guru.nidi.graphviz.model;
 
 import java.util.*;
+import java.util.function.Predicate;
 
-import static java.util.stream.Collectors.toList;
-
-class LinkList extends ArrayList<Link> {
+/**
+ * The links of a node or graph.
+ * Every added link is adjusted to start at the owner.
+ * The links are kept in a {@link PersistentVector}, so copying a list into a new owner takes constant time.
+ */
+class LinkList extends AbstractList<Link> implements RandomAccess {
     private final LinkSource owner;
+    private PersistentVector<Link> links;
 
     LinkList(LinkSource owner, List<Link> links) {
-        super(links);
         this.owner = owner;
+        this.links = links instanceof LinkList ? ((LinkList) links).links : PersistentVector.of(links);
     }
 
     @Override
-    public Link set(int index, Link element) {
-        return super.set(index, owner.linkTo(element));
+    public Link get(int index) {
+        return links.get(index);
     }
 
     @Override
-    public boolean add(Link link) {
-        return super.add(owner.linkTo(link));
+    public int size() {
+        return links.size();
+    }
+
+    @Override
+    public Link set(int index, Link element) {
+        final Link old = links.get(index);
+        links = links.set(index, owner.linkTo(element));
+        ModelCache.modified(owner);
+        return old;
     }
 
     @Override
     public void add(int index, Link element) {
-        super.add(index, owner.linkTo(element));
+        final Link link = owner.linkTo(element);
+        if (index == links.size()) {
+            links = links.append(link);
+        } else {
+            final List<Link> list = new ArrayList<>(this);
+            list.add(index, link);
+            links = PersistentVector.of(list);
+        }
+        modCount++;
+        ModelCache.modified(owner);
+    }
+
+    //the links must already start at the owner
+    void addOwned(Collection<Link> owned) {
+        for (final Link link : owned) {
+            links = links.append(link);
+        }
+        modCount++;
+        ModelCache.modified(owner);
+    }
+
+    @Override
+    public Link remove(int index) {
+        final List<Link> list = new ArrayList<>(this);
+        final Link old = list.remove(index);
+        links = PersistentVector.of(list);
+        modCount++;
+        ModelCache.modified(owner);
+        return old;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Link> filter) {
+        final List<Link> list = new ArrayList<>(this);
+        if (!list.removeIf(filter)) {
+            return false;
+        }
+        links = PersistentVector.of(list);
+        modCount++;
+        ModelCache.modified(owner);
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return removeIf(c::contains);
     }
 
     @Override
-    public boolean addAll(Collection<? extends Link> c) {
-        return super.addAll(c.stream().map(owner::linkTo).collect(toList()));
+    public boolean retainAll(Collection<?> c) {
+        return removeIf(link -> !c.contains(link));
     }
 
     @Override
-    public boolean addAll(int index, Collection<? extends Link> c) {
-        return super.addAll(index, c.stream().map(owner::linkTo).collect(toList()));
+    public void clear() {
+        links = PersistentVector.empty();
+        modCount++;
+        ModelCache.modified(owner);
     }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Data derived from a node or graph, like its hash code, {@link Fingerprint}, {@link DotFragment}s
+ * or {@link GraphIndex}.
+ * The cache of an element is dropped when the element or anything reachable from it is modified.
+ * For this, creating the cache of an element also creates the caches of its nodes, subgraphs and link targets
+ * and registers the element as their owner.
+ * A modification drops the cache of the modified element and, transitively, of its owners.
+ * A dropped cache forgets its owners, and they are held weakly,
+ * so nothing is kept alive by being part of another graph.
+ * Modifications of unrelated graphs never touch each other's caches.
+ */
+final class ModelCache {
+    private static final AtomicReferenceFieldUpdater<MutableNode, ModelCache> NODE_CACHE =
+            AtomicReferenceFieldUpdater.newUpdater(MutableNode.class, ModelCache.class, "cache");
+    private static final AtomicReferenceFieldUpdater<MutableGraph, ModelCache> GRAPH_CACHE =
+            AtomicReferenceFieldUpdater.newUpdater(MutableGraph.class, ModelCache.class, "cache");
+    private static final WeakReference<?>[] NO_OWNERS = new WeakReference<?>[0];
+
+    //the element of this cache, as it is registered in the caches of its children
+    private final WeakReference<Object> element;
+    private WeakReference<?>[] owners = NO_OWNERS;
+    private int ownerCount;
+    //volatile as the parallel serializer reads hash codes from several threads, hash is written before
+    private volatile boolean hashed;
+    private int hash;
+    @Nullable
+    Fingerprint fingerprint;
+    @Nullable
+    DotFragment dot;
+    @Nullable
+    DotFragment edgesDot;
+    @Nullable
+    GraphIndex index;
+
+    private ModelCache(Object element) {
+        this.element = new WeakReference<>(element);
+    }
+
+    static ModelCache of(MutableNode node) {
+        final ModelCache cache = node.cache;
+        return cache == null ? create(node) : cache;
+    }
+
+    static ModelCache of(MutableGraph graph) {
+        final ModelCache cache = graph.cache;
+        return cache == null ? create(graph) : cache;
+    }
+
+    boolean hasHash() {
+        return hashed;
+    }
+
+    int hash() {
+        return hash;
+    }
+
+    int hash(int hash) {
+        this.hash = hash;
+        hashed = true;
+        return hash;
+    }
+
+    /**
+     * Drop the caches of the element and of all elements that own it.
+     *
+     * @param element a node or graph, a port or a link stands for its node or source
+     */
+    static void modified(@Nullable Object element) {
+        final Object modified = element(element);
+        if (modified == null || get(modified) == null) {
+            return;
+        }
+        final Deque<Object> todo = new ArrayDeque<>();
+        todo.push(modified);
+        while (!todo.isEmpty()) {
+            final ModelCache cache = drop(todo.pop());
+            if (cache != null) {
+                for (int i = 0; i < cache.ownerCount; i++) {
+                    final Object owner = cache.owners[i].get();
+                    if (owner != null) {
+                        todo.push(owner);
+                    }
+                }
+            }
+        }
+    }
+
+    //iterative to support long chains of links.
+    //If another thread is creating the cache of a child at the same time, it also registers the child's children
+    private static ModelCache create(Object element) {
+        final ModelCache res = install(element);
+        final Deque<Object> todo = new ArrayDeque<>();
+        todo.push(element);
+        while (!todo.isEmpty()) {
+            final Object owner = todo.pop();
+            final ModelCache ownerCache = get(owner);
+            if (ownerCache == null) {
+                continue;
+            }
+            if (owner instanceof MutableGraph) {
+                final MutableGraph graph = (MutableGraph) owner;
+                for (final MutableNode node : graph.nodes) {
+                    register(node, ownerCache, todo);
+                }
+                for (final MutableGraph subgraph : graph.subgraphs) {
+                    register(subgraph, ownerCache, todo);
+                }
+                registerTargets(graph.links, ownerCache, todo);
+            } else {
+                registerTargets(((MutableNode) owner).links, ownerCache, todo);
+            }
+        }
+        return res;
+    }
+
+    private static void registerTargets(LinkList links, ModelCache ownerCache, Deque<Object> todo) {
+        for (final Link link : links) {
+            final Object target = element(link.to);
+            if (target != null) {
+                register(target, ownerCache, todo);
+            }
+        }
+    }
+
+    private static void register(Object child, ModelCache ownerCache, Deque<Object> todo) {
+        ModelCache cache = get(child);
+        if (cache == null) {
+            final ModelCache created = new ModelCache(child);
+            cache = cas(child, created) ? created : get(child);
+            if (cache == created) {
+                todo.push(child);
+            }
+        }
+        if (cache != null) {
+            cache.addOwner(ownerCache.element);
+        }
+    }
+
+    private synchronized void addOwner(WeakReference<Object> owner) {
+        final Object o = owner.get();
+        int live = 0;
+        for (int i = 0; i < ownerCount; i++) {
+            final Object existing = owners[i].get();
+            if (existing == o) {
+                return;
+            }
+            if (existing != null) {
+                owners[live++] = owners[i];
+            }
+        }
+        for (int i = live; i < ownerCount; i++) {
+            owners[i] = null;
+        }
+        ownerCount = live;
+        if (ownerCount == owners.length) {
+            final WeakReference<?>[] grown = new WeakReference<?>[Math.max(2, 2 * ownerCount)];
+            System.arraycopy(owners, 0, grown, 0, ownerCount);
+            owners = grown;
+        }
+        owners[ownerCount++] = owner;
+    }
+
+    @Nullable
+    private static Object element(@Nullable Object element) {
+        if (element instanceof MutableNode || element instanceof MutableGraph) {
+            return element;
+        }
+        if (element instanceof ImmutablePortNode) {
+            return ((ImmutablePortNode) element).node();
+        }
+        //a link belongs to its source
+        return element instanceof Link ? element(((Link) element).from) : null;
+    }
+
+    private static ModelCache install(Object element) {
+        final ModelCache created = new ModelCache(element);
+        if (cas(element, created)) {
+            return created;
+        }
+        final ModelCache existing = get(element);
+        return existing == null ? install(element) : existing;
+    }
+
+    @Nullable
+    private static ModelCache get(Object element) {
+        return element instanceof MutableNode ? ((MutableNode) element).cache : ((MutableGraph) element).cache;
+    }
+
+    private static boolean cas(Object element, ModelCache cache) {
+        return element instanceof MutableNode
+                ? NODE_CACHE.compareAndSet((MutableNode) element, null, cache)
+                : GRAPH_CACHE.compareAndSet((MutableGraph) element, null, cache);
+    }
+
+    @Nullable
+    private static ModelCache drop(Object element) {
+        return element instanceof MutableNode
+                ? NODE_CACHE.getAndSet((MutableNode) element, null)
+                : GRAPH_CACHE.getAndSet((MutableGraph) element, null);
+    }
+}
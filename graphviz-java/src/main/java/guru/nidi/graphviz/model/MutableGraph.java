@@ -37,9 +37,11 @@ public class MutableGraph implements LinkSource, LinkTarget {
     protected final MutableAttributed<MutableGraph, ForNode> nodeAttrs;
     protected final MutableAttributed<MutableGraph, ForLink> linkAttrs;
     protected final MutableAttributed<MutableGraph, ForGraph> graphAttrs;
+    @Nullable
+    volatile ModelCache cache;
 
     MutableGraph() {
-        this(false, false, false, Label.of(""), new LinkedHashSet<>(), new LinkedHashSet<>(), new ArrayList<>(),
+        this(false, false, false, Label.of(""), new OrderedSet<>(), new OrderedSet<>(), new ArrayList<>(),
                 null, null, null);
         CreationContext.current().ifPresent(ctx -> graphAttrs().add(ctx.graphAttrs()));
     }
@@ -49,6 +51,15 @@ public class MutableGraph implements LinkSource, LinkTarget {
                            @Nullable Attributes<? extends ForNode> nodeAttrs,
                            @Nullable Attributes<? extends ForLink> linkAttrs,
                            @Nullable Attributes<? extends ForGraph> graphAttrs) {
+        this(strict, directed, cluster, name, new OrderedSet<>(nodes), new OrderedSet<>(subgraphs), links,
+                nodeAttrs, linkAttrs, graphAttrs);
+    }
+
+    MutableGraph(boolean strict, boolean directed, boolean cluster, Label name,
+                 OrderedSet<MutableNode> nodes, OrderedSet<MutableGraph> subgraphs, List<Link> links,
+                 @Nullable Attributes<? extends ForNode> nodeAttrs,
+                 @Nullable Attributes<? extends ForLink> linkAttrs,
+                 @Nullable Attributes<? extends ForGraph> graphAttrs) {
         this.strict = strict;
         this.directed = directed;
         this.cluster = cluster;
@@ -63,7 +74,7 @@ public class MutableGraph implements LinkSource, LinkTarget {
 
     public MutableGraph copy() {
         return new MutableGraph(strict, directed, cluster, name,
-                new LinkedHashSet<>(nodes), new LinkedHashSet<>(subgraphs), links,
+                OrderedSet.copyOf(nodes), OrderedSet.copyOf(subgraphs), links,
                 nodeAttrs, linkAttrs, graphAttrs);
     }
 
@@ -91,21 +102,25 @@ public class MutableGraph implements LinkSource, LinkTarget {
     }
 
     public MutableGraph setStrict(boolean strict) {
+        ModelCache.modified(this);
         this.strict = strict;
         return this;
     }
 
     public MutableGraph setDirected(boolean directed) {
+        ModelCache.modified(this);
         this.directed = directed;
         return this;
     }
 
     public MutableGraph setCluster(boolean cluster) {
+        ModelCache.modified(this);
         this.cluster = cluster;
         return this;
     }
 
     public MutableGraph setName(String name) {
+        ModelCache.modified(this);
         this.name = Label.of(name);
         return this;
     }
@@ -152,6 +167,7 @@ public class MutableGraph implements LinkSource, LinkTarget {
     @Override
     public void addTo(MutableGraph graph) {
         graph.subgraphs.add(this);
+        ModelCache.modified(graph);
     }
 
     @Override
@@ -164,6 +180,13 @@ public class MutableGraph implements LinkSource, LinkTarget {
         return this;
     }
 
+    /**
+     * The nodes directly contained in this graph.
+     * The collection compares its elements by identity, so it can contain distinct nodes that are equal
+     * and {@code contains} only finds the very nodes that have been added.
+     *
+     * @return the nodes
+     */
     public Collection<MutableNode> rootNodes() {
         return nodes;
     }
@@ -172,6 +195,12 @@ public class MutableGraph implements LinkSource, LinkTarget {
         return collectNodes(new HashSet<>(), new HashSet<>()).getKey();
     }
 
+    /**
+     * The subgraphs directly contained in this graph.
+     * Like {@link #rootNodes()}, the collection compares its elements by identity.
+     *
+     * @return the subgraphs
+     */
     public Collection<MutableGraph> graphs() {
         return subgraphs;
     }
@@ -188,6 +217,34 @@ public class MutableGraph implements LinkSource, LinkTarget {
         return collectNodes(new HashSet<>(), new HashSet<>()).getValue();
     }
 
+    /**
+     * Get an index of all nodes and edges of this graph and its subgraphs.
+     * The index is cached and recreated when the graph has been modified.
+     *
+     * @return the index
+     */
+    public GraphIndex index() {
+        final ModelCache c = ModelCache.of(this);
+        if (c.index == null) {
+            c.index = new GraphIndex(this);
+        }
+        return c.index;
+    }
+
+    /**
+     * Get a 128 bit hash of this graph that is independent of the order in which attributes were added.
+     * The fingerprints of nodes and subgraphs are cached,
+     * after a modification only the changed elements and the graphs containing them are hashed again.
+     * If the graph has not been modified at all, the cached fingerprint is returned immediately.
+     * Modifications done directly on the collections returned by {@link #rootNodes()} or {@link #graphs()}
+     * are not detected.
+     *
+     * @return the fingerprint
+     */
+    public Fingerprint fingerprint() {
+        return Fingerprint.of(this);
+    }
+
     private Entry<Set<MutableNode>, Set<Link>> collectNodes(Set<MutableNode> nodes, Set<Link> links) {
         for (final MutableGraph graph : subgraphs) {
             graph.collectNodes(nodes, links);
@@ -253,22 +310,47 @@ public class MutableGraph implements LinkSource, LinkTarget {
             return false;
         }
         final MutableGraph that = (MutableGraph) o;
-        return RECURSION.recurse(this, true, () -> strict == that.strict
+        return hashCode() == that.hashCode() && RECURSION.recurse(this, true, () -> strict == that.strict
                 && directed == that.directed
                 && cluster == that.cluster
                 && Objects.equals(name, that.name)
-                && Objects.equals(nodes, that.nodes)
-                && Objects.equals(subgraphs, that.subgraphs)
+                && sameElements(nodes, that.nodes)
+                && sameElements(subgraphs, that.subgraphs)
                 && Objects.equals(links, that.links)
                 && Objects.equals(nodeAttrs, that.nodeAttrs)
                 && Objects.equals(linkAttrs, that.linkAttrs)
                 && Objects.equals(graphAttrs, that.graphAttrs));
     }
 
+    //nodes and subgraphs are kept in identity based sets, but graphs are compared structurally.
+    //a set can contain several equal elements, so they are compared as multisets
+    private static <T> boolean sameElements(Set<T> a, Set<T> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        final Map<T, Integer> counts = new HashMap<>();
+        for (final T e : a) {
+            counts.merge(e, 1, Integer::sum);
+        }
+        for (final T e : b) {
+            if (counts.merge(e, -1, Integer::sum) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The structural hash code of the graph.
+     * It is cached until the graph or anything in it is modified.
+     * To detect modifications, the first call creates a cache for every node and subgraph reachable from the graph,
+     * which is kept as long as they are.
+     */
     @Override
     public int hashCode() {
-        return RECURSION.recurse(this, 0, () -> Objects.hash(
-                strict, directed, cluster, name, nodes, subgraphs, links, nodeAttrs, linkAttrs, graphAttrs));
+        final ModelCache c = ModelCache.of(this);
+        return c.hasHash() ? c.hash() : c.hash(RECURSION.recurse(this, 0, () -> Objects.hash(
+                strict, directed, cluster, name, nodes, subgraphs, links, nodeAttrs, linkAttrs, graphAttrs)));
     }
 
     @Override
@@ -29,6 +29,8 @@ public class MutableNode implements MutableAttributed<MutableNode, ForNode>, Lin
     protected Label name;
     protected final LinkList links;
     protected final MutableAttributed<MutableNode, ForNode> attributes;
+    @Nullable
+    volatile ModelCache cache;
 
     MutableNode(Label name) {
         this(name, new ArrayList<>(), Attributes.attrs());
@@ -46,6 +48,7 @@ public class MutableNode implements MutableAttributed<MutableNode, ForNode>, Lin
     }
 
     public final MutableNode setName(Label name) {
+        ModelCache.modified(this);
         this.name = name;
         if (name.isExternal()) {
             this.name = Label.of("");
@@ -133,6 +136,7 @@ public class MutableNode implements MutableAttributed<MutableNode, ForNode>, Lin
     @Override
     public void addTo(MutableGraph graph) {
         graph.nodes.add(this);
+        ModelCache.modified(graph);
     }
 
     @Override
@@ -189,14 +193,22 @@ public class MutableNode implements MutableAttributed<MutableNode, ForNode>, Lin
             return false;
         }
         final MutableNode node = (MutableNode) o;
-        return RECURSION.recurse(this, true, () -> Objects.equals(name, node.name)
+        return hashCode() == node.hashCode() && RECURSION.recurse(this, true, () -> Objects.equals(name, node.name)
                 && Objects.equals(links, node.links)
                 && Objects.equals(attributes, node.attributes));
     }
 
+    /**
+     * The structural hash code of the node.
+     * Links only contribute the names of the linked nodes, so the hash code does not depend on the rest of the graph.
+     * It is cached until the node or one of the nodes it links to is modified.
+     * To detect modifications, the first call creates a cache for every node and subgraph reachable from the node,
+     * which is kept as long as they are.
+     */
     @Override
     public int hashCode() {
-        return RECURSION.recurse(this, 0, () -> Objects.hash(name, links, attributes));
+        final ModelCache c = ModelCache.of(this);
+        return c.hasHash() ? c.hash() : c.hash(Objects.hash(name, links, attributes));
     }
 
     @Override
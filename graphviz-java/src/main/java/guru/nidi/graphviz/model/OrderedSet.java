@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * An insertion ordered set that can be copied in constant time.
+ * Elements are compared by identity, so adding an element never calculates the hash code of a whole subtree
+ * and later modifications of an element don't break the set.
+ * The order is kept in a {@link PersistentVector}, membership in a hash array mapped trie.
+ * Both are persistent, so a copy shares all its structure with the original,
+ * and adding an element only copies the paths to the changed nodes.
+ */
+final class OrderedSet<T> extends AbstractSet<T> {
+    private PersistentVector<T> order;
+    @Nullable
+    private Trie members;
+
+    OrderedSet() {
+        this(PersistentVector.empty(), null);
+    }
+
+    OrderedSet(Collection<? extends T> elements) {
+        this();
+        addAll(elements);
+    }
+
+    private OrderedSet(PersistentVector<T> order, @Nullable Trie members) {
+        this.order = order;
+        this.members = members;
+    }
+
+    static <T> OrderedSet<T> copyOf(Collection<? extends T> elements) {
+        if (elements instanceof OrderedSet) {
+            @SuppressWarnings("unchecked") //
+            final OrderedSet<T> set = (OrderedSet<T>) elements;
+            return set.copy();
+        }
+        return new OrderedSet<>(elements);
+    }
+
+    OrderedSet<T> copy() {
+        return new OrderedSet<>(order, members);
+    }
+
+    @Override
+    public int size() {
+        return order.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return members != null && members.contains(o, System.identityHashCode(o), 0);
+    }
+
+    @Override
+    public boolean add(T t) {
+        final int hash = System.identityHashCode(t);
+        final Trie newMembers = members == null ? Trie.of(t, hash, 0) : members.add(t, hash, 0);
+        if (newMembers == members) {
+            return false;
+        }
+        members = newMembers;
+        order = order.append(t);
+        return true;
+    }
+
+    //removing is rare, it just rebuilds the set
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        final List<T> rest = new ArrayList<>();
+        for (final T t : order) {
+            if (t != o) {
+                rest.add(t);
+            }
+        }
+        clear();
+        addAll(rest);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        order = PersistentVector.empty();
+        members = null;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final Iterator<T> it = order.iterator();
+        return new Iterator<T>() {
+            @Nullable
+            private T last;
+            private boolean removable;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public T next() {
+                last = it.next();
+                removable = true;
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (!removable) {
+                    throw new IllegalStateException();
+                }
+                removable = false;
+                OrderedSet.this.remove(last);
+            }
+        };
+    }
+
+    /**
+     * A node of the trie. Each slot holds an element, a sub node or a {@link Collision}.
+     * Slots are present only for the bits set in the bitmap.
+     */
+    private static final class Trie {
+        private static final int BITS = 5;
+        private static final int MASK = (1 << BITS) - 1;
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        private Trie(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        static Trie of(Object element, int hash, int shift) {
+            return new Trie(1 << ((hash >>> shift) & MASK), new Object[]{element});
+        }
+
+        boolean contains(Object element, int hash, int shift) {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return false;
+            }
+            final Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Trie) {
+                return ((Trie) slot).contains(element, hash, shift + BITS);
+            }
+            if (slot instanceof Collision) {
+                return ((Collision) slot).contains(element);
+            }
+            return slot == element;
+        }
+
+        Trie add(Object element, int hash, int shift) {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+            final int pos = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                final Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, pos);
+                newSlots[pos] = element;
+                System.arraycopy(slots, pos, newSlots, pos + 1, slots.length - pos);
+                return new Trie(bitmap | bit, newSlots);
+            }
+            final Object slot = slots[pos];
+            final Object newSlot;
+            if (slot instanceof Trie) {
+                newSlot = ((Trie) slot).add(element, hash, shift + BITS);
+            } else if (slot instanceof Collision) {
+                newSlot = ((Collision) slot).add(element);
+            } else if (slot == element) {
+                return this;
+            } else {
+                final int slotHash = System.identityHashCode(slot);
+                newSlot = slotHash == hash
+                        ? new Collision(Arrays.asList(slot, element))
+                        : of(slot, slotHash, shift + BITS).add(element, hash, shift + BITS);
+            }
+            if (newSlot == slot) {
+                return this;
+            }
+            final Object[] newSlots = slots.clone();
+            newSlots[pos] = newSlot;
+            return new Trie(bitmap, newSlots);
+        }
+    }
+
+    //elements with the same identity hash code
+    private static final class Collision {
+        final List<Object> elements;
+
+        Collision(List<Object> elements) {
+            this.elements = elements;
+        }
+
+        boolean contains(Object element) {
+            for (final Object e : elements) {
+                if (e == element) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Collision add(Object element) {
+            if (contains(element)) {
+                return this;
+            }
+            final List<Object> newElements = new ArrayList<>(elements);
+            newElements.add(element);
+            return new Collision(newElements);
+        }
+    }
+}
@@ -20,11 +20,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 
 import static guru.nidi.graphviz.attribute.validate.ValidatorEngine.UNKNOWN_ENGINE;
 import static guru.nidi.graphviz.attribute.validate.ValidatorFormat.UNKNOWN_FORMAT;
 import static guru.nidi.graphviz.attribute.validate.ValidatorMessage.loggingConsumer;
+import static java.util.Arrays.asList;
 
 public final class Serializer {
     private static final Logger LOG = LoggerFactory.getLogger(Serializer.class);
@@ -33,32 +37,110 @@ public final class Serializer {
     private final ValidatorFormat format;
     @Nullable
     private final Consumer<ValidatorMessage> messageConsumer;
+    private final ValidationMode mode;
+    private final boolean incremental;
+    private final boolean compact;
+    @Nullable
+    private final ForkJoinPool pool;
 
     public Serializer() {
-        this(UNKNOWN_ENGINE, UNKNOWN_FORMAT, loggingConsumer(LOG));
+        this(UNKNOWN_ENGINE, UNKNOWN_FORMAT, loggingConsumer(LOG), ValidationMode.SYNC, false, false, null);
     }
 
     private Serializer(ValidatorEngine engine, ValidatorFormat format,
-                       @Nullable Consumer<ValidatorMessage> messageConsumer) {
+                       @Nullable Consumer<ValidatorMessage> messageConsumer, ValidationMode mode,
+                       boolean incremental, boolean compact, @Nullable ForkJoinPool pool) {
         this.engine = engine;
         this.format = format;
         this.messageConsumer = messageConsumer;
+        this.mode = mode;
+        this.incremental = incremental;
+        this.compact = compact;
+        this.pool = pool;
     }
 
     public Serializer forEngine(ValidatorEngine engine) {
-        return new Serializer(engine, format, messageConsumer);
+        return new Serializer(engine, format, messageConsumer, mode, incremental, compact, pool);
     }
 
     public Serializer forFormat(ValidatorFormat format) {
-        return new Serializer(engine, format, messageConsumer);
+        return new Serializer(engine, format, messageConsumer, mode, incremental, compact, pool);
     }
 
     public Serializer notValidating() {
-        return new Serializer(engine, format, null);
+        return new Serializer(engine, format, null, mode, incremental, compact, pool);
+    }
+
+    /**
+     * Cache the DOT of every subgraph and node in the graph itself and reuse it in later serializations,
+     * as long as the subgraph or node and everything it links to has not been modified.
+     * This makes repeated serialization of a slowly changing graph proportional to the size of the changes,
+     * at the cost of keeping the DOT in memory.
+     * Cached parts are not validated again. When validating every attribute, synchronously or asynchronously,
+     * the validation messages are cached with the DOT and reported again when it is reused.
+     * With {@link ValidationMode#ONCE_PER_SHAPE}, the messages of reused parts are not reported again,
+     * as they have already been reported once.
+     * With a {@link ValidationMode#sampled(double) sampled} validation, nothing is reused.
+     * Modifications done directly on the collections returned by {@link MutableGraph#rootNodes()}
+     * or {@link MutableGraph#graphs()} are not detected.
+     *
+     * @return an incremental serializer
+     */
+    public Serializer incremental() {
+        return new Serializer(engine, format, messageConsumer, mode, true, compact, pool);
+    }
+
+    /**
+     * Write a smaller DOT that renders the same.
+     * Attribute values common to many nodes or edges of a graph are written only once as defaults,
+     * quotes are omitted where DOT allows it and there is no unnecessary whitespace.
+     * A compact serializer writes sequentially and does not reuse cached parts,
+     * as the defaults depend on what has been written before.
+     *
+     * @return a compact serializer
+     */
+    public Serializer compact() {
+        return new Serializer(engine, format, messageConsumer, mode, incremental, true, pool);
+    }
+
+    /**
+     * Serialize using all cores of the common pool, see {@link #parallel(ForkJoinPool)}.
+     *
+     * @return a parallel serializer
+     */
+    public Serializer parallel() {
+        return parallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Serialize and validate large graphs in parallel.
+     * Subgraphs and parts of the nodes and edges are written into separate buffers on the given pool
+     * and concatenated in order, so the output and the order of the validation messages
+     * are the same as when serializing sequentially.
+     * The message consumer is never called concurrently.
+     *
+     * @param pool the pool to serialize in
+     * @return a parallel serializer
+     */
+    public Serializer parallel(ForkJoinPool pool) {
+        return new Serializer(engine, format, messageConsumer, mode, incremental, compact, pool);
     }
 
     public Serializer validating(Consumer<ValidatorMessage> messageConsumer) {
-        return new Serializer(engine, format, messageConsumer);
+        return validating(ValidationMode.SYNC, messageConsumer);
+    }
+
+    /**
+     * Validate the attributes using the given mode.
+     * With an asynchronous mode, the attributes are collected while serializing
+     * and validated afterwards in another thread, which also calls the message consumer.
+     *
+     * @param mode            when and how often to validate
+     * @param messageConsumer the consumer of the validation messages
+     * @return a serializer validating in the given mode
+     */
+    public Serializer validating(ValidationMode mode, Consumer<ValidatorMessage> messageConsumer) {
+        return new Serializer(engine, format, messageConsumer, mode, incremental, compact, pool);
     }
 
     public String serialize(Graph graph) {
@@ -66,7 +148,45 @@ public final class Serializer {
     }
 
     public String serialize(MutableGraph graph) {
-        final AttributeValidator validator = new AttributeValidator().forEngine(engine).forFormat(format);
-        return new SerializerImpl(graph, validator, messageConsumer).serialize();
+        final SerializerImpl impl = serializerImpl(graph);
+        final String res = impl.serialize();
+        validateAsync(impl);
+        return res;
+    }
+
+    public void serialize(Graph graph, Appendable out) throws IOException {
+        serialize((MutableGraph) graph, out);
+    }
+
+    /**
+     * Write the dot representation of the graph to the given output without building it as one String.
+     * The output is written in chunks of complete lines.
+     *
+     * @param graph the graph to serialize
+     * @param out   the output to append to
+     * @throws IOException if the output cannot be written
+     */
+    public void serialize(MutableGraph graph, Appendable out) throws IOException {
+        final SerializerImpl impl = serializerImpl(graph);
+        impl.serialize(out);
+        validateAsync(impl);
+    }
+
+    private void validateAsync(SerializerImpl impl) {
+        final Executor executor = mode.executor();
+        if (executor != null && messageConsumer != null) {
+            executor.execute(impl.deferredValidation(messageConsumer));
+        }
+    }
+
+    private SerializerImpl serializerImpl(MutableGraph graph) {
+        final AttributeValidator validator = new AttributeValidator()
+                .forEngine(engine).forFormat(format).forMode(mode);
+        final boolean complete = mode == ValidationMode.SYNC || mode.executor() != null;
+        final boolean reuse = incremental && !compact
+                && (messageConsumer == null || mode == ValidationMode.ONCE_PER_SHAPE || complete);
+        final Object validation = reuse && messageConsumer != null && complete ? asList(engine, format) : null;
+        return new SerializerImpl(graph, validator, messageConsumer, mode.executor() != null, reuse, validation,
+                compact, compact ? null : pool);
     }
 }
@@ -21,26 +21,93 @@ import guru.nidi.graphviz.attribute.validate.ValidatorMessage;
 import guru.nidi.graphviz.attribute.validate.ValidatorMessage.Location;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import static guru.nidi.graphviz.attribute.validate.AttributeValidator.Scope;
 
-//TODO is creating a new Location always too costly?
 class SerializerImpl {
+    private static final int FLUSH_SIZE = 8192;
+    private static final int TOPLEVEL = -1;
+    private static final int PART_SIZE = 1000;
+
     private final MutableGraph graph;
     private final StringBuilder str;
     private final AttributeValidator validator;
+    //receives the checked attributes that have messages or, if validation is deferred, all attributes to check
+    @Nullable
+    private final Consumer<Check> checkConsumer;
+    private final boolean deferred;
+    //the attributes collected for a deferred validation
+    private final List<Check> deferredChecks = new ArrayList<>();
+    private final boolean incremental;
+    //the validation whose messages are kept with the fragments and reported again when they are reused,
+    //null if no messages are kept
+    @Nullable
+    private final Object validation;
+    private final boolean compact;
+    @Nullable
+    private final ForkJoinPool pool;
+    //the checks of a part, handed to the consumer of the parent when the part is appended
+    @Nullable
+    private final List<Check> checks;
     @Nullable
-    private final Consumer<ValidatorMessage> messageConsumer;
+    private Appendable out;
+    //the checks of the fragment currently being written
+    @Nullable
+    private List<Check> fragmentChecks;
+    //the names of the nodes already written in compact mode, as default attributes only apply to new nodes
+    private final Set<Label> mentioned = new HashSet<>();
+    //if the current graph or one of its parents has attributes that would make a block of defaults a group
+    private boolean grouping;
 
+    /**
+     * @param deferred if the attributes are only collected while writing, to be validated later by
+     *                 {@link #deferredValidation}
+     */
     SerializerImpl(MutableGraph graph, AttributeValidator validator,
-                   @Nullable Consumer<ValidatorMessage> messageConsumer) {
+                   @Nullable Consumer<ValidatorMessage> messageConsumer, boolean deferred, boolean incremental,
+                   @Nullable Object validation, boolean compact, @Nullable ForkJoinPool pool) {
         this.graph = graph;
         this.validator = validator;
-        this.messageConsumer = messageConsumer;
+        this.deferred = deferred;
+        if (messageConsumer == null) {
+            checkConsumer = null;
+        } else if (deferred) {
+            checkConsumer = deferredChecks::add;
+        } else {
+            checkConsumer = check -> check.messages(validator).forEach(messageConsumer);
+        }
+        this.incremental = incremental;
+        this.validation = validation;
+        this.compact = compact;
+        this.pool = pool;
+        checks = null;
+        str = new StringBuilder();
+    }
+
+    //a part of the output of the parent, written in parallel with the other parts
+    private SerializerImpl(SerializerImpl parent) {
+        graph = parent.graph;
+        validator = parent.validator;
+        deferred = parent.deferred;
+        incremental = parent.incremental;
+        validation = parent.validation;
+        compact = parent.compact;
+        pool = parent.pool;
+        final List<Check> partChecks = parent.checkConsumer == null ? null : new ArrayList<>();
+        checks = partChecks;
+        checkConsumer = partChecks == null ? null : partChecks::add;
         str = new StringBuilder();
     }
 
@@ -49,41 +116,192 @@ class SerializerImpl {
         return str.toString();
     }
 
+    //the buffer is only handed to out after a line break, so every chunk out receives ends with a complete line.
+    //in incremental mode, the whole graph is one fragment which is handed to out when complete
+    void serialize(Appendable out) throws IOException {
+        this.out = out;
+        try {
+            toplevelGraph(graph);
+            flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The validation of the attributes collected while writing.
+     * It does not access the graph, so the graph can be modified while it runs.
+     *
+     * @param messageConsumer the consumer of the validation messages
+     * @return the validation
+     */
+    Runnable deferredValidation(Consumer<ValidatorMessage> messageConsumer) {
+        final List<Check> toCheck = new ArrayList<>(deferredChecks);
+        return () -> {
+            for (final Check check : toCheck) {
+                check.messages(validator).forEach(messageConsumer);
+            }
+        };
+    }
+
+    private void newLine() {
+        str.append('\n');
+        flushIfFull();
+    }
+
+    private void flushIfFull() {
+        if (out != null && !incremental && str.length() >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (out != null && str.length() > 0) {
+            try {
+                out.append(str);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            str.setLength(0);
+        }
+    }
+
+    //write the items in parts of the given size, in parallel if there is a pool and more than one part.
+    //every part is written into its own buffer and the parts are appended in order,
+    //so the output and the order of the validation messages are the same as when writing sequentially
+    private <T> void parts(List<T> items, int partSize, BiConsumer<SerializerImpl, T> writer) {
+        if (pool == null || items.size() <= partSize) {
+            for (final T item : items) {
+                writer.accept(this, item);
+            }
+            return;
+        }
+        final List<SerializerImpl> parts = new ArrayList<>();
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int start = 0; start < items.size(); start += partSize) {
+            final SerializerImpl part = new SerializerImpl(this);
+            final List<T> partItems = items.subList(start, Math.min(start + partSize, items.size()));
+            parts.add(part);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                for (final T item : partItems) {
+                    writer.accept(part, item);
+                }
+            }));
+        }
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        for (final SerializerImpl part : parts) {
+            append(part);
+        }
+    }
+
+    private void append(SerializerImpl part) {
+        str.append(part.str);
+        if (part.checks != null) {
+            part.checks.forEach(this::report);
+        }
+        flushIfFull();
+    }
+
+    //reuse the fragment if it is still valid, otherwise write it and remember it.
+    //the checks of a reused fragment are reported again, so the messages are the same as when writing it
+    private void fragment(@Nullable DotFragment cached, int context, Consumer<DotFragment> store, Runnable writer) {
+        if (cached != null && cached.isValid(context, validation)) {
+            str.append(cached.dot);
+            if (validation != null) {
+                cached.checks.forEach(this::report);
+            }
+        } else {
+            final List<Check> enclosing = fragmentChecks;
+            fragmentChecks = validation == null ? null : new ArrayList<>();
+            final int start = str.length();
+            writer.run();
+            final List<Check> fragment = fragmentChecks;
+            store.accept(new DotFragment(str.substring(start), context, validation, fragment));
+            fragmentChecks = enclosing;
+            if (enclosing != null && fragment != null) {
+                enclosing.addAll(fragment);
+            }
+        }
+    }
+
+    //the context a fragment of a subgraph or of edges is written in
+    private int context(boolean useDir) {
+        return (useDir ? 2 : 0) | (graph.directed ? 1 : 0);
+    }
+
     private void toplevelGraph(MutableGraph graph) {
+        if (incremental) {
+            final ModelCache cache = ModelCache.of(graph);
+            fragment(cache.dot, TOPLEVEL, f -> cache.dot = f, () -> doToplevelGraph(graph));
+        } else {
+            doToplevelGraph(graph);
+        }
+    }
+
+    private void doToplevelGraph(MutableGraph graph) {
         final boolean useDir = hasDifferentlyDirectedSubgraphs(graph);
-        str.append(graph.strict ? "strict " : "").append(graph.directed || useDir ? "digraph " : "graph ");
+        str.append(graph.strict ? "strict " : "").append(graph.directed || useDir ? "digraph" : "graph");
         if (!graph.name.isContentEmpty()) {
-            str.append(graph.name.serialized()).append(' ');
+            str.append(' ').append(serialized(graph.name));
+        }
+        if (!compact) {
+            str.append(' ');
         }
         doGraph(graph, useDir, Scope.GRAPH);
     }
 
     private void subGraph(MutableGraph graph, boolean useDir) {
+        if (incremental) {
+            final ModelCache cache = ModelCache.of(graph);
+            fragment(cache.dot, context(useDir), f -> cache.dot = f, () -> doSubGraph(graph, useDir));
+        } else {
+            doSubGraph(graph, useDir);
+        }
+    }
+
+    private void doSubGraph(MutableGraph graph, boolean useDir) {
         if (!graph.name.isContentEmpty() || graph.cluster) {
             str.append("subgraph ")
-                    .append((graph.cluster ? Label.of("cluster_" + graph.name) : graph.name).serialized())
-                    .append(' ');
+                    .append(serialized(graph.cluster ? Label.of("cluster_" + graph.name) : graph.name))
+                    .append(compact ? "" : " ");
         }
         doGraph(graph, useDir, graph.cluster ? Scope.CLUSTER : Scope.SUB_GRAPH);
     }
 
     private void doGraph(MutableGraph graph, boolean useDir, Scope scope) {
+        final boolean outerGrouping = grouping;
+        grouping |= graph.graphAttrs.get("rank") != null || graph.graphAttrs.get("cluster") != null;
+        doGraphBody(graph, useDir, scope);
+        grouping = outerGrouping;
+    }
+
+    private void doGraphBody(MutableGraph graph, boolean useDir, Scope scope) {
         str.append("{\n");
         if (useDir && graph.graphAttrs.get("dir") == null) {
             attributes("edge", Attributes.attr("dir", graph.directed ? "forward" : "none"), Scope.EDGE,
-                    new Location(Location.Type.LINK, graph));
+                    Location.Type.LINK, graph);
         }
         graphAttrs(graph, scope);
 
         final List<MutableNode> nodes = new ArrayList<>();
+        final Map<Label, Integer> nodeIndex = new HashMap<>();
         final List<MutableGraph> graphs = new ArrayList<>();
-        final Collection<LinkSource> linkSources = linkedNodes(graph.nodes);
+        final NamedSet<LinkSource> linkSources = linkedNodes(graph.nodes);
         linkSources.addAll(linkedNodes(graph.subgraphs));
         for (final LinkSource linkSource : linkSources) {
             if (linkSource instanceof MutableNode) {
                 final MutableNode node = (MutableNode) linkSource;
-                final int i = indexOfName(nodes, node.name);
-                if (i < 0) {
+                final Integer i = nodeIndex.putIfAbsent(node.name, nodes.size());
+                if (i == null) {
                     nodes.add(node);
                 } else {
                     nodes.set(i, node.copy().merge(nodes.get(i)));
@@ -96,8 +314,12 @@ class SerializerImpl {
         nodes(graph, nodes);
         graphs(graphs, nodes, useDir);
 
-        edges(nodes, useDir);
-        edges(graphs, useDir);
+        if (compact) {
+            compactEdges(nodes, useDir);
+        } else {
+            edges(nodes, PART_SIZE, useDir);
+        }
+        edges(graphs, 1, useDir);
         str.append('}');
     }
 
@@ -109,113 +331,253 @@ class SerializerImpl {
     }
 
     private void graphAttrs(MutableGraph graph, Scope scope) {
-        attributes("graph", graph.graphAttrs, scope, new Location(Location.Type.GRAPH_ATTRS, graph));
-        attributes("node", graph.nodeAttrs, Scope.NODE, new Location(Location.Type.NODE_ATTRS, graph));
-        attributes("edge", graph.linkAttrs, Scope.EDGE, new Location(Location.Type.LINK_ATTRS, graph));
+        attributes("graph", graph.graphAttrs, scope, Location.Type.GRAPH_ATTRS, graph);
+        attributes("node", graph.nodeAttrs, Scope.NODE, Location.Type.NODE_ATTRS, graph);
+        attributes("edge", graph.linkAttrs, Scope.EDGE, Location.Type.LINK_ATTRS, graph);
     }
 
-    private int indexOfName(List<MutableNode> nodes, Label name) {
-        for (int i = 0; i < nodes.size(); i++) {
-            if (nodes.get(i).name.equals(name)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    private void attributes(String name, Attributes<?> attributed, Scope scope, Location location) {
+    private void attributes(String name, Attributes<?> attributed, Scope scope, Location.Type type, Named named) {
         final int len = str.length();
         str.append(name);
-        attrs(attributed, scope, location);
+        attrs(attributed, scope, type, named);
         if (str.length() == len + name.length()) {
             str.delete(len, str.length());
         } else {
-            str.append('\n');
+            newLine();
         }
     }
 
-    private Collection<LinkSource> linkedNodes(Collection<? extends LinkSource> nodes) {
-        final Set<LinkSource> visited = new LinkedHashSet<>();
+    private NamedSet<LinkSource> linkedNodes(Collection<? extends LinkSource> nodes) {
+        final NamedSet<LinkSource> visited = new NamedSet<>();
         for (final LinkSource node : nodes) {
             linkedNodes(node, visited);
         }
         return visited;
     }
 
-    private void linkedNodes(LinkSource linkSource, Set<LinkSource> visited) {
-        if (!visited.contains(linkSource)) {
-            visited.add(linkSource);
-            for (final Link link : linkSource.links()) {
-                linkedNodes(link.to.asLinkSource(), visited);
+    //depth first, iterative to support long chains of links
+    private void linkedNodes(LinkSource linkSource, NamedSet<LinkSource> visited) {
+        if (visited.add(linkSource)) {
+            final Deque<Iterator<Link>> stack = new ArrayDeque<>();
+            stack.push(linkSource.links().iterator());
+            while (!stack.isEmpty()) {
+                final Iterator<Link> links = stack.peek();
+                if (links.hasNext()) {
+                    final LinkSource target = links.next().to.asLinkSource();
+                    if (visited.add(target)) {
+                        stack.push(target.links().iterator());
+                    }
+                } else {
+                    stack.pop();
+                }
             }
         }
     }
 
     private void nodes(MutableGraph graph, List<MutableNode> nodes) {
+        final NamedSet<MutableNode> rootNodes = new NamedSet<>();
+        rootNodes.addAll(graph.nodes);
+        final Set<MutableNode> linked = linkedNodes(nodes);
+        final List<MutableNode> declared = new ArrayList<>();
         for (final MutableNode node : nodes) {
             if (!node.attributes.isEmpty()
-                    || (graph.nodes.contains(node) && node.links.isEmpty() && !isLinked(node, nodes))) {
-                node(node);
-                str.append('\n');
+                    || (rootNodes.contains(node) && node.links.isEmpty() && !linked.contains(node))) {
+                declared.add(node);
             }
         }
+        if (compact) {
+            hoisting("node", declared, node -> !mentioned.contains(node.name), node -> node.attributes,
+                    (node, defaults) -> doNode(node, defaults));
+        } else {
+            parts(declared, PART_SIZE, (s, node) -> {
+                s.node(node);
+                s.newLine();
+            });
+        }
     }
 
     private void node(MutableNode node) {
-        str.append(node.name.serialized());
-        attrs(node.attributes, Scope.NODE, new Location(Location.Type.NODE, node));
+        if (incremental) {
+            final ModelCache cache = ModelCache.of(node);
+            fragment(cache.dot, 0, f -> cache.dot = f, () -> doNode(node, Collections.emptyMap()));
+        } else {
+            doNode(node, Collections.emptyMap());
+        }
     }
 
-    private boolean isLinked(MutableNode node, List<MutableNode> nodes) {
-        for (final MutableNode m : nodes) {
-            for (final Link link : m.links) {
-                if (isNode(link.to, node)) {
-                    return true;
+    private void doNode(MutableNode node, Map<String, String> defaults) {
+        str.append(serialized(node.name));
+        mention(node.name);
+        attrs(node.attributes, Scope.NODE, Location.Type.NODE, node, defaults);
+    }
+
+    private Set<MutableNode> linkedNodes(List<MutableNode> nodes) {
+        final Set<MutableNode> linked = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final MutableNode node : nodes) {
+            for (final Link link : node.links) {
+                if (link.to instanceof MutableNode) {
+                    linked.add((MutableNode) link.to);
+                } else if (link.to instanceof ImmutablePortNode) {
+                    linked.add(((ImmutablePortNode) link.to).node());
                 }
             }
         }
-        return false;
+        return linked;
     }
 
-    private boolean isLinked(MutableGraph graph, List<? extends LinkSource> linkSources) {
+    private NamedSet<MutableGraph> linkedGraphs(List<? extends LinkSource> linkSources) {
+        final NamedSet<MutableGraph> linked = new NamedSet<>();
         for (final LinkSource linkSource : linkSources) {
             for (final Link link : linkSource.links()) {
-                if (link.to.equals(graph)) {
-                    return true;
+                if (link.to instanceof MutableGraph) {
+                    linked.add((MutableGraph) link.to);
                 }
             }
         }
-        return false;
+        return linked;
     }
 
-    private boolean isNode(LinkTarget target, MutableNode node) {
-        return target == node || (target instanceof ImmutablePortNode && ((ImmutablePortNode) target).node() == node);
+    private void graphs(List<MutableGraph> graphs, List<MutableNode> nodes, boolean useDir) {
+        final NamedSet<MutableGraph> linked = linkedGraphs(nodes);
+        linked.addAll(linkedGraphs(graphs));
+        parts(graphs, 1, (s, graph) -> {
+            if (graph.links.isEmpty() && !linked.contains(graph)) {
+                s.subGraph(graph, useDir);
+                s.newLine();
+            }
+        });
     }
 
-    private void graphs(List<MutableGraph> graphs, List<MutableNode> nodes, boolean useDir) {
-        for (final MutableGraph graph : graphs) {
-            if (graph.links.isEmpty() && !isLinked(graph, nodes) && !isLinked(graph, graphs)) {
-                subGraph(graph, useDir);
-                str.append('\n');
+    private void edges(List<? extends LinkSource> linkSources, int partSize, boolean useDir) {
+        parts(linkSources, partSize, (s, linkSource) -> {
+            if (incremental && linkSource instanceof MutableNode) {
+                final MutableNode node = (MutableNode) linkSource;
+                final ModelCache cache = ModelCache.of(node);
+                s.fragment(cache.edgesDot, context(useDir), f -> cache.edgesDot = f, () -> s.edges(node, useDir));
+            } else {
+                s.edges(linkSource, useDir);
             }
+        });
+    }
+
+    private void edges(LinkSource linkSource, boolean useDir) {
+        for (final Link link : linkSource.links()) {
+            edge(link, useDir, Collections.emptyMap());
+            newLine();
         }
     }
 
-    private void edges(List<? extends LinkSource> linkSources, boolean useDir) {
-        for (final LinkSource linkSource : linkSources) {
-            for (final Link link : linkSource.links()) {
-                linkTarget(link.from, useDir);
-                str.append(graph.directed || useDir ? " -> " : " -- ");
-                linkTarget(link.to, useDir);
-                attrs(link.attributes, Scope.EDGE, new Location(Location.Type.LINK, link));
-                str.append('\n');
+    //links from or to subgraphs are never put into a block, as the subgraphs would inherit its defaults
+    private void compactEdges(List<MutableNode> nodes, boolean useDir) {
+        final List<Link> links = new ArrayList<>();
+        for (final MutableNode node : nodes) {
+            links.addAll(node.links);
+        }
+        hoisting("edge", links, link -> !(link.from instanceof MutableGraph) && !(link.to instanceof MutableGraph),
+                link -> link.attributes, (link, defaults) -> edge(link, useDir, defaults));
+    }
+
+    private void edge(Link link, boolean useDir, Map<String, String> defaults) {
+        linkTarget(link.from, useDir);
+        if (compact) {
+            str.append(graph.directed || useDir ? "->" : "--");
+        } else {
+            str.append(graph.directed || useDir ? " -> " : " -- ");
+        }
+        linkTarget(link.to, useDir);
+        attrs(link.attributes, Scope.EDGE, Location.Type.LINK, link, defaults);
+    }
+
+    //write the items, putting runs of items sharing the most common attributes into a block like
+    //{node [color=red] a b}. The defaults of a block only apply inside it and only to new nodes and edges,
+    //so only eligible items are put into blocks
+    private <T> void hoisting(String kind, List<T> items, Predicate<T> eligible,
+                              Function<T, Attributes<?>> attributes, BiConsumer<T, Map<String, String>> writer) {
+        final Map<String, String> defaults = grouping
+                ? Collections.emptyMap()
+                : commonAttributes(items, eligible, attributes);
+        int i = 0;
+        while (i < items.size()) {
+            int end = i;
+            while (!defaults.isEmpty() && end < items.size() && eligible.test(items.get(end))
+                    && hasKeys(attributes.apply(items.get(end)), defaults)) {
+                end++;
             }
+            if (end - i >= 2) {
+                str.append('{').append(kind).append('[');
+                boolean first = true;
+                for (final Entry<String, String> attr : defaults.entrySet()) {
+                    str.append(first ? "" : ",").append(attr.getKey()).append('=').append(attr.getValue());
+                    first = false;
+                }
+                str.append(']');
+                newLine();
+                for (; i < end; i++) {
+                    writer.accept(items.get(i), defaults);
+                    newLine();
+                }
+                str.append('}');
+            } else {
+                writer.accept(items.get(i), Collections.emptyMap());
+                i++;
+            }
+            newLine();
+        }
+    }
+
+    //the serialized attributes set on at least half of the eligible items, at least on two of them
+    private <T> Map<String, String> commonAttributes(List<T> items, Predicate<T> eligible,
+                                                     Function<T, Attributes<?>> attributes) {
+        final Map<String, Map<String, Integer>> counts = new HashMap<>();
+        int candidates = 0;
+        for (final T item : items) {
+            if (eligible.test(item)) {
+                candidates++;
+                for (final Entry<String, Object> attr : attributes.apply(item)) {
+                    if (!attr.getKey().startsWith("$") && attr.getValue() != null) {
+                        counts.computeIfAbsent(serialized(attr.getKey()), k -> new HashMap<>())
+                                .merge(serialized(attr.getValue()), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        final int min = Math.max(2, (candidates + 1) / 2);
+        final Map<String, String> common = new TreeMap<>();
+        for (final Entry<String, Map<String, Integer>> key : counts.entrySet()) {
+            key.getValue().entrySet().stream()
+                    .filter(value -> value.getValue() >= min)
+                    .max(Entry.comparingByValue())
+                    .ifPresent(value -> common.put(key.getKey(), value.getKey()));
+        }
+        return common;
+    }
+
+    private boolean hasKeys(Attributes<?> attributes, Map<String, String> defaults) {
+        final Set<String> keys = new HashSet<>();
+        for (final Entry<String, Object> attr : attributes) {
+            if (!attr.getKey().startsWith("$") && attr.getValue() != null) {
+                keys.add(serialized(attr.getKey()));
+            }
+        }
+        return keys.containsAll(defaults.keySet());
+    }
+
+    private String serialized(Object value) {
+        final SimpleLabel label = SimpleLabel.of(value);
+        return compact ? label.compactSerialized() : label.serialized();
+    }
+
+    private void mention(Label name) {
+        if (compact) {
+            mentioned.add(name);
         }
     }
 
     private void linkTarget(Object linkable, boolean useDir) {
         if (linkable instanceof MutableNode) {
-            str.append(((MutableNode) linkable).name.serialized());
+            final Label name = ((MutableNode) linkable).name;
+            str.append(serialized(name));
+            mention(name);
         } else if (linkable instanceof ImmutablePortNode) {
             port((ImmutablePortNode) linkable);
         } else if (linkable instanceof MutableGraph) {
@@ -226,10 +588,11 @@ class SerializerImpl {
     }
 
     private void port(ImmutablePortNode portNode) {
-        str.append(portNode.name().serialized());
+        str.append(serialized(portNode.name()));
+        mention(portNode.name());
         final String record = portNode.port().record();
         if (record != null) {
-            str.append(':').append(SimpleLabel.of(record).serialized());
+            str.append(':').append(serialized(record));
         }
         final Compass compass = portNode.port().compass();
         if (compass != null) {
@@ -237,17 +600,28 @@ class SerializerImpl {
         }
     }
 
-    private void attrs(Attributes<?> attrs, Scope scope, Location location) {
+    private void attrs(Attributes<?> attrs, Scope scope, Location.Type type, Named named) {
+        attrs(attrs, scope, type, named, Collections.emptyMap());
+    }
+
+    //attributes with the same value as the defaults are not written, but still validated
+    private void attrs(Attributes<?> attrs, Scope scope, Location.Type type, Named named,
+                       Map<String, String> defaults) {
         boolean first = true;
         for (final Entry<String, Object> attr : attrs) {
             if (!attr.getKey().startsWith("$") && attr.getValue() != null) {
-                if (first) {
-                    str.append(" [");
-                    first = false;
-                } else {
-                    str.append(',');
+                final String key = serialized(attr.getKey());
+                final String value = serialized(attr.getValue());
+                if (!value.equals(defaults.get(key))) {
+                    if (first) {
+                        str.append(compact ? "[" : " [");
+                        first = false;
+                    } else {
+                        str.append(',');
+                    }
+                    str.append(key).append('=').append(value);
                 }
-                attr(attr.getKey(), attr.getValue(), scope, location);
+                validate(attr.getKey(), attr.getValue(), scope, type, named);
             }
         }
         if (!first) {
@@ -255,16 +629,108 @@ class SerializerImpl {
         }
     }
 
-    private void attr(String key, Object value, Scope scope, Location location) {
-        str.append(SimpleLabel.of(key).serialized())
-                .append('=')
-                .append(SimpleLabel.of(value).serialized());
-        validate(key, value, scope, location);
+    private void validate(String key, Object value, Scope scope, Location.Type type, Named named) {
+        if (checkConsumer != null) {
+            if (deferred) {
+                report(new Check(key, value, scope, new Location(type, named), null));
+            } else {
+                final List<ValidatorMessage> messages = validator.validate(key, value, scope);
+                if (!messages.isEmpty()) {
+                    report(new Check(key, value, scope, new Location(type, named), messages));
+                }
+            }
+        }
     }
 
-    private void validate(String key, Object value, Scope scope, Location location) {
-        if (messageConsumer != null) {
-            validator.validate(key, value, scope).forEach(msg -> messageConsumer.accept(msg.at(location)));
+    private void report(Check check) {
+        if (checkConsumer != null) {
+            checkConsumer.accept(check);
+        }
+        if (fragmentChecks != null) {
+            fragmentChecks.add(check);
+        }
+    }
+
+    /**
+     * An attribute to validate, with its messages if it has already been validated.
+     * It keeps the value of the attribute, so the validation does not depend on later modifications.
+     */
+    static final class Check {
+        private final String key;
+        private final Object value;
+        private final Scope scope;
+        private final Location location;
+        @Nullable
+        private final List<ValidatorMessage> messages;
+
+        Check(String key, Object value, Scope scope, Location location, @Nullable List<ValidatorMessage> messages) {
+            this.key = key;
+            this.value = value;
+            this.scope = scope;
+            this.location = location;
+            this.messages = messages;
+        }
+
+        List<ValidatorMessage> messages(AttributeValidator validator) {
+            final List<ValidatorMessage> res = new ArrayList<>();
+            for (final ValidatorMessage message : messages == null ? validator.validate(key, value, scope) : messages) {
+                res.add(message.at(location));
+            }
+            return res;
+        }
+    }
+
+    /**
+     * An insertion ordered set based on equals.
+     * Named elements are only hashed by their name, as the hashCode of nodes and graphs
+     * is recursive over everything reachable from them.
+     * Unnamed subgraphs would all end up in the same bucket, so they are hashed by their cached hashCode.
+     */
+    private static final class NamedSet<T extends Named> extends AbstractCollection<T> {
+        private final Map<Object, List<T>> buckets = new HashMap<>();
+        private final List<T> elements = new ArrayList<>();
+
+        @Override
+        public boolean add(T element) {
+            final List<T> bucket = buckets.computeIfAbsent(key(element), k -> new ArrayList<>(1));
+            if (contains(bucket, element)) {
+                return false;
+            }
+            bucket.add(element);
+            elements.add(element);
+            return true;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Named)) {
+                return false;
+            }
+            final List<T> bucket = buckets.get(key((Named) o));
+            return bucket != null && contains(bucket, o);
+        }
+
+        private static Object key(Named named) {
+            return named.name().isContentEmpty() ? (Object) named.hashCode() : named.name();
+        }
+
+        private boolean contains(List<T> bucket, Object o) {
+            for (final T element : bucket) {
+                if (element == o || o.equals(element)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return Collections.unmodifiableList(elements).iterator();
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
         }
     }
 }
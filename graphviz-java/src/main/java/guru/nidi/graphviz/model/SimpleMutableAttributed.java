@@ -47,6 +47,7 @@ class SimpleMutableAttributed<T, F extends For> implements MutableAttributed<T,
 
     @Override
     public T add(Attributes<? extends F> attributes) {
+        ModelCache.modified(target);
         attributes.applyTo(this.attributes);
         return target;
     }
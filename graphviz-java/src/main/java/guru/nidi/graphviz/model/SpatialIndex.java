@@ -0,0 +1,454 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.annotation.Nullable;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the nodes, edges and clusters at a position of a rendered graph.
+ * The coordinates are the ones of the output image, like in {@link SvgShapeAnalyzer}.
+ * The shapes are sorted into a grid once, so queries only look at the few shapes near the position.
+ * After creation, the index is immutable and can be queried from multiple threads.
+ */
+public final class SpatialIndex {
+    private static final Pattern NUMBER = Pattern.compile("-?[0-9]*\\.?[0-9]+(?:[eE][-+]?[0-9]+)?");
+    private static final Pattern COMMAND = Pattern.compile("[MmLlCc]|" + NUMBER.pattern());
+    private static final Pattern TRANSFORM = Pattern.compile("scale\\((" + NUMBER.pattern() + ")[ ,]+("
+            + NUMBER.pattern() + ")\\)\\s*rotate\\((" + NUMBER.pattern() + ")\\)\\s*translate\\(("
+            + NUMBER.pattern() + ")[ ,]+(" + NUMBER.pattern() + ")\\)");
+    private static final int CURVE_SEGMENTS = 8;
+    private static final double EDGE_TOLERANCE = 3;
+    private static final int[] EMPTY = new int[0];
+
+    private final List<Shape> shapes = new ArrayList<>();
+    private final Map<Element, Shape> byElement = new IdentityHashMap<>();
+    private final double cellSize;
+    private final double left;
+    private final double top;
+    private final int cols;
+    private final int rows;
+    private final int[][] cells;
+
+    /**
+     * @param finder the finder of the rendered SVG
+     * @param width  the width of the output image
+     * @param height the height of the output image
+     * @throws IllegalArgumentException if the SVG contains no graph or the graph has an unexpected transformation,
+     *                                  graphviz only rotates graphs by multiples of 90 degrees
+     */
+    public SpatialIndex(SvgElementFinder finder, int width, int height) {
+        final Element svg = finder.doc.getDocumentElement();
+        final Element graph = finder.findGraph();
+        if (graph == null) {
+            throw new IllegalArgumentException("SVG contains no g element.");
+        }
+        final String[] viewBox = svg.getAttribute("viewBox").trim().split("[ ,]+");
+        final Mapping mapping = new Mapping(width / Double.parseDouble(viewBox[2]),
+                height / Double.parseDouble(viewBox[3]),
+                Double.parseDouble(viewBox[0]), Double.parseDouble(viewBox[1]),
+                graph.getAttribute("transform"));
+        //in document order, so later shapes are drawn on top of earlier ones
+        final NodeList gs = svg.getElementsByTagName("g");
+        double area = 0;
+        for (int i = 0; i < gs.getLength(); i++) {
+            final Element g = (Element) gs.item(i);
+            final String cls = g.getAttribute("class");
+            final boolean edge = cls.contains("edge");
+            if (edge || cls.contains("node") || cls.contains("cluster")) {
+                final Shape shape = new Shape(g, shapes.size(), mapping, edge);
+                if (!shape.empty) {
+                    shapes.add(shape);
+                    byElement.put(g, shape);
+                    area += Math.max(1, shape.bounds.getWidth()) * Math.max(1, shape.bounds.getHeight());
+                }
+            }
+        }
+        final Rectangle2D all = new Rectangle2D.Double(0, 0, width, height);
+        for (final Shape shape : shapes) {
+            all.add(shape.bounds);
+        }
+        left = all.getX();
+        top = all.getY();
+        //cells about the size of a shape, but not much more cells than shapes
+        final int n = Math.max(1, shapes.size());
+        cellSize = Math.max(1, Math.max(Math.sqrt(area / n), Math.sqrt(all.getWidth() * all.getHeight() / (4 * n))));
+        cols = (int) (all.getWidth() / cellSize) + 1;
+        rows = (int) (all.getHeight() / cellSize) + 1;
+        cells = fill();
+    }
+
+    private int[][] fill() {
+        final int[] counts = new int[cols * rows];
+        for (final Shape shape : shapes) {
+            forCells(shape.bounds, cell -> counts[cell]++);
+        }
+        final int[][] res = new int[counts.length][];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = counts[i] == 0 ? EMPTY : new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (final Shape shape : shapes) {
+            forCells(shape.bounds, cell -> res[cell][counts[cell]++] = shape.id);
+        }
+        return res;
+    }
+
+    private void forCells(Rectangle2D r, CellConsumer consumer) {
+        final int x0 = col(r.getMinX());
+        final int x1 = col(r.getMaxX());
+        final int y0 = row(r.getMinY());
+        final int y1 = row(r.getMaxY());
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                consumer.accept(y * cols + x);
+            }
+        }
+    }
+
+    private int col(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) ((x - left) / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - top) / cellSize)));
+    }
+
+    /**
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the elements whose shape contains the point, the topmost first.
+     * Edges are hit if the point is near their line.
+     */
+    public List<Element> at(double x, double y) {
+        final List<Element> res = new ArrayList<>();
+        final int[] cell = cells[row(y) * cols + col(x)];
+        for (int i = cell.length - 1; i >= 0; i--) {
+            final Shape shape = shapes.get(cell[i]);
+            if (shape.hit(x, y)) {
+                res.add(shape.element);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @param x      the x coordinate of the rectangle
+     * @param y      the y coordinate of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @return the elements whose bounding box intersects the rectangle, in document order
+     */
+    public List<Element> in(double x, double y, double width, double height) {
+        final Rectangle2D r = new Rectangle2D.Double(x, y, width, height);
+        final BitSet found = new BitSet(shapes.size());
+        forCells(r, cell -> {
+            for (final int id : cells[cell]) {
+                if (shapes.get(id).bounds.intersects(r)) {
+                    found.set(id);
+                }
+            }
+        });
+        final List<Element> res = new ArrayList<>();
+        for (int id = found.nextSetBit(0); id >= 0; id = found.nextSetBit(id + 1)) {
+            res.add(shapes.get(id).element);
+        }
+        return res;
+    }
+
+    /**
+     * @param e a node, edge or cluster element
+     * @return the bounding box of the element or null if it is not indexed
+     */
+    @Nullable
+    public Rectangle2D boundsOf(Element e) {
+        final Shape shape = byElement.get(e);
+        return shape == null ? null : (Rectangle2D) shape.bounds.clone();
+    }
+
+    @FunctionalInterface
+    private interface CellConsumer {
+        void accept(int cell);
+    }
+
+    //from user coordinates of the graph to coordinates of the output image: x' = a*x + b*y + e, y' = c*x + d*y + f
+    private static final class Mapping {
+        private static final int[] COS = {1, 0, -1, 0};
+        private static final int[] SIN = {0, 1, 0, -1};
+        final double a;
+        final double b;
+        final double c;
+        final double d;
+        final double e;
+        final double f;
+
+        Mapping(double xFactor, double yFactor, double viewBoxX, double viewBoxY, String transform) {
+            final Matcher matcher = TRANSFORM.matcher(transform);
+            if (!matcher.find()) {
+                throw new IllegalArgumentException("The graph has an unexpected transformation '" + transform + "'.");
+            }
+            final double scaleX = Double.parseDouble(matcher.group(1));
+            final double scaleY = Double.parseDouble(matcher.group(2));
+            final double rotate = Double.parseDouble(matcher.group(3));
+            final double translateX = Double.parseDouble(matcher.group(4));
+            final double translateY = Double.parseDouble(matcher.group(5));
+            if (rotate % 90 != 0) {
+                throw new IllegalArgumentException("Only rotations by multiples of 90 degrees are supported, "
+                        + "but the graph is rotated by " + rotate + " degrees.");
+            }
+            final int quarter = Math.floorMod((int) rotate / 90, 4);
+            final int cos = COS[quarter];
+            final int sin = SIN[quarter];
+            a = xFactor * scaleX * cos;
+            b = -xFactor * scaleX * sin;
+            c = yFactor * scaleY * sin;
+            d = yFactor * scaleY * cos;
+            e = xFactor * (scaleX * (cos * translateX - sin * translateY) - viewBoxX);
+            f = yFactor * (scaleY * (sin * translateX + cos * translateY) - viewBoxY);
+        }
+
+        double x(double x, double y) {
+            return a * x + b * y + e;
+        }
+
+        double y(double x, double y) {
+            return c * x + d * y + f;
+        }
+
+        //the radii of an axis parallel ellipse stay axis parallel, as rotations are multiples of 90 degrees
+        double radiusX(double rx, double ry) {
+            return Math.abs(a) * rx + Math.abs(b) * ry;
+        }
+
+        double radiusY(double rx, double ry) {
+            return Math.abs(c) * rx + Math.abs(d) * ry;
+        }
+
+        double[] rect(double x, double y, double w, double h) {
+            return new double[]{x(x, y), y(x, y), x(x + w, y), y(x + w, y),
+                    x(x + w, y + h), y(x + w, y + h), x(x, y + h), y(x, y + h)};
+        }
+    }
+
+    private static final class Shape {
+        final Element element;
+        final int id;
+        final Rectangle2D bounds = new Rectangle2D.Double();
+        boolean empty = true;
+        //x, y, rx, ry
+        final List<double[]> ellipses = new ArrayList<>();
+        //x0, y0, x1, y1, ...
+        final List<double[]> polygons = new ArrayList<>();
+        final List<double[]> lines = new ArrayList<>();
+
+        Shape(Element element, int id, Mapping m, boolean edge) {
+            this.element = element;
+            this.id = id;
+            for (final Element e : elements(element, "ellipse")) {
+                final double cx = num(e, "cx");
+                final double cy = num(e, "cy");
+                final double rx = num(e, "rx");
+                final double ry = num(e, "ry");
+                final double[] ellipse = {m.x(cx, cy), m.y(cx, cy), m.radiusX(rx, ry), m.radiusY(rx, ry)};
+                ellipses.add(ellipse);
+                add(ellipse[0] - ellipse[2], ellipse[1] - ellipse[3], ellipse[0] + ellipse[2], ellipse[1] + ellipse[3]);
+            }
+            for (final Element e : elements(element, "polygon")) {
+                polygons.add(points(e.getAttribute("points"), m));
+            }
+            for (final Element e : elements(element, "polyline")) {
+                lines.add(points(e.getAttribute("points"), m));
+            }
+            for (final Element e : elements(element, "path")) {
+                //the outline of nodes and clusters with rounded corners, the line of edges
+                (edge ? lines : polygons).add(path(e.getAttribute("d"), m));
+            }
+            for (final Element e : elements(element, "image")) {
+                polygons.add(m.rect(num(e, "x"), num(e, "y"), num(e, "width"), num(e, "height")));
+            }
+            for (final Element e : elements(element, "text")) {
+                polygons.add(text(e, m));
+            }
+            for (final double[] ps : polygons) {
+                addPoints(ps);
+            }
+            for (final double[] ps : lines) {
+                addPoints(ps);
+            }
+            if (edge) {
+                bounds.setRect(bounds.getX() - EDGE_TOLERANCE, bounds.getY() - EDGE_TOLERANCE,
+                        bounds.getWidth() + 2 * EDGE_TOLERANCE, bounds.getHeight() + 2 * EDGE_TOLERANCE);
+            }
+        }
+
+        private void add(double x0, double y0, double x1, double y1) {
+            if (empty) {
+                bounds.setFrameFromDiagonal(x0, y0, x1, y1);
+                empty = false;
+            } else {
+                bounds.add(x0, y0);
+                bounds.add(x1, y1);
+            }
+        }
+
+        private void addPoints(double[] ps) {
+            for (int i = 0; i + 1 < ps.length; i += 2) {
+                add(ps[i], ps[i + 1], ps[i], ps[i + 1]);
+            }
+        }
+
+        boolean hit(double x, double y) {
+            if (!bounds.contains(x, y)) {
+                return false;
+            }
+            for (final double[] e : ellipses) {
+                final double dx = (x - e[0]) / e[2];
+                final double dy = (y - e[1]) / e[3];
+                if (dx * dx + dy * dy <= 1) {
+                    return true;
+                }
+            }
+            for (final double[] p : polygons) {
+                if (insidePolygon(p, x, y)) {
+                    return true;
+                }
+            }
+            for (final double[] l : lines) {
+                if (nearLine(l, x, y)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean insidePolygon(double[] ps, double x, double y) {
+            boolean inside = false;
+            for (int i = 0, j = ps.length - 2; i + 1 < ps.length; j = i, i += 2) {
+                if ((ps[i + 1] > y) != (ps[j + 1] > y)
+                        && x < (ps[j] - ps[i]) * (y - ps[i + 1]) / (ps[j + 1] - ps[i + 1]) + ps[i]) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+
+        private static boolean nearLine(double[] ps, double x, double y) {
+            for (int i = 0; i + 3 < ps.length; i += 2) {
+                final double dx = ps[i + 2] - ps[i];
+                final double dy = ps[i + 3] - ps[i + 1];
+                final double len = dx * dx + dy * dy;
+                final double t = len == 0 ? 0
+                        : Math.max(0, Math.min(1, ((x - ps[i]) * dx + (y - ps[i + 1]) * dy) / len));
+                final double px = ps[i] + t * dx - x;
+                final double py = ps[i + 1] + t * dy - y;
+                if (px * px + py * py <= EDGE_TOLERANCE * EDGE_TOLERANCE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static List<Element> elements(Element parent, String tag) {
+            final NodeList nodes = parent.getElementsByTagName(tag);
+            final List<Element> res = new ArrayList<>(nodes.getLength());
+            for (int i = 0; i < nodes.getLength(); i++) {
+                res.add((Element) nodes.item(i));
+            }
+            return res;
+        }
+
+        private static double num(Element e, String attr) {
+            final String value = e.getAttribute(attr);
+            return value.isEmpty() ? 0 : Double.parseDouble(value);
+        }
+
+        private static double[] points(String points, Mapping m) {
+            final Matcher matcher = NUMBER.matcher(points);
+            final List<Double> values = new ArrayList<>();
+            while (matcher.find()) {
+                values.add(Double.parseDouble(matcher.group()));
+            }
+            final double[] res = new double[values.size() & ~1];
+            for (int i = 0; i < res.length; i += 2) {
+                res[i] = m.x(values.get(i), values.get(i + 1));
+                res[i + 1] = m.y(values.get(i), values.get(i + 1));
+            }
+            return res;
+        }
+
+        //graphviz only uses absolute move, line and cubic bezier commands
+        private static double[] path(String d, Mapping m) {
+            final Matcher matcher = COMMAND.matcher(d);
+            final List<Double> res = new ArrayList<>();
+            final List<Double> args = new ArrayList<>();
+            char command = 'M';
+            while (matcher.find()) {
+                final String token = matcher.group();
+                if (Character.isLetter(token.charAt(0))) {
+                    command = Character.toUpperCase(token.charAt(0));
+                    continue;
+                }
+                args.add(Double.parseDouble(token));
+                if (command != 'C' && args.size() == 2) {
+                    res.add(m.x(args.get(0), args.get(1)));
+                    res.add(m.y(args.get(0), args.get(1)));
+                    args.clear();
+                } else if (command == 'C' && args.size() == 6 && res.size() >= 2) {
+                    curve(res, m, args);
+                    args.clear();
+                }
+            }
+            final double[] ps = new double[res.size()];
+            for (int i = 0; i < ps.length; i++) {
+                ps[i] = res.get(i);
+            }
+            return ps;
+        }
+
+        private static void curve(List<Double> res, Mapping m, List<Double> args) {
+            final double x0 = res.get(res.size() - 2);
+            final double y0 = res.get(res.size() - 1);
+            final double x1 = m.x(args.get(0), args.get(1));
+            final double y1 = m.y(args.get(0), args.get(1));
+            final double x2 = m.x(args.get(2), args.get(3));
+            final double y2 = m.y(args.get(2), args.get(3));
+            final double x3 = m.x(args.get(4), args.get(5));
+            final double y3 = m.y(args.get(4), args.get(5));
+            for (int s = 1; s <= CURVE_SEGMENTS; s++) {
+                final double t = (double) s / CURVE_SEGMENTS;
+                final double u = 1 - t;
+                res.add(u * u * u * x0 + 3 * u * u * t * x1 + 3 * u * t * t * x2 + t * t * t * x3);
+                res.add(u * u * u * y0 + 3 * u * u * t * y1 + 3 * u * t * t * y2 + t * t * t * y3);
+            }
+        }
+
+        //estimated from the font size, as the real size depends on the font
+        private static double[] text(Element e, Mapping m) {
+            final double size = e.getAttribute("font-size").isEmpty() ? 14 : num(e, "font-size");
+            final double w = .6 * size * e.getTextContent().length();
+            final double x = num(e, "x");
+            final String anchor = e.getAttribute("text-anchor");
+            final double left = "middle".equals(anchor) ? x - w / 2 : "end".equals(anchor) ? x - w : x;
+            return m.rect(left, num(e, "y") - .8 * size, w, size);
+        }
+    }
+}
@@ -16,38 +16,38 @@
 package guru.nidi.graphviz.model;
 
 import org.w3c.dom.*;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.annotation.Nullable;
 import javax.xml.XMLConstants;
-import javax.xml.namespace.QName;
 import javax.xml.parsers.*;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.*;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.function.Consumer;
 
 import static java.util.Arrays.asList;
-
+import static java.util.Collections.emptyList;
+
+/**
+ * Finds the elements of a graph in an SVG.
+ * All titles and classes are indexed with the first lookup, so lookups don't search the document.
+ * When the document is modified, the index is rebuilt with the next lookup.
+ * The lists returned are copies that can be modified by the caller.
+ * Lookups can be done from multiple threads concurrently, as long as the document is not modified meanwhile.
+ */
 public class SvgElementFinder {
     private static final DocumentBuilderFactory FACTORY = builderFactory();
     private static final TransformerFactory TRANSFORMER_FACTORY = transformerFactory();
-    private static final VariableResolver RESOLVER = new VariableResolver();
-    private static final XPath X_PATH = xPath(RESOLVER);
-    private static final XPathExpression
-            EXPR_G = pathExpression(X_PATH, "//g"),
-            EXPR_TITLE = pathExpression(X_PATH, "//title[text()=$var]"),
-            EXPR_TITLE_OR = pathExpression(X_PATH, "//title[text()=$var or text()=$alt]"),
-            EXPR_NODE = pathExpression(X_PATH, "//g[contains(@class,'node')]"),
-            EXPR_EDGE = pathExpression(X_PATH, "//g[contains(@class,'edge')]"),
-            EXPR_CLUSTER = pathExpression(X_PATH, "//g[contains(@class,'cluster')]");
     protected final Document doc;
     private final boolean hasHeader;
+    private final Indexer indexer;
 
     public static String use(String svg, Consumer<SvgElementFinder> actions) {
         final SvgElementFinder finder = new SvgElementFinder(svg);
@@ -58,12 +58,14 @@ public class SvgElementFinder {
     SvgElementFinder(SvgElementFinder finder) {
         this.doc = finder.doc;
         this.hasHeader = finder.hasHeader;
+        this.indexer = finder.indexer;
     }
 
     public SvgElementFinder(String svg) {
         try {
             doc = builder().parse(new InputSource(new StringReader(svg)));
             hasHeader = svg.startsWith("<?xml");
+            indexer = new Indexer(doc);
         } catch (SAXException | IOException e) {
             throw new AssertionError("Could not read SVG", e);
         }
@@ -72,7 +74,7 @@ public class SvgElementFinder {
     public String getSvg() {
         final StringWriter sw = new StringWriter();
         try {
-            TRANSFORMER_FACTORY.newTransformer().transform(new DOMSource(doc), new StreamResult(sw));
+            transformer().transform(new DOMSource(doc), new StreamResult(sw));
             final String out = sw.toString().replace("xmlns=\"\"", ""); //rasterizer don't like empty xmlns !?
             return hasHeader ? out : out.substring(out.indexOf("?>") + 2);
         } catch (TransformerException e) {
@@ -80,8 +82,9 @@ public class SvgElementFinder {
         }
     }
 
+    @Nullable
     public Element findGraph() {
-        return (Element) nodeExpr(EXPR_G, "");
+        return indexer.index().graph;
     }
 
     @Nullable
@@ -91,12 +94,11 @@ public class SvgElementFinder {
 
     @Nullable
     public Element findNode(String name) {
-        final org.w3c.dom.Node title = nodeExpr(EXPR_TITLE, name);
-        return title == null ? null : (Element) title.getParentNode();
+        return indexer.index().titles.get(name);
     }
 
     public List<Element> findNodes() {
-        return listOf(nodeExpr(EXPR_NODE));
+        return new ArrayList<>(indexer.index().nodes);
     }
 
     public static String nodeNameOf(Element e) {
@@ -110,12 +112,13 @@ public class SvgElementFinder {
 
     @Nullable
     public Element findLink(String from, String to) {
-        final org.w3c.dom.Node title = nodeExpr(EXPR_TITLE_OR, from + "--" + to);
-        return title == null ? null : (Element) title.getParentNode();
+        final Index index = indexer.index();
+        final Element undirected = index.titles.get(from + "--" + to);
+        return undirected == null ? index.titles.get(from + "->" + to) : undirected;
     }
 
     public List<Element> findLinks() {
-        return listOf(nodeExpr(EXPR_EDGE));
+        return new ArrayList<>(indexer.index().links);
     }
 
     public static List<String> linkedNodeNamesOf(Element e) {
@@ -130,12 +133,19 @@ public class SvgElementFinder {
 
     @Nullable
     public Element findCluster(String name) {
-        final org.w3c.dom.Node title = nodeExpr(EXPR_TITLE, "cluster_" + name);
-        return title == null ? null : (Element) title.getParentNode();
+        return indexer.index().titles.get("cluster_" + name);
     }
 
     public List<Element> findClusters() {
-        return listOf(nodeExpr(EXPR_CLUSTER));
+        return new ArrayList<>(indexer.index().clusters);
+    }
+
+    /**
+     * @param className the name of a class
+     * @return all elements having the class, in document order
+     */
+    public List<Element> findByClass(String className) {
+        return new ArrayList<>(indexer.index().classes.getOrDefault(className, emptyList()));
     }
 
     public static String clusterNameOf(Element e) {
@@ -150,32 +160,6 @@ public class SvgElementFinder {
         return new GraphElementFinder(this, g);
     }
 
-    @Nullable
-    private org.w3c.dom.Node nodeExpr(XPathExpression expr, String var) {
-        RESOLVER.set(var);
-        try {
-            return (org.w3c.dom.Node) expr.evaluate(doc, XPathConstants.NODE);
-        } catch (XPathExpressionException e) {
-            throw new AssertionError("Could not execute XPath", e);
-        }
-    }
-
-    private org.w3c.dom.NodeList nodeExpr(XPathExpression expr) {
-        try {
-            return (org.w3c.dom.NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-        } catch (XPathExpressionException e) {
-            throw new AssertionError("Could not execute XPath", e);
-        }
-    }
-
-    private List<Element> listOf(NodeList nodes) {
-        final List<Element> res = new ArrayList<>();
-        for (int i = 0; i < nodes.getLength(); i++) {
-            res.add((Element) nodes.item(i));
-        }
-        return res;
-    }
-
     private static DocumentBuilderFactory builderFactory() {
         try {
             final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -197,38 +181,112 @@ public class SvgElementFinder {
         }
     }
 
-    private DocumentBuilder builder() {
+    //the factories are not thread safe
+    private static DocumentBuilder builder() {
         try {
-            return FACTORY.newDocumentBuilder();
+            synchronized (FACTORY) {
+                return FACTORY.newDocumentBuilder();
+            }
         } catch (ParserConfigurationException e) {
             throw new AssertionError("Could not initialize DOM", e);
         }
     }
 
-    private static XPath xPath(XPathVariableResolver resolver) {
-        final XPath xPath = XPathFactory.newInstance().newXPath();
-        xPath.setXPathVariableResolver(resolver);
-        return xPath;
-    }
-
-    private static XPathExpression pathExpression(XPath xPath, String exp) {
-        try {
-            return xPath.compile(exp);
-        } catch (XPathExpressionException e) {
-            throw new AssertionError("Invalid XPath expression", e);
+    private static Transformer transformer() throws TransformerConfigurationException {
+        synchronized (TRANSFORMER_FACTORY) {
+            return TRANSFORMER_FACTORY.newTransformer();
         }
     }
 
-    private static class VariableResolver implements XPathVariableResolver {
-        private static final ThreadLocal<String> VAR = new ThreadLocal<>();
+    //drops the index whenever the document is modified and rebuilds it on demand
+    private static final class Indexer implements EventListener {
+        private final Document doc;
+        private final boolean observed;
+        @Nullable
+        private volatile Index index;
+
+        Indexer(Document doc) {
+            this.doc = doc;
+            observed = doc instanceof EventTarget;
+            if (observed) {
+                ((EventTarget) doc).addEventListener("DOMSubtreeModified", this, false);
+            }
+        }
 
-        public void set(String value) {
-            VAR.set(value);
+        Index index() {
+            Index i = index;
+            if (i == null) {
+                synchronized (this) {
+                    i = index;
+                    if (i == null) {
+                        i = new Index(doc.getDocumentElement());
+                        //without mutation events, modifications cannot be detected
+                        if (observed) {
+                            index = i;
+                        }
+                    }
+                }
+            }
+            return i;
         }
 
         @Override
-        public Object resolveVariable(QName varName) {
-            return varName.getLocalPart().equals("var") ? VAR.get() : VAR.get().replace("--", "->");
+        public void handleEvent(Event evt) {
+            index = null;
+        }
+    }
+
+    private static final class Index {
+        final Map<String, Element> titles = new HashMap<>();
+        final Map<String, List<Element>> classes = new HashMap<>();
+        final List<Element> nodes = new ArrayList<>();
+        final List<Element> links = new ArrayList<>();
+        final List<Element> clusters = new ArrayList<>();
+        @Nullable
+        Element graph;
+
+        //walks the document once, without recursion as graphs can be deeply nested
+        Index(Element root) {
+            final Deque<Element> todo = new ArrayDeque<>();
+            todo.push(root);
+            while (!todo.isEmpty()) {
+                final Element e = todo.pop();
+                add(e);
+                for (org.w3c.dom.Node n = e.getLastChild(); n != null; n = n.getPreviousSibling()) {
+                    if (n instanceof Element) {
+                        todo.push((Element) n);
+                    }
+                }
+            }
+        }
+
+        private void add(Element e) {
+            final String tag = e.getTagName();
+            if ("title".equals(tag) && e.getParentNode() instanceof Element) {
+                titles.putIfAbsent(e.getTextContent(), (Element) e.getParentNode());
+            }
+            final String cls = e.getAttribute("class");
+            if ("g".equals(tag)) {
+                if (graph == null) {
+                    graph = e;
+                }
+                if (cls.contains("node")) {
+                    nodes.add(e);
+                }
+                if (cls.contains("edge")) {
+                    links.add(e);
+                }
+                if (cls.contains("cluster")) {
+                    clusters.add(e);
+                }
+            }
+            if (!cls.isEmpty()) {
+                for (final String c : cls.split("\\s+")) {
+                    if (!c.isEmpty()) {
+                        classes.computeIfAbsent(c, k -> new ArrayList<>()).add(e);
+                    }
+                }
+            }
         }
     }
 }
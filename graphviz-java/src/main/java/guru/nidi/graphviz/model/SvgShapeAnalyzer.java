@@ -36,8 +36,7 @@ public class SvgShapeAnalyzer extends SvgElementFinder {
         final String[] viewBoxParts = viewBox.split(" ");
         xFactor = width / Double.parseDouble(viewBoxParts[2]);
         yFactor = height / Double.parseDouble(viewBoxParts[3]);
-        final Element g = (Element) finder.doc.getDocumentElement().getElementsByTagName("g").item(0);
-        transform = SvgSizeAnalyzer.transform(g.getAttribute("transform"));
+        transform = SvgSizeAnalyzer.transform(finder.findGraph().getAttribute("transform"));
     }
 
     @Nullable
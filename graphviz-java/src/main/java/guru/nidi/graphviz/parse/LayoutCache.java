@@ -0,0 +1,221 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.parse;
+
+import guru.nidi.graphviz.attribute.Attributes;
+import guru.nidi.graphviz.attribute.Label;
+import guru.nidi.graphviz.attribute.validate.AttributeValidator;
+import guru.nidi.graphviz.model.*;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+import java.util.Map.Entry;
+
+import static guru.nidi.graphviz.attribute.Attributes.attr;
+import static java.util.Arrays.asList;
+
+/**
+ * The positions of the nodes and edges of a rendered graph, to lay out a modified version of the graph
+ * without moving the parts that did not change.
+ * <pre>{@code
+ * LayoutCache cache = LayoutCache.of(Graphviz.fromGraph(g).engine(Engine.NEATO).render(Format.DOT).toString());
+ * // modify g
+ * Graphviz.fromGraph(cache.apply(g)).engine(Engine.NEATO).render(Format.SVG)
+ * }</pre>
+ * Only engines that support initial positions, i.e. neato and fdp, take the positions into account.
+ */
+public final class LayoutCache {
+    private static final Set<String> LAYOUT_ATTRIBUTES = new HashSet<>(asList(
+            "pos", "width", "height", "rects", "lp", "xlp", "head_lp", "tail_lp", "bb", "lheight", "lwidth", "lpos"));
+
+    private final Map<Label, Position> nodes = new HashMap<>();
+    private final Map<List<Label>, List<String>> edges = new HashMap<>();
+
+    private LayoutCache(MutableGraph rendered) {
+        final GraphIndex index = rendered.index();
+        for (final MutableNode node : index.nodes()) {
+            final Object pos = node.get("pos");
+            if (pos != null) {
+                nodes.put(node.name(), new Position(pos.toString(), attributes(node.attrs())));
+            }
+        }
+        for (int i = 0; i < index.edgeCount(); i++) {
+            final Object pos = index.edge(i).attrs().get("pos");
+            final boolean simple = index.from(i) >= 0 && index.to(i) >= 0;
+            for (final List<Label> key : edgeKeys(index, i)) {
+                edges.computeIfAbsent(key, k -> new ArrayList<>()).add(simple && pos != null ? pos.toString() : null);
+            }
+        }
+    }
+
+    /**
+     * Read the layout from a graph rendered with {@code Format.DOT} or {@code Format.XDOT}.
+     *
+     * @param renderedDot the output of the engine
+     * @return the layout
+     * @throws IOException if the output cannot be parsed
+     */
+    public static LayoutCache of(String renderedDot) throws IOException {
+        //like graphviz, nodes in subgraphs get the node defaults of the enclosing graphs
+        return new LayoutCache(new ParserImpl(new Lexer(new StringReader(renderedDot), "<string>"),
+                new AttributeValidator(), null, true).parse());
+    }
+
+    /**
+     * Set the positions of the layout on the nodes and edges of the graph.
+     * Nodes with the same name and attributes as in the layout are pinned at their position.
+     * The attributes of a node include the node defaults of the graph and subgraphs it is declared in.
+     * Nodes whose attributes have changed only start at their old position and new nodes are freely placed.
+     * Edges between pinned nodes keep their splines if the engine does no layout (neato -n2).
+     * The positions are given in points, so the graph attribute inputscale is set to 72.
+     *
+     * @param graph the graph to modify
+     * @return the modified graph
+     */
+    public MutableGraph apply(MutableGraph graph) {
+        final GraphIndex index = graph.index();
+        final Map<String, String> defaults = attributes(graph.nodeAttrs());
+        final Map<MutableNode, Map<String, String>> effective = new IdentityHashMap<>();
+        effectiveAttributes(graph, defaults, index, effective);
+        final Set<MutableNode> pinned = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final MutableNode node : index.nodes()) {
+            final Position position = nodes.get(node.name());
+            if (position != null) {
+                //nodes only linked from a subgraph itself are not declared yet
+                declare(node, defaults, effective);
+                final boolean unchanged = position.attributes.equals(effective.get(node));
+                node.add(attr("pos", unchanged ? position.pos + "!" : position.pos));
+                if (unchanged) {
+                    pinned.add(node);
+                }
+            }
+        }
+        final Map<List<Label>, Integer> occurrences = new HashMap<>();
+        for (int i = 0; i < index.edgeCount(); i++) {
+            final List<List<Label>> keys = edgeKeys(index, i);
+            final List<String> splines = new ArrayList<>();
+            for (final List<Label> key : keys) {
+                final int occurrence = occurrences.merge(key, 1, Integer::sum) - 1;
+                final List<String> keySplines = edges.get(key);
+                splines.add(keySplines != null && occurrence < keySplines.size() ? keySplines.get(occurrence) : null);
+            }
+            //an edge from or to a subgraph stands for several edges, they can't share one spline
+            if (keys.size() == 1 && splines.get(0) != null && index.from(i) >= 0 && index.to(i) >= 0
+                    && pinned.contains(index.node(index.from(i))) && pinned.contains(index.node(index.to(i)))) {
+                index.edge(i).attrs().add(attr("pos", splines.get(0)));
+            }
+        }
+        if (graph.graphAttrs().get("inputscale") == null) {
+            graph.graphAttrs().add(attr("inputscale", 72));
+        }
+        return graph;
+    }
+
+    public int nodeCount() {
+        return nodes.size();
+    }
+
+    //like graphviz, an edge from or to a subgraph is expanded to edges from or to all of its nodes
+    private static List<List<Label>> edgeKeys(GraphIndex index, int edge) {
+        final List<List<Label>> keys = new ArrayList<>();
+        for (final MutableNode from : endpoints(index, index.from(edge), index.edge(edge).from())) {
+            for (final MutableNode to : endpoints(index, index.to(edge), index.edge(edge).to())) {
+                keys.add(asList(from.name(), to.name()));
+            }
+        }
+        return keys;
+    }
+
+    private static List<MutableNode> endpoints(GraphIndex index, int id, @Nullable Object endpoint) {
+        if (id >= 0) {
+            return Collections.singletonList(index.node(id));
+        }
+        if (endpoint instanceof MutableGraph) {
+            final List<MutableNode> nodes = new ArrayList<>(((MutableGraph) endpoint).nodes());
+            nodes.sort(Comparator.comparingInt(index::id));
+            return nodes;
+        }
+        return Collections.emptyList();
+    }
+
+    //the parser applies the node defaults to the rendered nodes, so they must also be applied to the given nodes.
+    //like the serializer, nodes with attributes are declared before the subgraphs, the others in the edges after them
+    private static void effectiveAttributes(MutableGraph graph, Map<String, String> defaults, GraphIndex index,
+                                            Map<MutableNode, Map<String, String>> effective) {
+        final List<MutableNode> linked = new ArrayList<>();
+        final Set<MutableNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<MutableNode> todo = new ArrayDeque<>(graph.rootNodes());
+        while (!todo.isEmpty()) {
+            final MutableNode node = todo.pop();
+            if (visited.add(node)) {
+                linked.add(node);
+                for (final int target : index.successors(index.id(node))) {
+                    todo.push(index.node(target));
+                }
+            }
+        }
+        for (final MutableNode node : linked) {
+            if (!node.attrs().isEmpty()) {
+                declare(node, defaults, effective);
+            }
+        }
+        for (final MutableGraph sub : graph.graphs()) {
+            final Map<String, String> subDefaults = new HashMap<>(defaults);
+            subDefaults.putAll(attributes(sub.nodeAttrs()));
+            effectiveAttributes(sub, subDefaults, index, effective);
+        }
+        for (final MutableNode node : linked) {
+            declare(node, defaults, effective);
+        }
+    }
+
+    private static void declare(MutableNode node, Map<String, String> defaults,
+                                Map<MutableNode, Map<String, String>> effective) {
+        if (!effective.containsKey(node)) {
+            final Map<String, String> attrs = new HashMap<>(defaults);
+            attrs.putAll(attributes(node.attrs()));
+            effective.put(node, attrs);
+        }
+    }
+
+    //the attributes that are not added by the layout, as strings. The engine also adds the default label \N
+    private static Map<String, String> attributes(Attributes<?> attributes) {
+        final Map<String, String> res = new HashMap<>();
+        for (final Entry<String, Object> attr : attributes) {
+            final String key = attr.getKey();
+            if (!LAYOUT_ATTRIBUTES.contains(key) && !key.startsWith("_") && !key.startsWith("$")
+                    && attr.getValue() != null) {
+                final String value = attr.getValue().toString();
+                if (!("label".equals(key) && "\\N".equals(value))) {
+                    res.put(key, value);
+                }
+            }
+        }
+        return res;
+    }
+
+    private static final class Position {
+        final String pos;
+        final Map<String, String> attributes;
+
+        Position(String pos, Map<String, String> attributes) {
+            this.pos = pos;
+            this.attributes = attributes;
+        }
+    }
+}
@@ -23,11 +23,16 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static guru.nidi.graphviz.attribute.validate.ValidatorEngine.UNKNOWN_ENGINE;
 import static guru.nidi.graphviz.attribute.validate.ValidatorFormat.UNKNOWN_FORMAT;
 import static guru.nidi.graphviz.attribute.validate.ValidatorMessage.loggingConsumer;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
 
 public final class Parser {
     private static final Logger LOG = LoggerFactory.getLogger(Parser.class);
@@ -77,7 +82,74 @@ public final class Parser {
     }
 
     public MutableGraph read(Reader dot, String name) throws IOException {
+        return parserImpl(dot, name).parse();
+    }
+
+    /**
+     * Read all top-level graphs of the given file.
+     * The graphs are parsed lazily, so the file must be kept open until the stream is closed.
+     *
+     * @param file the file to read
+     * @return a stream of the graphs in the order they appear in the file
+     * @throws IOException if the file cannot be read
+     */
+    public Stream<MutableGraph> readAll(File file) throws IOException {
+        final Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        try {
+            return readAll(in, file.getName()).onClose(() -> close(in));
+        } catch (IOException | RuntimeException e) {
+            close(in);
+            throw e;
+        }
+    }
+
+    public Stream<MutableGraph> readAll(InputStream is) throws IOException {
+        return readAll(new InputStreamReader(is, StandardCharsets.UTF_8), "<input stream>");
+    }
+
+    public Stream<MutableGraph> readAll(String dot) throws IOException {
+        return readAll(new StringReader(dot), "<string>");
+    }
+
+    /**
+     * Read all top-level graphs from the given reader.
+     * Each graph is parsed only when the stream requests it and is handed over as soon as its closing brace is read,
+     * so processing of a graph can start while the following ones are still unread.
+     *
+     * @param dot  the reader to read from
+     * @param name the name to be used in messages
+     * @return a sequential, lazy stream of the graphs in the order they appear in the input
+     * @throws IOException if the input cannot be read
+     */
+    public Stream<MutableGraph> readAll(Reader dot, String name) throws IOException {
+        final ParserImpl parser = parserImpl(dot, name);
+        final Iterator<MutableGraph> graphs = new Iterator<MutableGraph>() {
+            @Override
+            public boolean hasNext() {
+                return parser.hasGraph();
+            }
+
+            @Override
+            public MutableGraph next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return parser.graph();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(graphs, ORDERED | NONNULL), false);
+    }
+
+    private ParserImpl parserImpl(Reader dot, String name) throws IOException {
         final AttributeValidator validator = new AttributeValidator().forEngine(engine).forFormat(format);
-        return new ParserImpl(new Lexer(dot, name), validator, messageConsumer).parse();
+        return new ParserImpl(new Lexer(dot, name), validator, messageConsumer);
+    }
+
+    private static void close(Reader in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -37,16 +37,37 @@ final class ParserImpl {
     private final AttributeValidator validator;
     @Nullable
     private final Consumer<ValidatorMessage> messageConsumer;
+    private final boolean inheritDefaults;
 
     ParserImpl(Lexer lexer, AttributeValidator validator,
                @Nullable Consumer<ValidatorMessage> messageConsumer) throws IOException {
+        this(lexer, validator, messageConsumer, false);
+    }
+
+    /**
+     * @param inheritDefaults if the node and edge defaults of a graph are also applied in its subgraphs,
+     *                        like graphviz does
+     */
+    ParserImpl(Lexer lexer, AttributeValidator validator,
+               @Nullable Consumer<ValidatorMessage> messageConsumer, boolean inheritDefaults) throws IOException {
         this.lexer = lexer;
         this.validator = validator;
         this.messageConsumer = messageConsumer;
+        this.inheritDefaults = inheritDefaults;
         token = nextToken();
     }
 
     MutableGraph parse() {
+        final MutableGraph graph = graph();
+        checkToken(EOF);
+        return graph;
+    }
+
+    boolean hasGraph() {
+        return token.type != EOF;
+    }
+
+    MutableGraph graph() {
         return CreationContext.use(ctx -> {
             final MutableGraph graph = mutGraph();
             if (token.type == STRICT) {
@@ -64,8 +85,7 @@ final class ParserImpl {
                 nextToken();
             }
             statementList(graph, false);
-            assertToken(EOF);
-            return deduplicateNodes(graph);
+            return graph;
         });
     }
 
@@ -124,7 +144,12 @@ final class ParserImpl {
     }
 
     private MutableGraph subgraph(boolean directed) {
+        final CreationContext parent = CreationContext.get();
         return CreationContext.use(ctx -> {
+            if (inheritDefaults) {
+                ctx.nodeAttrs().add(parent.nodeAttrs());
+                ctx.linkAttrs().add(parent.linkAttrs());
+            }
             final MutableGraph sub = mutGraph().setDirected(directed);
             if (token.type == SUBGRAPH) {
                 nextToken();
@@ -140,17 +165,10 @@ final class ParserImpl {
                 }
             }
             statementList(sub, true);
-            return deduplicateNodes(sub);
+            return sub;
         });
     }
 
-    //we add nodes (and others?) which possibly change afterwards
-    //-> the hashcode changes -> same node is multiple times in the set of nodes
-    //copy() normalizes this
-    private MutableGraph deduplicateNodes(MutableGraph g) {
-        return g.copy();
-    }
-
     private void edgeStatement(MutableGraph graph, LinkSource linkSource)
             throws IOException {
         final List<LinkSource> points = new ArrayList<>();
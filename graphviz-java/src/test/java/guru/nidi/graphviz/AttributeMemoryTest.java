@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz;
+
+import guru.nidi.graphviz.attribute.*;
+import guru.nidi.graphviz.model.MutableNode;
+
+import static guru.nidi.graphviz.model.Factory.mutNode;
+
+/**
+ * Shows the memory used per node, depending on its attributes.
+ */
+public class AttributeMemoryTest {
+    private static final int NODES = 1_000_000;
+
+    public static void main(String[] args) {
+        final Attributes<ForNode> shared = Attributes.attrs(Color.RED, Shape.BOX, Style.FILLED);
+        measure("no attributes", i -> mutNode("n" + i));
+        measure("one attribute", i -> mutNode("n" + i).add(Color.RED));
+        measure("three shared attributes", i -> mutNode("n" + i).add(shared));
+        measure("three attributes", i -> mutNode("n" + i).add(Color.RED, Shape.BOX, Style.FILLED));
+    }
+
+    private interface NodeFactory {
+        MutableNode create(int i);
+    }
+
+    private static void measure(String name, NodeFactory factory) {
+        final long before = used();
+        final MutableNode[] nodes = new MutableNode[NODES];
+        for (int i = 0; i < NODES; i++) {
+            nodes[i] = factory.create(i);
+        }
+        final long after = used();
+        System.out.printf("%-25s %6.1f bytes per node%n", name, (after - before) / (double) nodes.length);
+    }
+
+    private static long used() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -137,6 +137,19 @@ class CodeAnalysisTest extends CodeAssertJunit5Test {
                         In.classes(MutableNode.class, Rasterizer.class, ValidatorMessage.class).ignore("ConfusingTernary"),
                         In.clazz(ThrowingFunction.class).ignore("AvoidRethrowingException"),
                         In.classes(ThrowingFunction.class, ThrowingBiConsumer.class).ignore("SignatureDeclareThrowsException"))
+                .because("Identity is compared on purpose",
+                        In.loc("CompactMap#indexOf").ignore("CompareObjectsWithEquals"),
+                        In.loc("OrderedSet").ignore("CompareObjectsWithEquals"),
+                        In.locs("ModelCache#register", "ModelCache#addOwner").ignore("CompareObjectsWithEquals"),
+                        In.loc("ComponentSplitter").ignore("CompareObjectsWithEquals"))
+                .because("Every tile needs its own objects",
+                        In.locs("TiledRasterizer", "TilePyramid").ignore("AvoidInstantiatingObjectsInLoops"))
+                .because("Stripes, palette and chunks belong together",
+                        In.loc("PngWriter").ignore("GodClass", "AvoidInstantiatingObjectsInLoops"))
+                .because("It's an inner loop, splitting it would make it slower",
+                        In.locs("PngEncoder#filter", "SvgPipeline#transform")
+                                .ignore("CyclomaticComplexity", "StdCyclomaticComplexity", "ModifiedCyclomaticComplexity",
+                                        "NPathComplexity"))
                 .because("It's command line tool", In.loc("GraphvizServer")
                         .ignore("AvoidCatchingGenericException", "PreserveStackTrace"))
                 .because("I don't understand the message",
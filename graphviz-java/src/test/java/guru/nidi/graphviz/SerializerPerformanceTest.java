@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz;
+
+import guru.nidi.graphviz.attribute.Color;
+import guru.nidi.graphviz.model.*;
+
+import java.util.Random;
+
+import static guru.nidi.graphviz.model.Factory.*;
+
+/**
+ * Shows how the time to serialize a graph scales with its size.
+ */
+public class SerializerPerformanceTest {
+    public static void main(String[] args) {
+        final Serializer serializer = new Serializer().notValidating();
+        for (int n = 1000; n <= 256_000; n *= 2) {
+            final MutableGraph g = graph(n);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                final long start = System.nanoTime();
+                serializer.serialize(g);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%7d nodes %7d edges %8.1f ms%n", n, 2 * n, best / 1e6);
+        }
+    }
+
+    private static MutableGraph graph(int n) {
+        final Random random = new Random(n);
+        final MutableGraph g = mutGraph("perf").setDirected(true);
+        final MutableNode[] nodes = new MutableNode[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = mutNode("n" + i);
+            if (i % 3 == 0) {
+                nodes[i].add(Color.RED);
+            }
+            g.add(nodes[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            nodes[i].addLink(nodes[(i + 1) % n]);
+            nodes[i].addLink(nodes[random.nextInt(n)]);
+        }
+        return g;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.attribute;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactMapTest {
+    @Test
+    void sameAsLinkedHashMap() {
+        final Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            final Map<String, Object> expected = new LinkedHashMap<>();
+            final CompactMap actual = new CompactMap();
+            for (int op = 0; op < 40; op++) {
+                final String key = "k" + random.nextInt(12);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        assertEquals(expected.remove(key), actual.remove(key));
+                        break;
+                    case 1:
+                        final Iterator<Map.Entry<String, Object>> exp = expected.entrySet().iterator();
+                        final Iterator<Map.Entry<String, Object>> act = actual.entrySet().iterator();
+                        while (exp.hasNext()) {
+                            final boolean remove = random.nextInt(3) == 0;
+                            assertEquals(exp.next(), act.next());
+                            if (remove) {
+                                exp.remove();
+                                act.remove();
+                            }
+                        }
+                        break;
+                    default:
+                        assertEquals(expected.put(key, op), actual.put(key, op));
+                }
+                assertSame(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    void copyOnWrite() {
+        final CompactMap a = new CompactMap();
+        a.put("a", 1);
+        a.put("b", 2);
+        final CompactMap b = new CompactMap();
+        b.putAll(a);
+        b.put("a", 3);
+        b.remove("b");
+        a.put("c", 4);
+        assertEquals("{a=1, b=2, c=4}", a.toString());
+        assertEquals("{a=3}", b.toString());
+    }
+
+    @Test
+    void putAllAfterEmptyingLarge() {
+        final CompactMap map = new CompactMap();
+        for (int i = 0; i < 20; i++) {
+            map.put("k" + i, i);
+        }
+        for (int i = 0; i < 20; i++) {
+            map.remove("k" + i);
+        }
+        final CompactMap other = new CompactMap();
+        other.put("a", 1);
+        other.put("b", 2);
+        map.putAll(other);
+        assertEquals(2, map.size());
+        assertEquals(1, map.get("a"));
+        assertTrue(map.containsKey("b"));
+        assertEquals("{a=1, b=2}", map.toString());
+    }
+
+    @Test
+    void mapAttributes() {
+        final MapAttributes<ForNode> a = new MapAttributes<>();
+        a.add("b", 1).add("a", 2);
+        final MapAttributes<ForNode> b = new MapAttributes<>();
+        b.add("a", 2).add("b", 1);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals("{b=1, a=2}", a.toString());
+    }
+
+    private static void assertSame(Map<String, Object> expected, CompactMap actual) {
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        for (final String key : expected.keySet()) {
+            assertEquals(expected.get(key), actual.get(key));
+        }
+    }
+}
@@ -41,4 +41,16 @@ class SimpleLabelTest {
         assertEquals("\"1\"", SimpleLabel.of(1).serialized());
     }
 
+    @Test
+    void compact() {
+        assertEquals("hula_1", SimpleLabel.of("hula_1").compactSerialized());
+        assertEquals("-1.5", SimpleLabel.of(-1.5).compactSerialized());
+        assertEquals(".5", SimpleLabel.of(".5").compactSerialized());
+        assertEquals("\"1a\"", SimpleLabel.of("1a").compactSerialized());
+        assertEquals("\"a b\"", SimpleLabel.of("a b").compactSerialized());
+        assertEquals("\"\"", SimpleLabel.of("").compactSerialized());
+        assertEquals("\"Node\"", SimpleLabel.of("Node").compactSerialized());
+        assertEquals("<hula>", new SimpleLabel("hula", true).compactSerialized());
+    }
+
 }
@@ -132,6 +132,30 @@ class AttributeValidatorTest {
                 validate(attr("ranksep", "1.2:-4;5e2"), GRAPH));
     }
 
+    @Test
+    void repeatedValidation() {
+        for (int i = 0; i < 3; i++) {
+            assertOk(validate(attr("dim", 3), GRAPH));
+            assertOk(validate(attr("dim", "3"), GRAPH));
+            assertMessage(WARN, "dim", "has the value '1' smaller than the minimum of '2.0'.",
+                    validate(attr("dim", 1), GRAPH));
+            assertMessage(ERROR, "dim", "has the invalid integer value 'a'.", validate(attr("dim", "a"), GRAPH));
+            assertMessage(ERROR, "Damping", "is not allowed for nodes.", validate(attr("Damping", 5), NODE));
+            assertOk(validate(attr("Damping", 5), GRAPH, NEATO, UNKNOWN_FORMAT));
+            assertMessage(ERROR, "Damping", "is not allowed for engine 'DOT'.",
+                    validate(attr("Damping", 5), GRAPH, DOT, UNKNOWN_FORMAT));
+        }
+    }
+
+    @Test
+    void manyValues() {
+        for (int i = 0; i < 3000; i++) {
+            assertOk(validate(attr("dim", 3 + i), GRAPH));
+            assertMessage(ERROR, "dim", "has the invalid integer value 'a" + i + "'.",
+                    validate(attr("dim", "a" + i), GRAPH));
+        }
+    }
+
     private void assertMessage(Severity severity, String attribute, String message, List<ValidatorMessage> actual) {
         assertEquals(singletonList(new ValidatorMessage(severity, attribute, message)), actual);
     }
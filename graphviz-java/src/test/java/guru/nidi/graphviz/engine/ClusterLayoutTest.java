@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import guru.nidi.graphviz.attribute.Label;
+import guru.nidi.graphviz.engine.ClusterLayout.Split;
+import guru.nidi.graphviz.model.MutableGraph;
+import guru.nidi.graphviz.model.Serializer;
+import org.junit.jupiter.api.Test;
+
+import static guru.nidi.graphviz.attribute.Attributes.attr;
+import static guru.nidi.graphviz.model.Factory.mutGraph;
+import static guru.nidi.graphviz.model.Factory.mutNode;
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClusterLayoutTest {
+    private final MutableGraph graph = mutGraph("g").setDirected(true)
+            .graphAttrs().add(Label.of("title"), attr("rankdir", "LR"))
+            .add(mutGraph("A").setDirected(true).setCluster(true).add(mutNode("a").addLink("b")),
+                    mutGraph("B").setDirected(true).setCluster(true).add(mutNode("c").add(attr("color", "red"))),
+                    mutNode("d").addLink("a"),
+                    mutNode("b").addLink("c"));
+
+    @Test
+    void split() {
+        final Split split = new Split(graph);
+        assertEquals(asList("cluster0", "cluster1"), split.placeholders);
+        assertEquals("digraph \"g\" {\n"
+                + "graph [\"rankdir\"=\"LR\"]\n"
+                + "subgraph \"cluster_A\" {\n"
+                + "\"a\" -> \"b\"\n"
+                + "}\n"
+                + "}", new Serializer().serialize(split.clusters.get(0)));
+        assertEquals("digraph \"g\" {\n"
+                + "graph [\"rankdir\"=\"LR\"]\n"
+                + "subgraph \"cluster_B\" {\n"
+                + "\"c\" [\"color\"=\"red\"]\n"
+                + "}\n"
+                + "}", new Serializer().serialize(split.clusters.get(1)));
+        assertEquals("digraph \"g\" {\n"
+                + "graph [\"label\"=\"title\",\"rankdir\"=\"LR\"]\n"
+                + "\"cluster0\" [\"shape\"=\"box\",\"label\"=\"\",\"fixedsize\"=\"true\","
+                + "\"width\"=\"2.0\",\"height\"=\"1.0\"]\n"
+                + "\"cluster1\" [\"shape\"=\"box\",\"label\"=\"\",\"fixedsize\"=\"true\","
+                + "\"width\"=\"0.5\",\"height\"=\"0.25\"]\n"
+                + "\"cluster0\" -> \"cluster1\"\n"
+                + "\"d\" -> \"cluster0\"\n"
+                + "}", new Serializer().serialize(split.topLevel(asList(new double[]{144, 72}, new double[]{36, 18}))));
+    }
+
+    @Test
+    void linkToSubgraph() {
+        final MutableGraph inner = mutGraph("I").setDirected(true).add(mutNode("g"), mutNode("h"));
+        final MutableGraph sub = mutGraph("S").setDirected(true).add(mutNode("e"), mutNode("f"));
+        final MutableGraph g = mutGraph("g").setDirected(true)
+                .add(mutGraph("A").setDirected(true).setCluster(true).add(mutNode("a").addLink(inner), inner),
+                        sub,
+                        mutNode("d").addLink(sub).addLink(inner));
+        final Split split = new Split(g);
+        assertEquals("digraph \"g\" {\n"
+                + "subgraph \"cluster_A\" {\n"
+                + "subgraph \"I\" {\n"
+                + "\"g\"\n"
+                + "\"h\"\n"
+                + "}\n"
+                + "\"a\" -> \"g\"\n"
+                + "\"a\" -> \"h\"\n"
+                + "}\n"
+                + "}", new Serializer().serialize(split.clusters.get(0)));
+        assertEquals("digraph \"g\" {\n"
+                + "\"cluster0\" [\"shape\"=\"box\",\"label\"=\"\",\"fixedsize\"=\"true\","
+                + "\"width\"=\"2.0\",\"height\"=\"1.0\"]\n"
+                + "subgraph \"S\" {\n"
+                + "\"e\"\n"
+                + "\"f\"\n"
+                + "}\n"
+                + "\"d\" -> \"e\"\n"
+                + "\"d\" -> \"f\"\n"
+                + "\"d\" -> \"cluster0\"\n"
+                + "}", new Serializer().serialize(split.topLevel(asList(new double[]{144, 72}))));
+    }
+
+    @Test
+    void compose() {
+        final String top = "<svg width=\"200px\" height=\"100px\" viewBox=\"0.00 0.00 200.00 100.00\">\n"
+                + "<g id=\"graph0\" class=\"graph\" transform=\"scale(1 1) rotate(0) translate(4 96)\">\n"
+                + "<g id=\"node1\" class=\"node\">\n"
+                + "<title>cluster0</title>\n"
+                + "<polygon fill=\"none\" stroke=\"black\" points=\"154,-92 10,-92 10,-20 154,-20 154,-92\"/>\n"
+                + "</g>\n"
+                + "<g id=\"node2\" class=\"node\">\n"
+                + "<title>d</title>\n"
+                + "</g>\n"
+                + "</g>\n"
+                + "</svg>\n";
+        final String cluster = "<?xml version=\"1.0\"?>\n"
+                + "<svg width=\"192px\" height=\"96px\" viewBox=\"0.00 0.00 144.00 72.00\">\n"
+                + "<g id=\"graph0\"/>\n"
+                + "</svg>\n";
+        assertEquals("<svg width=\"200px\" height=\"100px\" viewBox=\"0.00 0.00 200.00 100.00\">\n"
+                + "<g id=\"graph0\" class=\"graph\" transform=\"scale(1 1) rotate(0) translate(4 96)\">\n"
+                + "<g transform=\"translate(10.00 -92.00)\">\n"
+                + "<svg width=\"144.00\" height=\"72.00\" viewBox=\"0.00 0.00 144.00 72.00\">\n"
+                + "<g id=\"c0_graph0\"/>\n"
+                + "</svg>\n"
+                + "</g>\n"
+                + "<g id=\"node2\" class=\"node\">\n"
+                + "<title>d</title>\n"
+                + "</g>\n"
+                + "</g>\n"
+                + "</svg>\n", ClusterLayout.compose(top, asList("cluster0"), asList(SvgPart.of(cluster, "Cluster 0"))));
+    }
+}
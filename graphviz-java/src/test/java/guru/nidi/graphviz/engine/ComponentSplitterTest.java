@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import guru.nidi.graphviz.model.MutableGraph;
+import guru.nidi.graphviz.model.MutableNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static guru.nidi.graphviz.attribute.Attributes.attr;
+import static guru.nidi.graphviz.model.Factory.mutGraph;
+import static guru.nidi.graphviz.model.Factory.mutNode;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ComponentSplitterTest {
+    @Test
+    void components() {
+        final MutableNode a = mutNode("a");
+        final MutableNode b = mutNode("b");
+        final MutableNode c = mutNode("c");
+        final MutableNode d = mutNode("d");
+        final MutableNode e = mutNode("e");
+        final MutableGraph cluster = mutGraph("x").setCluster(true).add(c, d);
+        final MutableGraph graph = mutGraph("g").setDirected(true).graphAttrs().add(attr("rankdir", "LR"))
+                .add(cluster, a.addLink(b), mutNode("f").addLink(c), e);
+
+        final List<MutableGraph> components = ComponentSplitter.of(graph).components();
+        assertEquals(3, components.size());
+        assertEquals(mutGraph("g").setDirected(true).graphAttrs().add(attr("rankdir", "LR"))
+                .add(cluster, mutNode("f").addLink(c)), components.get(0));
+        assertEquals(mutGraph("g").setDirected(true).graphAttrs().add(attr("rankdir", "LR"))
+                .add(a.addLink(b)), components.get(1));
+        assertEquals(mutGraph("g").setDirected(true).graphAttrs().add(attr("rankdir", "LR"))
+                .add(e), components.get(2));
+    }
+
+    @Test
+    void connected() {
+        final MutableGraph graph = mutGraph().add(mutNode("a").addLink("b"), mutNode("c").addLink("b"));
+        assertEquals(singletonList(graph), ComponentSplitter.of(graph).components());
+    }
+
+    @Test
+    void graphLink() {
+        final MutableGraph graph = mutGraph().add(mutNode("a"), mutNode("b"));
+        graph.addLink(mutNode("c"));
+        assertSame(graph, ComponentSplitter.of(graph).components().get(0));
+    }
+
+    @Test
+    void pack() {
+        final String packed = ComponentSplitter.pack(asList(
+                "<?xml version=\"1.0\"?>\n<svg width=\"30px\" height=\"20px\" viewBox=\"0 0 30 20\">"
+                        + "<g id=\"graph0\"><path fill=\"url(#l_1)\"/></g></svg>\n",
+                "<svg width=\"30pt\" height=\"60pt\"><g id=\"graph0\"/></svg>"), 10);
+        assertEquals("<svg width=\"40px\" height=\"110px\" viewBox=\"0.00 0.00 40.00 110.00\""
+                + " xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n"
+                + "<g transform=\"translate(0.00 90.00)\">\n"
+                + "<svg width=\"30px\" height=\"20px\" viewBox=\"0 0 30 20\">"
+                + "<g id=\"c0_graph0\"><path fill=\"url(#c0_l_1)\"/></g></svg>\n"
+                + "</g>\n"
+                + "<g transform=\"translate(0.00 0.00)\">\n"
+                + "<svg width=\"30pt\" height=\"60pt\"><g id=\"c1_graph0\"/></svg>\n"
+                + "</g>\n"
+                + "</svg>\n", packed);
+    }
+}
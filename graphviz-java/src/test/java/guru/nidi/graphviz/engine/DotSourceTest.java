@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import guru.nidi.graphviz.attribute.Color;
+import guru.nidi.graphviz.attribute.GraphAttr;
+import guru.nidi.graphviz.model.MutableGraph;
+import guru.nidi.graphviz.model.Serializer;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static guru.nidi.graphviz.engine.Format.SVG;
+import static guru.nidi.graphviz.model.Factory.mutGraph;
+import static guru.nidi.graphviz.model.Factory.mutNode;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DotSourceTest {
+    private static final RecordingEngine ENGINE = new RecordingEngine();
+
+    //sees the whole source, so the source cannot be streamed
+    private static final GraphvizPreProcessor WHOLE = (source, options, processOptions) -> source;
+
+    @BeforeAll
+    static void init() {
+        Graphviz.useEngine(ENGINE);
+    }
+
+    @AfterAll
+    static void end() {
+        Graphviz.releaseEngine();
+    }
+
+    @Test
+    void plain() {
+        final MutableGraph g = graph();
+        final String streamed = render(Graphviz.fromGraph(g), true);
+        assertTrue(ENGINE.chunks > 1);
+        assertEquals(render(Graphviz.fromGraph(g).processor(WHOLE), false), streamed);
+        assertEquals(new Serializer().serialize(g), streamed);
+    }
+
+    @Test
+    void lineLocalProcessors() {
+        final MutableGraph g = graph();
+        final Set<Double> preDpis = new HashSet<>();
+        final List<Double> postDpis = new ArrayList<>();
+        final GraphvizPreProcessor rename = new GraphvizPreProcessor() {
+            @Override
+            public String preProcess(String source, Options options, ProcessOptions processOptions) {
+                preDpis.add(processOptions.dpi);
+                return source.replace("\"n1\"", "first");
+            }
+
+            @Override
+            public boolean isLineLocal() {
+                return true;
+            }
+        };
+        final GraphvizPostProcessor post = new GraphvizPostProcessor() {
+            @Override
+            public EngineResult postProcess(EngineResult result, Options options, ProcessOptions processOptions) {
+                postDpis.add(processOptions.dpi);
+                return result.mapString(s -> s + "//end");
+            }
+
+            @Override
+            public boolean isLineLocal() {
+                return true;
+            }
+        };
+        final String streamed = render(Graphviz.fromGraph(g).preProcessor(rename).postProcessor(post), true);
+        final String whole = render(Graphviz.fromGraph(g).preProcessor(rename).postProcessor(post).processor(WHOLE),
+                false);
+        assertEquals(whole, streamed);
+        assertTrue(streamed.contains("first -> \"n2\""));
+        assertTrue(streamed.endsWith("//end"));
+        assertEquals(singleton(144d), preDpis);
+        assertEquals(asList(144d, 144d), postDpis);
+    }
+
+    @Test
+    void postProcessorNotLineLocal() {
+        final MutableGraph g = graph();
+        final GraphvizPostProcessor post = (result, options, processOptions) -> result;
+        assertEquals(render(Graphviz.fromGraph(g), true), render(Graphviz.fromGraph(g).postProcessor(post), false));
+    }
+
+    @Test
+    void notLineLocalProcessor() {
+        final MutableGraph g = graph();
+        final List<String> sources = new ArrayList<>();
+        final GraphvizPreProcessor count = (source, options, processOptions) -> {
+            sources.add(source);
+            return source + "//" + source.split("\n").length;
+        };
+        final String whole = render(Graphviz.fromGraph(g).preProcessor(count), false);
+        assertEquals(1, sources.size());
+        assertEquals(new Serializer().serialize(g), sources.get(0));
+        assertEquals(render(Graphviz.fromString(sources.get(0)).preProcessor(count), false), whole);
+        assertNotEquals(render(Graphviz.fromGraph(g), true), whole);
+    }
+
+    private static String render(Graphviz graphviz, boolean streaming) {
+        final String res = graphviz.render(SVG).toString();
+        assertEquals(streaming, ENGINE.streamed);
+        return res;
+    }
+
+    //enough lines to be written in several chunks
+    private static MutableGraph graph() {
+        final MutableGraph g = mutGraph().setDirected(true).graphAttrs().add(GraphAttr.dpi(144));
+        for (int i = 0; i < 2000; i++) {
+            g.add(mutNode("n" + i).add(Color.RED).addLink("n" + (i + 1)));
+        }
+        return g;
+    }
+
+    private static class RecordingEngine implements GraphvizEngine {
+        boolean streamed;
+        int chunks;
+
+        @Override
+        public void init(Consumer<GraphvizEngine> onOk, Consumer<GraphvizEngine> onError) {
+            onOk.accept(this);
+        }
+
+        @Override
+        public EngineResult execute(String src, Options options, Rasterizer rasterizer) {
+            streamed = false;
+            return EngineResult.fromString(src);
+        }
+
+        @Override
+        public EngineResult execute(DotSource src, Options options, Rasterizer rasterizer) {
+            final StringBuilder s = new StringBuilder();
+            chunks = 0;
+            try {
+                src.writeTo(new MappingAppendable(s, chunk -> {
+                    chunks++;
+                    return chunk;
+                }));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            streamed = true;
+            return EngineResult.fromString(s.toString());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import guru.nidi.graphviz.engine.PngWriter.Filter;
+import guru.nidi.graphviz.engine.PngWriter.Palette;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PngWriterTest {
+    private static final PngWriter WRITER = PngWriter.DEFAULT.executor(Runnable::run);
+
+    @Test
+    void filters() throws IOException {
+        //big enough for several stripes
+        final BufferedImage image = randomImage(300, 500, 1 << 24);
+        for (final Filter filter : Filter.values()) {
+            assertImageEquals(image, write(WRITER.filter(filter), image));
+        }
+    }
+
+    @Test
+    void compression() throws IOException {
+        final BufferedImage image = randomImage(50, 40, 8);
+        assertImageEquals(image, write(WRITER.compression(0), image));
+        assertImageEquals(image, write(WRITER.compression(9), image));
+        assertThrows(IllegalArgumentException.class, () -> WRITER.compression(10));
+    }
+
+    @Test
+    void exactPalette() throws IOException {
+        final BufferedImage image = randomImage(300, 500, 200);
+        final PngWriter palette = WRITER.palette(true);
+        assertImageEquals(image, write(palette, image));
+        assertTrue(bytes(palette, image).length < bytes(WRITER, image).length);
+    }
+
+    @Test
+    void quantizedPalette() throws IOException {
+        final BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                image.setRGB(x, y, 0xff000000 | (x * 4) << 16 | (y * 4) << 8);
+            }
+        }
+        final BufferedImage read = write(WRITER.palette(true), image);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                final int expected = image.getRGB(x, y);
+                final int actual = read.getRGB(x, y);
+                assertTrue(Math.abs(((expected >> 16) & 0xff) - ((actual >> 16) & 0xff)) <= 12);
+                assertTrue(Math.abs(((expected >> 8) & 0xff) - ((actual >> 8) & 0xff)) <= 12);
+            }
+        }
+    }
+
+    @Test
+    void medianCut() {
+        final Palette palette = Palette.of(new int[]{0xff000000, 0xff000001, 0xff0000fe, 0xff0000ff},
+                new int[]{1, 3, 1, 1});
+        assertEquals(4, palette.size());
+        final int[] colors = new int[600];
+        final int[] weights = new int[600];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = 0xff000000 | i;
+            weights[i] = 1;
+        }
+        assertEquals(256, Palette.of(colors, weights).size());
+    }
+
+    @Test
+    void combineAdler() {
+        final byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        final Adler32 all = new Adler32();
+        all.update(data);
+        final Adler32 first = new Adler32();
+        first.update(data, 0, 70_000);
+        final Adler32 second = new Adler32();
+        second.update(data, 70_000, 30_000);
+        assertEquals(all.getValue(), PngWriter.combineAdler(first.getValue(), second.getValue(), 30_000));
+    }
+
+    private static BufferedImage randomImage(int width, int height, int colors) {
+        final Random random = new Random(42);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int c = random.nextInt(colors);
+                image.setRGB(x, y, c % 7 == 0 ? 0 : 0xff000000 | c * 0x10101);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] bytes(PngWriter writer, BufferedImage image) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(image, out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage write(PngWriter writer, BufferedImage image) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(bytes(writer, image)));
+    }
+
+    private static void assertImageEquals(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -19,10 +19,12 @@ import guru.nidi.graphviz.attribute.Image;
 import guru.nidi.graphviz.model.Graph;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.condition.DisabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
 import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.Files;
 
@@ -33,6 +35,7 @@ import static guru.nidi.graphviz.model.Factory.node;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class RendererTest {
@@ -99,6 +102,23 @@ class RendererTest {
         assertThat((int) out.length(), greaterThan(19000));
     }
 
+    @Test
+    void tiledFileBatik(@TempDir File dir) throws IOException {
+        final Graphviz g = tiledGraph();
+        final File file = g.rasterize(Rasterizer.BATIK).toTiledFile(new File(dir, "tiled"), 64);
+        assertEquals(new File(dir, "tiled.png"), file);
+        assertSameImage(g.rasterize(Rasterizer.BATIK).toImage(), ImageIO.read(file));
+    }
+
+    @Test
+    void tiledOutputStreamSalamander() throws IOException {
+        final Graphviz g = tiledGraph();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        g.rasterize(Rasterizer.SALAMANDER).toTiledOutputStream(out, 64);
+        assertSameImage(g.rasterize(Rasterizer.SALAMANDER).toImage(),
+                ImageIO.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
     @Test
     @DisabledIfEnvironmentVariable(named = "CI", matches = ".*")
     void builtInRasterizer() throws IOException {
@@ -111,4 +131,33 @@ class RendererTest {
         end();
         init();
     }
+
+    private static Graphviz tiledGraph() {
+        return Graphviz.fromGraph(graph().directed().with(
+                node("a").link(node("b"), node("c")), node("b").link(node("d")), node("c").link(node("d"))));
+    }
+
+    //antialiasing can differ slightly where a shape crosses the border of a tile
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        int different = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (!similar(expected.getRGB(x, y), actual.getRGB(x, y))) {
+                    different++;
+                }
+            }
+        }
+        assertTrue(different < expected.getWidth() * expected.getHeight() / 100, different + " pixels differ");
+    }
+
+    private static boolean similar(int a, int b) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            if (Math.abs((a >>> shift & 0xff) - (b >>> shift & 0xff)) > 32) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SvgPipelineTest {
+    @Test
+    void tags() {
+        final List<String> names = new ArrayList<>();
+        final SvgTransformer recorder = (name, tag) -> {
+            names.add(name);
+            return tag;
+        };
+        final SvgTransformer upper = new SvgTransformer() {
+            private int count;
+
+            @Override
+            public String prolog(String prolog) {
+                return "<!-- x -->";
+            }
+
+            @Override
+            public String startTag(String name, String tag) {
+                count++;
+                return tag.toUpperCase();
+            }
+
+            @Override
+            public boolean isDone() {
+                return count == 2;
+            }
+        };
+        final String svg = "<?xml version=\"1.0\"?>\n<!-- <g> -->\n<svg a=\"1>2\">\n<![CDATA[<g>]]><g/>"
+                + "<!-- <text> -->\n<text>a</text>\n</svg>";
+        assertEquals("<!-- x --><SVG A=\"1>2\">\n<![CDATA[<g>]]><G/><!-- <text> -->\n<text>a</text>\n</svg>",
+                SvgPipeline.transform(svg, asList(upper, recorder)));
+        assertEquals(asList("svg", "g", "text"), names);
+    }
+
+    @Test
+    void noSvg() {
+        assertEquals("<?xml?><!-- svg -->", SvgPipeline.transform("<?xml?><!-- svg -->", asList((name, tag) -> "")));
+    }
+
+    @Test
+    void rotatedSize() {
+        final String svg = "<?xml version=\"1.0\"?>\n<svg width=\"62pt\" height=\"116pt\">\n"
+                + "<g transform=\"rotate(-90) translate(4 -112)\">\n</g></svg>";
+        assertEquals(EngineResult.fromString("<svg width=\"62px\" height=\"116px\">\n"
+                        + "<g transform=\"scale(0.5 0.5) rotate(-90) translate(4 -112)\">\n</g></svg>"),
+                new SvgSizeAdjuster().postProcess(EngineResult.fromString(svg),
+                        Options.create(), new ProcessOptions().dpi(144)));
+    }
+
+    @Test
+    void imagePaths() {
+        final String image = new File("example/ex1.png").getAbsolutePath();
+        final Options options = Options.create().image(image);
+        final String svg = "<svg width=\"62pt\" height=\"116pt\">\n"
+                + "<g transform=\"scale(1 1) rotate(0) translate(4 112)\">\n"
+                + "<image xlink:href=\"" + options.processImagePath(image) + "\"/>\n</g></svg>";
+        assertEquals(EngineResult.fromString("<svg width=\"62px\" height=\"116px\">\n"
+                        + "<g transform=\"scale(1.0 1.0) rotate(0.0) translate(4.0 112.0)\">\n"
+                        + "<image xlink:href=\"" + image + "\"/>\n</g></svg>"),
+                SvgPipeline.apply(asList(new SvgSizeAdjuster(), new SvgImagePathsRestorer()),
+                        EngineResult.fromString(svg), options, new ProcessOptions().dpi(72)));
+    }
+}
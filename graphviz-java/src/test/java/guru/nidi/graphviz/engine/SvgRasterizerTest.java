@@ -15,13 +15,15 @@
  */
 package guru.nidi.graphviz.engine;
 
+import org.apache.batik.transcoder.SVGAbstractTranscoder;
 import org.junit.jupiter.api.Test;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.lang.reflect.Field;
 import java.util.function.Consumer;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class SvgRasterizerTest {
     @Test
@@ -43,6 +45,40 @@ class SvgRasterizerTest {
                 rasterizer.svg);
     }
 
+    @Test
+    void fixSvg() {
+        assertEquals(quote("<image xlink:href='file:///a.png'/><image xlink:href= 'http://b.png'/>"
+                        + "<image xlink:href= 'https://c.png'/><image xlink:href= 'file://d.png'/>"
+                        + "<path stroke='none' d='M1,2'/><path stroke='red' d='M1:2'/>"
+                        + "<text style='stroke: #fff; stroke-opacity: 0.0; fill: #fff; fill-opacity: 0.0'/>"),
+                SvgRasterizer.fixSvg(quote("<image xlink:href='/a.png'/><image xlink:href='http://b.png'/>"
+                        + "<image xlink:href='https://c.png'/><image xlink:href='file://d.png'/>"
+                        + "<path stroke='red:blue' d='M1,2'/><path stroke='red' d='M1:2'/>"
+                        + "<text style='stroke: transparent; fill: transparent'/>")));
+        final String unchanged = quote("<svg><path stroke='red' fill='blue'/></svg>");
+        assertSame(unchanged, SvgRasterizer.fixSvg(unchanged));
+    }
+
+    @Test
+    void batikReleasesDocument() throws ReflectiveOperationException {
+        final BatikRasterizer rasterizer = new BatikRasterizer();
+        for (int i = 1; i <= 2; i++) {
+            final BufferedImage image = rasterizer.doRasterize(Graphviz.fromString(""), g -> {
+            }, quote("<svg xmlns='http://www.w3.org/2000/svg' width='" + 10 * i + "px' height='8px'>"
+                    + "<rect width='5' height='5' fill='red'/></svg>"));
+            assertEquals(10 * i, image.getWidth());
+            assertEquals(0xffff0000, image.getRGB(2, 2));
+        }
+        final Field transcoders = BatikRasterizer.class.getDeclaredField("TRANSCODERS");
+        transcoders.setAccessible(true);
+        final Object transcoder = ((ThreadLocal<?>) transcoders.get(null)).get();
+        for (final String name : new String[]{"root", "ctx"}) {
+            final Field field = SVGAbstractTranscoder.class.getDeclaredField(name);
+            field.setAccessible(true);
+            assertNull(field.get(transcoder));
+        }
+    }
+
     private static String quote(String s) {
         return s.replace("'", "\"");
     }
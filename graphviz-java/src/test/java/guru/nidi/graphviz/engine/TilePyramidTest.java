@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static guru.nidi.graphviz.engine.TiledRasterizerTest.color;
+import static guru.nidi.graphviz.model.Factory.graph;
+import static guru.nidi.graphviz.model.Factory.node;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TilePyramidTest {
+    @Test
+    void pyramid(@TempDir File dir) throws IOException {
+        final File dzi = new TilePyramid(TiledRasterizerTest::rasterize, 16, PngWriter.DEFAULT, Runnable::run).write(
+                "<svg width=\"70px\" height=\"36px\" viewBox=\"10.00 -5.00 35.00 18.00\">\n<g/>\n</svg>", dir);
+        assertEquals(new File(dir, "graph.dzi"), dzi);
+        final String descriptor = read(dzi);
+        assertTrue(descriptor.contains("TileSize=\"16\""));
+        assertTrue(descriptor.contains("<Size Width=\"70\" Height=\"36\"/>"));
+        assertEquals(8, TilePyramid.levels(70, 36));
+        assertEquals(1, TilePyramid.levels(1, 1));
+        assertEquals(2, TilePyramid.levels(2, 1));
+        assertEquals(3, TilePyramid.levels(3, 1));
+        final int[][] sizes = {{1, 1}, {2, 1}, {3, 2}, {5, 3}, {9, 5}, {18, 9}, {35, 18}, {70, 36}};
+        for (int level = 0; level < sizes.length; level++) {
+            final int w = sizes[level][0];
+            final int h = sizes[level][1];
+            final File levelDir = new File(dir, "graph_files/" + level);
+            assertEquals(((w + 15) / 16) * ((h + 15) / 16) * 2, levelDir.list().length);
+            final BufferedImage last = ImageIO.read(new File(levelDir, (w - 1) / 16 + "_" + (h - 1) / 16 + ".png"));
+            assertEquals((w - 1) % 16 + 1, last.getWidth());
+            assertEquals((h - 1) % 16 + 1, last.getHeight());
+            assertTrue(new File(levelDir, "0_0.svg").isFile());
+        }
+        final BufferedImage tile = ImageIO.read(new File(dir, "graph_files/7/2_1.png"));
+        assertEquals(color(32, 16), tile.getRGB(0, 0));
+        assertEquals(color(47, 31), tile.getRGB(15, 15));
+    }
+
+    @Test
+    void pyramidClipsTiles(@TempDir File dir) throws IOException {
+        new TilePyramid(TiledRasterizerTest::rasterize, 16, PngWriter.DEFAULT, Runnable::run).write(
+                "<svg width=\"64px\" height=\"32px\" viewBox=\"0.00 0.00 64.00 32.00\">\n"
+                        + "<g id=\"graph0\" class=\"graph\" transform=\"scale(1 1) rotate(0) translate(0 32)\">\n"
+                        + "<g id=\"node1\" class=\"node\"><title>a</title>"
+                        + "<ellipse cx=\"8\" cy=\"-24\" rx=\"4\" ry=\"4\"/></g>\n"
+                        + "<g id=\"node2\" class=\"node\"><title>b</title>"
+                        + "<g id=\"a_node2\"><ellipse cx=\"56\" cy=\"-8\" rx=\"4\" ry=\"4\"/></g></g>\n"
+                        + "</g>\n</svg>", dir);
+        final String first = read(new File(dir, "graph_files/6/0_0.svg"));
+        assertTrue(first.contains("<title>a</title>"));
+        assertFalse(first.contains("<title>b</title>"));
+        assertTrue(first.endsWith("</g>\n\n</g>\n</svg>"));
+        final String last = read(new File(dir, "graph_files/6/3_1.svg"));
+        assertFalse(last.contains("<title>a</title>"));
+        assertTrue(last.contains("<title>b</title><g id=\"a_node2\">"));
+        final String all = read(new File(dir, "graph_files/0/0_0.svg"));
+        assertTrue(all.contains("<title>a</title>") && all.contains("<title>b</title>"));
+    }
+
+    @Test
+    void rendererBatik(@TempDir File dir) throws IOException {
+        Graphviz.useEngine(new GraphvizV8Engine(), new GraphvizJdkEngine());
+        try {
+            final Graphviz g = Graphviz.fromGraph(graph().directed().with(
+                    node("a").link(node("b"), node("c")), node("b").link(node("d")), node("c").link(node("d"))));
+            final File dzi = g.rasterize(Rasterizer.BATIK).toTilePyramid(dir, 64);
+            final BufferedImage image = g.rasterize(Rasterizer.BATIK).toImage();
+            assertTrue(read(dzi).contains("<Size Width=\"" + image.getWidth()
+                    + "\" Height=\"" + image.getHeight() + "\"/>"));
+            final int level = TilePyramid.levels(image.getWidth(), image.getHeight()) - 1;
+            for (int y = 0; y < image.getHeight(); y += 64) {
+                for (int x = 0; x < image.getWidth(); x += 64) {
+                    final File file = new File(dir, "graph_files/" + level + "/" + x / 64 + "_" + y / 64 + ".png");
+                    assertSameImage(image.getSubimage(x, y,
+                            Math.min(64, image.getWidth() - x), Math.min(64, image.getHeight() - y)),
+                            ImageIO.read(file));
+                }
+            }
+        } finally {
+            Graphviz.releaseEngine();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), UTF_8);
+    }
+
+    //antialiasing can differ slightly where a shape crosses the border of a tile
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        int different = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                final int a = expected.getRGB(x, y);
+                final int b = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs((a >>> shift & 0xff) - (b >>> shift & 0xff)) > 32) {
+                        different++;
+                        break;
+                    }
+                }
+            }
+        }
+        assertTrue(different < expected.getWidth() * expected.getHeight() / 50, different + " pixels differ");
+    }
+}
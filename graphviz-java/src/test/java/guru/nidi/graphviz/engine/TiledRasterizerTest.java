@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.engine;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TiledRasterizerTest {
+    private static final Pattern TILE = Pattern.compile(
+            "width=\"(\\d+)px\" height=\"(\\d+)px\" viewBox=\"([-0-9.]+) ([-0-9.]+) ([0-9.]+) ([0-9.]+)\"");
+
+    @Test
+    void pngEncoder() throws IOException {
+        final Random random = new Random(42);
+        final int[] pixels = new int[37 * 11];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i % 5 == 0 ? 0 : random.nextInt();
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final PngEncoder png = new PngEncoder(out, 37, 11)) {
+            for (int y = 0; y < 11; y++) {
+                png.writeRow(pixels, y * 37);
+            }
+        }
+        final BufferedImage image = read(out);
+        for (int y = 0; y < 11; y++) {
+            for (int x = 0; x < 37; x++) {
+                assertEquals(pixels[y * 37 + x], alphaZero(image.getRGB(x, y)));
+            }
+        }
+    }
+
+    @Test
+    void missingRows() {
+        assertThrows(IllegalStateException.class, () -> new PngEncoder(new ByteArrayOutputStream(), 2, 2).close());
+    }
+
+    @Test
+    void tiles() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TiledRasterizer(TiledRasterizerTest::rasterize, 16, PngWriter.DEFAULT, Runnable::run).write(
+                "<?xml version=\"1.0\"?>\n<svg width=\"70px\" height=\"36px\" viewBox=\"10.00 -5.00 35.00 18.00\">\n"
+                        + "<g/>\n</svg>", out);
+        final BufferedImage image = read(out);
+        assertEquals(70, image.getWidth());
+        assertEquals(36, image.getHeight());
+        for (int y = 0; y < 36; y++) {
+            for (int x = 0; x < 70; x++) {
+                assertEquals(color(x, y), image.getRGB(x, y));
+            }
+        }
+    }
+
+    //colors every pixel by its position in the whole image, derived from the view box of the tile
+    static BufferedImage rasterize(String svg) {
+        final Matcher m = TILE.matcher(svg);
+        m.find();
+        final int w = Integer.parseInt(m.group(1));
+        final int h = Integer.parseInt(m.group(2));
+        final double scale = w / Double.parseDouble(m.group(5));
+        final int left = (int) Math.round((Double.parseDouble(m.group(3)) - 10) * scale);
+        final int top = (int) Math.round((Double.parseDouble(m.group(4)) + 5) * scale);
+        final BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                image.setRGB(x, y, color(left + x, top + y));
+            }
+        }
+        return image;
+    }
+
+    static int color(int x, int y) {
+        return 0xff000000 | x << 8 | y;
+    }
+
+    private static int alphaZero(int argb) {
+        return (argb >>> 24) == 0 ? 0 : argb;
+    }
+
+    private static BufferedImage read(ByteArrayOutputStream out) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import guru.nidi.graphviz.attribute.Label;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static guru.nidi.graphviz.attribute.Attributes.attr;
+import static guru.nidi.graphviz.model.DotTemplate.hole;
+import static guru.nidi.graphviz.model.Factory.*;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DotTemplateTest {
+    @Test
+    void instantiate() {
+        final DotTemplate template = DotTemplate.compile(graph("title " + hole("title"), hole("node"), hole("color")));
+        assertEquals(asList("title", "color", "node"), asList(template.holes().toArray()));
+
+        final Map<String, Object> values = new HashMap<>();
+        values.put("title", "say \"hi\"");
+        values.put("node", "b");
+        values.put("color", "red");
+        assertEquals(new Serializer().serialize(graph("title say \"hi\"", "b", "red")), template.instantiate(values));
+    }
+
+    @Test
+    void html() {
+        final DotTemplate template = DotTemplate.compile(mutGraph().add(
+                mutNode("a").add(Label.html("<b>" + hole("bold") + "</b>"))));
+        assertEquals("graph {\n\"a\" [\"label\"=<<b>x&amp;y</b>>]\n}",
+                template.instantiate(singletonMap("bold", "x&amp;y")));
+    }
+
+    @Test
+    void missingValue() {
+        final DotTemplate template = DotTemplate.compile(graph(hole("title"), "a", "red"));
+        assertThrows(IllegalArgumentException.class, () -> template.instantiate(new HashMap<>()));
+    }
+
+    private MutableGraph graph(String title, String node, String color) {
+        return mutGraph().graphAttrs().add(Label.of(title)).add(
+                mutNode("a").add(attr("color", color)).addLink(mutNode(node)));
+    }
+}
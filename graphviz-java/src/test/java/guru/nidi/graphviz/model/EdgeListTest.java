@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static guru.nidi.graphviz.attribute.Attributes.attr;
+import static guru.nidi.graphviz.model.Factory.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EdgeListTest {
+    private final EdgeList list = EdgeList.of(new String[]{"a", "b", "c", "d"}, new int[]{0, 1, 0}, new int[]{1, 2, 2})
+            .nodeAttribute("color", new Object[]{"red", null, null, null})
+            .edgeAttribute("weight", new Object[]{null, 2, 3});
+
+    @Test
+    void toGraph() {
+        final MutableNode a = mutNode("a").add(attr("color", "red"));
+        final MutableNode b = mutNode("b");
+        final MutableNode c = mutNode("c");
+        final MutableGraph expected = mutGraph().add(
+                a.addLink(b, Link.to(c).with(attr("weight", 3))),
+                b.addLink(Link.to(c).with(attr("weight", 2))),
+                c,
+                mutNode("d"));
+        final MutableGraph graph = list.toGraph();
+        assertEquals(expected, graph);
+        assertEquals(new Serializer().serialize(expected), new Serializer().serialize(graph));
+        assertEquals(expected.fingerprint(), graph.fingerprint());
+    }
+
+    @Test
+    void directed() {
+        final MutableGraph graph = list.directed().toGraph();
+        assertEquals(true, graph.isDirected());
+    }
+
+    @Test
+    void writeTo() throws IOException {
+        final StringWriter out = new StringWriter();
+        list.directed().writeTo(out);
+        assertEquals("digraph {\n"
+                + "\"a\" [\"color\"=\"red\"]\n"
+                + "\"d\"\n"
+                + "\"a\" -> \"b\"\n"
+                + "\"b\" -> \"c\" [\"weight\"=\"2\"]\n"
+                + "\"a\" -> \"c\" [\"weight\"=\"3\"]\n"
+                + "}", out.toString());
+    }
+
+    @Test
+    void read() throws IOException {
+        final EdgeList read = EdgeList.read(new StringReader("from\tto\tcolor\tlabel\n"
+                + "a\tb\tred\n"
+                + "\n"
+                + "b\ta\t\tx\ty\n"), '\t');
+        assertEquals(2, read.nodeCount());
+        assertEquals(2, read.edgeCount());
+        final MutableNode a = mutNode("a");
+        final MutableNode b = mutNode("b");
+        assertEquals(mutGraph().add(
+                a.addLink(Link.to(b).with(attr("color", "red"))),
+                b.addLink(Link.to(a).with(attr("label", "x\ty")))), read.toGraph());
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> EdgeList.of(new String[]{"a"}, new int[]{0}, new int[0]));
+        assertThrows(IllegalArgumentException.class, () -> EdgeList.of(new String[]{"a"}, new int[]{0}, new int[]{1}));
+        assertThrows(IllegalArgumentException.class, () -> list.nodeAttribute("color", new Object[1]));
+        assertThrows(IllegalArgumentException.class, () -> list.edgeAttribute("color", new Object[1]));
+        assertThrows(IllegalArgumentException.class, () -> EdgeList.read(new StringReader("a,b\nc\n"), ','));
+    }
+}
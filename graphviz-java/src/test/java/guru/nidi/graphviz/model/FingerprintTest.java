@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import guru.nidi.graphviz.attribute.*;
+import org.junit.jupiter.api.Test;
+
+import static guru.nidi.graphviz.model.Factory.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FingerprintTest {
+    @Test
+    void attributeOrderDoesNotMatter() {
+        final MutableGraph g1 = mutGraph("g").add(mutNode("a").add(Color.RED, Shape.BOX).addLink("b"));
+        final MutableGraph g2 = mutGraph("g").add(mutNode("a").add(Shape.BOX, Color.RED).addLink("b"));
+        assertEquals(g1.fingerprint(), g2.fingerprint());
+        assertEquals(32, g1.fingerprint().toString().length());
+    }
+
+    @Test
+    void differences() {
+        final Fingerprint f = create().fingerprint();
+        assertEquals(f, create().fingerprint());
+        assertNotEquals(f, create().setDirected(true).fingerprint());
+        assertNotEquals(f, create().setName("h").fingerprint());
+        assertNotEquals(f, create().add(mutNode("x")).fingerprint());
+        assertNotEquals(f, create().graphAttrs().add(Rank.dir(Rank.RankDir.LEFT_TO_RIGHT)).fingerprint());
+        assertNotEquals(f, create().linkAttrs().add(Color.RED).fingerprint());
+    }
+
+    @Test
+    void cachedUntilModified() {
+        final MutableNode a = mutNode("a");
+        final MutableNode c = mutNode("c");
+        final MutableGraph sub1 = mutGraph("sub1").add(a.addLink("b"));
+        final MutableGraph sub2 = mutGraph("sub2").add(c.addLink(a));
+        final MutableGraph sub3 = mutGraph("sub3").add(mutNode("d"));
+        final MutableGraph g = mutGraph("g").add(sub1, sub2, sub3);
+        final Fingerprint f = g.fingerprint();
+        assertSame(f, g.fingerprint());
+        final Fingerprint f1 = sub1.fingerprint();
+        final Fingerprint f2 = sub2.fingerprint();
+        final Fingerprint f3 = sub3.fingerprint();
+
+        a.add(Color.RED);
+        assertNotEquals(f, g.fingerprint());
+        assertNotEquals(f1, sub1.fingerprint());
+        //a is declared with its attributes in sub2 too, as c links to it
+        assertNotEquals(f2, sub2.fingerprint());
+        assertSame(f3, sub3.fingerprint());
+
+        a.setName("x");
+        assertNotEquals(f2, sub2.fingerprint());
+        a.setName("a");
+        a.attrs().add("color", null);
+        assertEquals(f, g.fingerprint());
+    }
+
+    @Test
+    void linkAttributes() {
+        final MutableNode a = mutNode("a").addLink("b");
+        final MutableGraph g = mutGraph().add(a);
+        final Fingerprint f = g.fingerprint();
+        a.links().get(0).add(Color.RED);
+        assertNotEquals(f, g.fingerprint());
+    }
+
+    @Test
+    void linkedNodeAttributes() {
+        final MutableNode b = mutNode("b");
+        final MutableGraph g = mutGraph().add(mutNode("a").addLink(b));
+        final Fingerprint plain = g.fingerprint();
+        assertNotEquals(plain, mutGraph().add(mutNode("a").addLink(mutNode("b").add(Color.RED))).fingerprint());
+        b.add(Color.RED);
+        assertNotEquals(plain, g.fingerprint());
+        final MutableNode c = mutNode("c").add(Color.BLUE);
+        b.addLink(c);
+        final Fingerprint linked = g.fingerprint();
+        c.add(Color.GREEN);
+        assertNotEquals(linked, g.fingerprint());
+    }
+
+    @Test
+    void linkToContainingGraph() {
+        final MutableNode a = mutNode("a");
+        final MutableGraph sub = mutGraph().add(a);
+        a.addLink(sub);
+        final MutableGraph g = mutGraph().add(sub);
+        assertEquals(g.fingerprint(), g.fingerprint());
+    }
+
+    private MutableGraph create() {
+        return mutGraph("g").add(
+                mutNode("a").add(Color.BLUE).addLink(mutNode("b").port("p", Compass.NORTH)),
+                mutGraph("sub").add(mutNode("c").addLink(mutNode("a"))));
+    }
+}
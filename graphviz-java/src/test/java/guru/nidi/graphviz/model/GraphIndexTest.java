@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import org.junit.jupiter.api.Test;
+
+import static guru.nidi.graphviz.model.Factory.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphIndexTest {
+    @Test
+    void nodesAndEdges() {
+        final MutableNode a = mutNode("a");
+        final MutableNode b = mutNode("b");
+        final MutableNode c = mutNode("c");
+        a.addLink(b, c);
+        b.addLink(c);
+        final MutableGraph g = mutGraph().add(a, mutGraph("sub").add(mutNode("d").addLink(a)));
+        final GraphIndex index = g.index();
+
+        assertEquals(4, index.nodeCount());
+        assertEquals(4, index.edgeCount());
+        assertEquals(0, index.id("d"));
+        assertEquals(-1, index.id("x"));
+        assertSame(a, index.node("a"));
+        assertNull(index.node("x"));
+        assertSame(c, index.node(index.id(c)));
+
+        final int ia = index.id(a);
+        final int ib = index.id(b);
+        final int ic = index.id(c);
+        assertArrayEquals(new int[]{ib, ic}, index.successors(ia));
+        assertArrayEquals(new int[]{ia, ib}, index.predecessors(ic));
+        assertEquals(2, index.outDegree(ia));
+        assertEquals(1, index.inDegree(ia));
+        assertEquals(3, index.degree(ia));
+        assertEquals(2, index.maxOutDegree());
+        assertEquals(2, index.maxInDegree());
+        assertEquals(2.0, index.averageDegree());
+
+        assertSame(a.links().get(1), index.edge("a", "c"));
+        assertNull(index.edge("c", "a"));
+        final int e = index.edge(ib, ic);
+        assertSame(b.links().get(0), index.edge(e));
+        assertEquals(ib, index.from(e));
+        assertEquals(ic, index.to(e));
+    }
+
+    @Test
+    void graphLinks() {
+        final MutableGraph sub = mutGraph("sub").add(mutNode("a"));
+        final MutableGraph g = mutGraph().add(sub.addLink(mutNode("b")));
+        final GraphIndex index = g.index();
+        assertEquals(2, index.nodeCount());
+        assertEquals(1, index.edgeCount());
+        assertEquals(-1, index.from(0));
+        assertEquals(index.id("b"), index.to(0));
+        assertEquals(0, index.outDegree(index.id("a")));
+        assertEquals(0, index.inDegree(index.id("b")));
+    }
+
+    @Test
+    void cached() {
+        final MutableGraph g = mutGraph().add(mutNode("a"));
+        assertSame(g.index(), g.index());
+    }
+
+    @Test
+    void invalidatedOnModification() {
+        final MutableNode a = mutNode("a");
+        final MutableGraph g = mutGraph().add(a);
+        final GraphIndex index = g.index();
+
+        a.addLink("b");
+        final GraphIndex linked = g.index();
+        assertNotSame(index, linked);
+        assertEquals(2, linked.nodeCount());
+        assertEquals(1, linked.outDegree(linked.id("a")));
+
+        a.links().clear();
+        assertEquals(0, g.index().edgeCount());
+
+        g.add(mutNode("c"));
+        assertEquals(2, g.index().nodeCount());
+
+        a.setName("x");
+        assertEquals(-1, g.index().id("a"));
+        assertSame(a, g.index().node("x"));
+    }
+
+    @Test
+    void keptOnModificationOfOtherGraph() {
+        final MutableNode a = mutNode("a");
+        final MutableGraph g = mutGraph().add(a);
+        final MutableGraph other = mutGraph().add(mutNode("b"));
+        final GraphIndex index = g.index();
+        other.index();
+        other.add(mutNode("c"));
+        other.rootNodes().iterator().next().addLink("d");
+        assertSame(index, g.index());
+        a.addLink(other);
+        assertNotSame(index, g.index());
+    }
+
+    @Test
+    void longChain() {
+        final MutableGraph g = mutGraph();
+        MutableNode last = mutNode("n0");
+        g.add(last);
+        for (int i = 1; i < 50000; i++) {
+            final MutableNode node = mutNode("n" + i);
+            last.addLink(node);
+            last = node;
+        }
+        final GraphIndex index = g.index();
+        assertEquals(50000, index.nodeCount());
+        assertEquals(49999, index.edgeCount());
+        assertEquals(49999, index.id("n49999"));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import guru.nidi.graphviz.attribute.Color;
+import org.junit.jupiter.api.Test;
+
+import static guru.nidi.graphviz.model.Factory.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MutableGraphTest {
+    @Test
+    void structuralEquality() {
+        assertEquals(create(), create());
+        assertEquals(create().hashCode(), create().hashCode());
+        assertNotEquals(create(), create().add(mutNode("x")));
+    }
+
+    @Test
+    void hashCodeFollowsModifications() {
+        final MutableGraph g = create();
+        final int hash = g.hashCode();
+        final MutableNode a = g.rootNodes().iterator().next();
+        a.add(Color.RED);
+        assertNotEquals(hash, g.hashCode());
+        assertNotEquals(create(), g);
+        final MutableGraph red = create();
+        red.rootNodes().iterator().next().add(Color.RED);
+        assertEquals(red, g);
+        assertEquals(red.hashCode(), g.hashCode());
+    }
+
+    @Test
+    void identityMembership() {
+        final MutableNode a1 = mutNode("a");
+        final MutableNode a2 = mutNode("a");
+        final MutableGraph g = mutGraph().add(a1, a2);
+        assertEquals(2, g.rootNodes().size());
+        a1.addLink("b");
+        assertTrue(g.rootNodes().contains(a1));
+        assertTrue(g.rootNodes().contains(a2));
+        assertEquals("graph {\na -- b\n}", g.toString().replace("\"", ""));
+    }
+
+    @Test
+    void equalMembersAreCounted() {
+        //"Aa" and "BB" have the same hash code, so the graphs are only distinguished by their nodes
+        final MutableGraph twice = mutGraph().add(mutNode("Aa"), mutNode("Aa"));
+        final MutableGraph both = mutGraph().add(mutNode("Aa"), mutNode("BB"));
+        assertEquals(twice.hashCode(), both.hashCode());
+        assertNotEquals(twice, both);
+        assertNotEquals(both, twice);
+    }
+
+    @Test
+    void linkedNodesInvalidateHashCode() {
+        final MutableNode b = mutNode("b");
+        final MutableNode a = mutNode("a").addLink(b);
+        b.addLink(a);
+        final MutableGraph g = mutGraph().add(a);
+        final int hash = g.hashCode();
+        b.setName("c");
+        assertNotEquals(hash, g.hashCode());
+    }
+
+    @Test
+    void cachesOfUnrelatedGraphsAreKept() {
+        final MutableGraph g = create();
+        final MutableGraph other = create();
+        g.hashCode();
+        other.hashCode();
+        final ModelCache cache = g.cache;
+        other.add(mutNode("x"));
+        other.rootNodes().iterator().next().add(Color.RED);
+        assertSame(cache, g.cache);
+        assertNull(other.cache);
+    }
+
+    private MutableGraph create() {
+        return mutGraph("g").add(
+                mutNode("a").addLink(mutNode("b")),
+                mutGraph("sub").add(mutNode("c").addLink(mutNode("a"))));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static guru.nidi.graphviz.model.Factory.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderedSetTest {
+    @Test
+    void sameAsLinkedHashSet() {
+        final Random random = new Random(42);
+        final List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(new Object());
+        }
+        final Set<Object> expected = new LinkedHashSet<>();
+        final OrderedSet<Object> actual = new OrderedSet<>();
+        for (int op = 0; op < 5000; op++) {
+            final Object value = values.get(random.nextInt(values.size()));
+            if (random.nextInt(10) == 0) {
+                assertEquals(expected.remove(value), actual.remove(value));
+            } else {
+                assertEquals(expected.add(value), actual.add(value));
+            }
+            assertEquals(expected.contains(value), actual.contains(value));
+        }
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void identity() {
+        final OrderedSet<String> set = new OrderedSet<>();
+        final String a = "a";
+        final String b = new String(a);
+        assertTrue(set.add(a));
+        assertTrue(set.add(b));
+        assertFalse(set.add(a));
+        assertEquals(2, set.size());
+        assertTrue(set.remove(b));
+        assertFalse(set.contains(b));
+        assertTrue(set.contains(a));
+    }
+
+    @Test
+    void manyElements() {
+        //enough elements to get identity hash code collisions
+        final List<Object> values = new ArrayList<>();
+        final OrderedSet<Object> set = new OrderedSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            final Object value = new Object();
+            values.add(value);
+            assertTrue(set.add(value));
+        }
+        for (final Object value : values) {
+            assertTrue(set.contains(value));
+            assertFalse(set.add(value));
+        }
+        assertEquals(values, new ArrayList<>(set));
+    }
+
+    @Test
+    void copyIsIndependent() {
+        final OrderedSet<String> a = new OrderedSet<>(Arrays.asList("a", "b"));
+        final OrderedSet<String> b = a.copy();
+        b.add("c");
+        a.remove("a");
+        assertEquals(Collections.singletonList("b"), new ArrayList<>(a));
+        assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(b));
+    }
+
+    @Test
+    void immutableGraphIsUnchanged() {
+        Graph g = graph();
+        final List<Graph> versions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            versions.add(g);
+            g = g.with(node("n" + i).link("x"));
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(i, versions.get(i).toMutable().rootNodes().size());
+        }
+        final MutableGraph mutable = g.toMutable();
+        mutable.add(mutNode("y"));
+        assertEquals(1000, g.toMutable().rootNodes().size());
+        assertEquals(1001, mutable.rootNodes().size());
+    }
+}
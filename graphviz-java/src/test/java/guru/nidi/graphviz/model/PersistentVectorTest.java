@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentVectorTest {
+    @Test
+    void appendAndGet() {
+        PersistentVector<Integer> v = PersistentVector.empty();
+        for (int i = 0; i < 40_000; i++) {
+            v = v.append(i);
+        }
+        assertEquals(40_000, v.size());
+        for (int i = 0; i < 40_000; i++) {
+            assertEquals(i, (int) v.get(i));
+        }
+        int expected = 0;
+        for (final int i : v) {
+            assertEquals(expected++, i);
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> PersistentVector.empty().get(0));
+    }
+
+    @Test
+    void persistent() {
+        final List<PersistentVector<Integer>> versions = new ArrayList<>();
+        PersistentVector<Integer> v = PersistentVector.empty();
+        for (int i = 0; i < 2000; i++) {
+            versions.add(v);
+            v = v.append(i);
+        }
+        final PersistentVector<Integer> changed = v.set(5, -1).set(1999, -2);
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(i, versions.get(i).size());
+        }
+        assertEquals(5, (int) v.get(5));
+        assertEquals(1999, (int) v.get(1999));
+        assertEquals(-1, (int) changed.get(5));
+        assertEquals(-2, (int) changed.get(1999));
+        assertEquals(6, (int) changed.get(6));
+    }
+}
@@ -17,21 +17,26 @@ package guru.nidi.graphviz.model;
 
 import guru.nidi.graphviz.attribute.Label;
 import guru.nidi.graphviz.attribute.Named;
+import guru.nidi.graphviz.attribute.validate.ValidationMode;
 import guru.nidi.graphviz.attribute.validate.ValidatorMessage;
 import guru.nidi.graphviz.attribute.validate.ValidatorMessage.Location;
 import guru.nidi.graphviz.attribute.validate.ValidatorMessage.Severity;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
+import static guru.nidi.graphviz.attribute.Attributes.attr;
 import static guru.nidi.graphviz.attribute.validate.ValidatorMessage.Location.Type.*;
 import static guru.nidi.graphviz.attribute.validate.ValidatorMessage.Severity.*;
 import static guru.nidi.graphviz.model.Compass.*;
 import static guru.nidi.graphviz.model.Factory.*;
 import static java.util.Arrays.asList;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
 
 class SerializerTest {
     Ser ser = new Ser();
@@ -220,11 +225,348 @@ class SerializerTest {
                 "graph {\n'a'\n}");
     }
 
+    @Test
+    void mergeNodesWithSameName() {
+        final Serializer serializer = new Serializer().notValidating();
+        assertEquals("graph {\n\"a\" [\"color\"=\"red\"]\n\"c\"\n\"a\" -- \"b\"\n}",
+                serializer.serialize(mutGraph().add(
+                        mutNode("a").add("color", "red"), mutNode("a").addLink(mutNode("b")), mutNode("b"), mutNode("c"))));
+    }
+
+    @Test
+    void linkedSubgraphOnlyInLink() {
+        final MutableGraph sub = mutGraph("s");
+        assertEquals("graph {\nsubgraph \"t\" {\n}\n\"a\" -- subgraph \"s\" {\n}\n}",
+                new Serializer().notValidating().serialize(mutGraph().add(mutNode("a").addLink(sub), sub, mutGraph("t"))));
+    }
+
+    @Test
+    void longChain() {
+        final MutableGraph g = mutGraph();
+        MutableNode node = mutNode("n0");
+        g.add(node);
+        final StringBuilder expected = new StringBuilder("graph {\n");
+        for (int i = 1; i < 50000; i++) {
+            final MutableNode next = mutNode("n" + i);
+            node.addLink(next);
+            expected.append("\"n").append(i - 1).append("\" -- \"n").append(i).append("\"\n");
+            node = next;
+        }
+        assertEquals(expected.append('}').toString(), new Serializer().notValidating().serialize(g));
+    }
+
+    //the expected strings are the output of the serializer before it was made linear
+    @Test
+    void unnamedSubgraphs() {
+        assertSerializeMutable(mutGraph().add(
+                mutGraph().add(mutNode("a")), mutGraph().add(mutNode("b")), mutGraph().add(mutNode("a"))),
+                "graph {\n{\n'a'\n}\n{\n'b'\n}\n}");
+        assertSerializeMutable(mutGraph().setDirected(true).add(
+                mutGraph().add(mutNode("a").addLink(mutNode("b"))).addLink(mutGraph().add(mutNode("c")))),
+                "digraph {\nedge ['dir'='forward']\n{\nedge ['dir'='none']\n'a' -> 'b'\n} -> {\n"
+                        + "edge ['dir'='none']\n'c'\n}\n}");
+        assertSerializeMutable(mutGraph("g").add(
+                mutGraph("x").setCluster(true).add(mutNode("a").add("color", "red")),
+                mutGraph().add(mutGraph().add(mutNode("a").addLink(mutNode("b"))))),
+                "graph 'g' {\nsubgraph 'cluster_x' {\n'a' ['color'='red']\n}\n{\n{\n'a' -- 'b'\n}\n}\n}");
+        assertSerializeMutable(mutGraph().add(
+                mutNode("a").addLink(mutNode("b").port("p")), mutNode("a").add("shape", "box"),
+                mutGraph().graphAttrs().add("rank", "same").add(mutNode("a"), mutNode("c"))),
+                "graph {\n'a' ['shape'='box']\n{\ngraph ['rank'='same']\n'a'\n'c'\n}\n'a' -- 'b':'p'\n}");
+        assertSerializeMutable(mutGraph().add(
+                mutGraph().add(mutNode("a").addLink(mutNode("b"))), mutGraph().add(mutNode("a").addLink(mutNode("b"))),
+                mutGraph("s").add(mutNode("c")), mutGraph().graphAttrs().add("label", "x").add(mutNode("d"))),
+                "graph {\n{\n'a' -- 'b'\n}\nsubgraph 's' {\n'c'\n}\n{\ngraph ['label'='x']\n'd'\n}\n}");
+        final MutableGraph shared = mutGraph().add(mutNode("s1"), mutNode("s2"));
+        assertSerializeMutable(mutGraph().setDirected(true).add(
+                mutNode("a").addLink(shared), mutNode("b").addLink(shared), shared,
+                mutGraph().setDirected(false).add(mutNode("u").addLink(mutNode("v")))),
+                "digraph {\nedge ['dir'='forward']\n{\nedge ['dir'='none']\n'u' -> 'v'\n}\n"
+                        + "'a' -> {\nedge ['dir'='none']\n's1'\n's2'\n}\n"
+                        + "'b' -> {\nedge ['dir'='none']\n's1'\n's2'\n}\n}");
+        assertSerializeMutable(mutGraph().add(
+                mutGraph().nodeAttrs().add("color", "blue").linkAttrs().add("style", "dashed")
+                        .add(mutNode("a").addLink(mutNode("b"))),
+                mutGraph().add(mutNode("b").addLink(mutNode("c")))),
+                "graph {\n{\nnode ['color'='blue']\nedge ['style'='dashed']\n'a' -- 'b'\n}\n{\n'b' -- 'c'\n}\n}");
+    }
+
+    @Test
+    void manyUnnamedSubgraphs() {
+        final MutableGraph g = mutGraph();
+        final StringBuilder expected = new StringBuilder("graph {\n");
+        for (int i = 0; i < 20000; i++) {
+            g.add(mutGraph().add(mutNode("n" + i % 10000)));
+            if (i < 10000) {
+                expected.append("{\n\"n").append(i).append("\"\n}\n");
+            }
+        }
+        assertEquals(expected.append('}').toString(), new Serializer().notValidating().serialize(g));
+    }
+
+    private static void assertSerializeMutable(MutableGraph graph, String expectedString) {
+        assertEquals(expectedString.replace("'", "\""), new Serializer().notValidating().serialize(graph));
+    }
+
+    @Test
+    void appendable() throws IOException {
+        final MutableGraph g = mutGraph("x").setDirected(true);
+        for (int i = 0; i < 2000; i++) {
+            g.add(mutNode("n" + i).add("color", "red").addLink(mutNode("n" + (i * 7 % 2000))));
+        }
+        final List<String> chunks = new ArrayList<>();
+        final StringWriter out = new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence csq) {
+                chunks.add(csq.toString());
+                return super.append(csq);
+            }
+        };
+        ser.serializer.serialize(g, out);
+        assertEquals(ser.serializer.serialize(g), out.toString());
+        assertTrue(chunks.size() > 1);
+        for (final String chunk : chunks.subList(0, chunks.size() - 1)) {
+            assertTrue(chunk.endsWith("\n"));
+        }
+    }
+
     private void assertSerialize(Graph graph, String expectedString, ValidatorMessage... expectedMessages) {
         assertEquals(expectedString.replace("'", "\""), ser.serializer.serialize(graph));
         assertEquals(asList(expectedMessages), ser.messages);
     }
 
+    @Test
+    void validateAsync() {
+        final List<ValidatorMessage> messages = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+        final MutableNode a = mutNode("a").add("bla", "blu");
+        final Serializer serializer = new Serializer().validating(ValidationMode.async(tasks::add), messages::add);
+        assertEquals("graph {\n\"a\" [\"bla\"=\"blu\"]\n}", serializer.serialize(mutGraph().add(a)));
+        assertEquals(0, messages.size());
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertEquals(asList(msg(ERROR, "bla", "is unknown.", NODE, a)), messages);
+    }
+
+    @Test
+    void validateAsyncAfterModification() {
+        final List<ValidatorMessage> messages = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+        final MutableNode a = mutNode("a").add("bla", "blu");
+        final MutableGraph g = mutGraph().add(a);
+        final Serializer serializer = new Serializer().validating(ValidationMode.async(tasks::add), messages::add);
+        serializer.serialize(g);
+        a.add("color", "nocolor");
+        tasks.get(0).run();
+        assertEquals(asList(msg(ERROR, "bla", "is unknown.", NODE, a)), messages);
+    }
+
+    @Test
+    void incrementalValidateAsync() {
+        final MutableNode a = mutNode("a").add("bla", "blu");
+        final MutableGraph sub = mutGraph("s").add(mutNode("b").add("blu", "bla"));
+        final MutableGraph g = mutGraph().add(a, sub);
+        final List<ValidatorMessage> expected = new ArrayList<>();
+        final List<ValidatorMessage> messages = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+        new Serializer().validating(expected::add).serialize(g);
+        final Serializer async = new Serializer().incremental()
+                .validating(ValidationMode.async(tasks::add), messages::add);
+        final Serializer sync = new Serializer().incremental().validating(messages::add);
+
+        async.serialize(g);
+        final DotFragment fragment = g.cache.dot;
+        tasks.remove(0).run();
+        assertEquals(expected, messages);
+
+        messages.clear();
+        sync.serialize(g);
+        assertSame(fragment, g.cache.dot);
+        assertEquals(expected, messages);
+
+        messages.clear();
+        async.serialize(g);
+        assertSame(fragment, g.cache.dot);
+        tasks.remove(0).run();
+        assertEquals(expected, messages);
+    }
+
+    @Test
+    void validateSampled() {
+        final List<ValidatorMessage> messages = new ArrayList<>();
+        final MutableGraph g = mutGraph().add(mutNode("a").add("bla", "blu"));
+        new Serializer().validating(ValidationMode.sampled(0), messages::add).serialize(g);
+        assertEquals(0, messages.size());
+        new Serializer().validating(ValidationMode.sampled(1), messages::add).serialize(g);
+        assertEquals(1, messages.size());
+    }
+
+    @Test
+    void validateOncePerShape() {
+        final List<ValidatorMessage> messages = new ArrayList<>();
+        final MutableGraph g = mutGraph().add(
+                mutNode("a").add("center", "onceA"),
+                mutNode("b").add("center", "onceA"),
+                mutNode("c").add("center", "onceC"),
+                mutNode("d").add("onceUnknown", "x"));
+        final Serializer serializer = new Serializer().validating(ValidationMode.ONCE_PER_SHAPE, messages::add);
+        serializer.serialize(g);
+        assertEquals(asList("onceA", "onceC", "x"), messages.stream()
+                .map(m -> ((MutableNode) m.location.name).get(m.attribute).toString())
+                .distinct().collect(toList()));
+        messages.clear();
+        serializer.serialize(g);
+        assertEquals(0, messages.size());
+    }
+
+    @Test
+    void incremental() {
+        final MutableNode a = mutNode("a");
+        final MutableNode b = mutNode("b").add("color", "red");
+        final MutableGraph sub = mutGraph("s").add(mutNode("c").addLink(mutNode("d")));
+        final MutableGraph g = mutGraph("x").setDirected(true).add(a.addLink(b), sub);
+        final Serializer plain = new Serializer().notValidating();
+        final Serializer incremental = plain.incremental();
+
+        assertEquals(plain.serialize(g), incremental.serialize(g));
+        final String subDot = sub.cache.dot.dot;
+        assertEquals(plain.serialize(g), incremental.serialize(g));
+
+        b.add("color", "blue");
+        g.add(mutNode("e"));
+        assertEquals(plain.serialize(g), incremental.serialize(g));
+        assertTrue(g.cache.dot.dot.contains("\"e\""));
+        assertSame(subDot, sub.cache.dot.dot);
+
+        sub.add(mutNode("d").add("color", "green"));
+        assertEquals(plain.serialize(g), incremental.serialize(g));
+        assertNotSame(subDot, sub.cache.dot.dot);
+
+        a.setName("z");
+        g.setDirected(false);
+        assertEquals(plain.serialize(g), incremental.serialize(g));
+    }
+
+    @Test
+    void incrementalValidating() {
+        final MutableNode a = mutNode("a").add("bla", "blu");
+        final MutableGraph sub = mutGraph("s").add(mutNode("b").add("blu", "bla"));
+        final MutableGraph g = mutGraph().add(a, sub);
+        final List<ValidatorMessage> expected = new ArrayList<>();
+        final List<ValidatorMessage> messages = new ArrayList<>();
+        final Serializer plain = new Serializer().validating(expected::add);
+        final Serializer incremental = new Serializer().incremental().validating(messages::add);
+
+        assertEquals(plain.serialize(g), incremental.serialize(g));
+        final String subDot = sub.cache.dot.dot;
+        a.add("blo", "bli");
+        expected.clear();
+        messages.clear();
+        assertEquals(plain.serialize(g), incremental.serialize(g));
+        assertSame(subDot, sub.cache.dot.dot);
+        assertEquals(3, expected.size());
+        assertEquals(expected, messages);
+
+        messages.clear();
+        new Serializer().incremental().validating(ValidationMode.sampled(0), messages::add).serialize(g);
+        assertEquals(0, messages.size());
+    }
+
+    @Test
+    void incrementalStreaming() throws IOException {
+        final MutableGraph g = mutGraph().add(mutNode("a").addLink("b"));
+        final StringWriter out = new StringWriter();
+        new Serializer().notValidating().incremental().serialize(g, out);
+        assertEquals(new Serializer().notValidating().serialize(g), out.toString());
+    }
+
+    @Test
+    void parallel() {
+        final MutableGraph g = largeGraph();
+        final Serializer sequential = new Serializer().notValidating();
+        assertEquals(sequential.serialize(g), sequential.parallel().serialize(g));
+        assertEquals(sequential.serialize(g), sequential.parallel().incremental().serialize(g));
+    }
+
+    @Test
+    void parallelValidation() {
+        final MutableGraph g = largeGraph();
+        final List<ValidatorMessage> sequential = new ArrayList<>();
+        final List<ValidatorMessage> parallel = new ArrayList<>();
+        new Serializer().validating(sequential::add).serialize(g);
+        new Serializer().validating(parallel::add).parallel().serialize(g);
+        assertEquals(3 * 2500 + 2500, sequential.size());
+        assertEquals(sequential, parallel);
+    }
+
+    private MutableGraph largeGraph() {
+        final MutableGraph g = mutGraph("large").setDirected(true);
+        for (int i = 0; i < 3; i++) {
+            final MutableGraph sub = mutGraph("sub" + i).setCluster(true);
+            for (int j = 0; j < 2500; j++) {
+                sub.add(mutNode(i + "-" + j).add("bla", j).addLink(mutNode(i + "-" + (j + 1) % 2500)));
+            }
+            g.add(sub);
+        }
+        for (int j = 0; j < 2500; j++) {
+            g.add(mutNode("n" + j).addLink(to(mutNode("n" + (j + 7) % 2500)).with("blu", j)));
+        }
+        return g;
+    }
+
+    @Test
+    void compact() {
+        final MutableGraph g = mutGraph("x").setDirected(true).add(
+                mutNode("a").add(attr("color", "red"), attr("shape", "box"))
+                        .addLink(to(mutNode("b")).with("color", "blue")),
+                mutNode("c").add(attr("color", "red"), attr("shape", "box"))
+                        .addLink(to(mutNode("d")).with("color", "blue")),
+                mutNode("e").add(attr("color", "green"), attr("shape", "box")),
+                mutNode("f").add("color", "red"),
+                mutNode("g h").add(attr("color", "red"), attr("shape", "box")));
+        assertEquals("digraph x{\n"
+                + "{node[color=red,shape=box]\n"
+                + "a\n"
+                + "c\n"
+                + "e[color=green]\n"
+                + "}\n"
+                + "f[color=red]\n"
+                + "\"g h\"[color=red,shape=box]\n"
+                + "{edge[color=blue]\n"
+                + "a->b\n"
+                + "c->d\n"
+                + "}\n"
+                + "}", new Serializer().compact().serialize(g));
+    }
+
+    @Test
+    void compactOnlyHoistsNewNodes() {
+        final MutableNode a = mutNode("a").add("color", "red");
+        final MutableGraph g = mutGraph().add(
+                mutGraph("s").add(a.addLink(mutNode("b"))),
+                mutGraph("t").add(a, mutNode("b").add("color", "red"), mutNode("c").add("color", "red")));
+        assertEquals("graph{\n"
+                + "subgraph s{\n"
+                + "a[color=red]\n"
+                + "a--b\n"
+                + "}\n"
+                + "subgraph t{\n"
+                + "a[color=red]\n"
+                + "b[color=red]\n"
+                + "c[color=red]\n"
+                + "a--b\n"
+                + "}\n"
+                + "}", new Serializer().compact().serialize(g));
+    }
+
+    @Test
+    void compactValidatesHoisted() {
+        final List<ValidatorMessage> messages = new ArrayList<>();
+        final MutableGraph g = mutGraph().add(mutNode("a").add("bla", "x"), mutNode("b").add("bla", "x"));
+        new Serializer().compact().validating(messages::add).serialize(g);
+        assertEquals(2, messages.size());
+    }
+
     private ValidatorMessage msg(Severity severity, String attribute, String message, Location.Type type, Named name) {
         return new ValidatorMessage(severity, attribute, message, null, new Location(type, name));
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.model;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SpatialIndexTest {
+    private static final String SVG = "<svg width=\"124px\" height=\"232px\" viewBox=\"0.00 0.00 62.00 116.00\">\n"
+            + "<g id=\"graph0\" class=\"graph\" transform=\"scale(1.0 1.0) rotate(0.0) translate(4.0 112.0)\">\n"
+            + "<g id=\"clust1\" class=\"cluster\"><title>cluster_c</title>"
+            + "<polygon points=\"-4,-112 -4,4 58,4 58,-112 -4,-112\"/></g>\n"
+            + "<g id=\"node1\" class=\"node\"><title>a</title><ellipse cx=\"27\" cy=\"-90\" rx=\"27\" ry=\"18\"/>"
+            + "<text text-anchor=\"middle\" x=\"27\" y=\"-86.3\" font-size=\"14.00\">a</text></g>\n"
+            + "<g id=\"node2\" class=\"node\"><title>b</title>"
+            + "<polygon points=\"54,-36 0,-36 0,0 54,0 54,-36\"/></g>\n"
+            + "<g id=\"edge1\" class=\"edge\"><title>a&#45;&gt;b</title>"
+            + "<path d=\"M27,-71.7C27,-63.98 27,-54.71 27,-46.11\"/>"
+            + "<polygon points=\"30.5,-46.1 27,-36.1 23.5,-46.1 30.5,-46.1\"/></g>\n"
+            + "</g></svg>";
+
+    @Test
+    void at() {
+        final SvgElementFinder finder = new SvgElementFinder(SVG);
+        final SpatialIndex index = new SpatialIndex(finder, 124, 232);
+        final Element cluster = finder.findCluster("c");
+        final Element a = finder.findNode("a");
+        final Element b = finder.findNode("b");
+        final Element edge = finder.findLink("a", "b");
+        assertEquals(asList(a, cluster), index.at(62, 44));
+        assertEquals(asList(cluster), index.at(12, 12));
+        assertEquals(asList(edge, cluster), index.at(62, 104));
+        assertEquals(asList(edge, cluster), index.at(64, 104));
+        assertEquals(asList(cluster), index.at(68, 104));
+        assertEquals(asList(b, cluster), index.at(10, 200));
+        assertEquals(emptyList(), index.at(200, 200));
+    }
+
+    @Test
+    void in() {
+        final SvgElementFinder finder = new SvgElementFinder(SVG);
+        final SpatialIndex index = new SpatialIndex(finder, 124, 232);
+        final Element cluster = finder.findCluster("c");
+        final Element a = finder.findNode("a");
+        final Element b = finder.findNode("b");
+        final Element edge = finder.findLink("a", "b");
+        assertEquals(asList(cluster, a, b, edge), index.in(0, 0, 124, 232));
+        assertEquals(asList(cluster, b), index.in(0, 200, 10, 10));
+        assertEquals(new Rectangle2D.Double(8, 8, 108, 72), index.boundsOf(a));
+    }
+
+    @Test
+    void rotated() {
+        final String svg = SVG.replace("width=\"124px\" height=\"232px\" viewBox=\"0.00 0.00 62.00 116.00\"",
+                "width=\"232px\" height=\"124px\" viewBox=\"0.00 0.00 116.00 62.00\"")
+                .replace("rotate(0.0) translate(4.0 112.0)", "rotate(-90) translate(-58 112)");
+        final SvgElementFinder finder = new SvgElementFinder(svg);
+        final SpatialIndex index = new SpatialIndex(finder, 232, 124);
+        final Element cluster = finder.findCluster("c");
+        final Element a = finder.findNode("a");
+        final Element b = finder.findNode("b");
+        final Element edge = finder.findLink("a", "b");
+        assertEquals(asList(a, cluster), index.at(44, 62));
+        assertEquals(asList(edge, cluster), index.at(110, 62));
+        assertEquals(asList(cluster), index.at(110, 70));
+        assertEquals(asList(b, cluster), index.at(200, 60));
+        assertEquals(new Rectangle2D.Double(8, 8, 72, 108), index.boundsOf(a));
+    }
+
+    @Test
+    void unsupportedRotation() {
+        final SvgElementFinder finder = new SvgElementFinder(SVG.replace("rotate(0.0)", "rotate(45)"));
+        final IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new SpatialIndex(finder, 124, 232));
+        assertEquals("Only rotations by multiples of 90 degrees are supported, "
+                + "but the graph is rotated by 45.0 degrees.", e.getMessage());
+    }
+
+    @Test
+    void manyNodes() {
+        final StringBuilder svg = new StringBuilder("<svg width=\"10000px\" height=\"10000px\" "
+                + "viewBox=\"0 0 10000 10000\"><g class=\"graph\" transform=\"scale(1 1) rotate(0) translate(0 0)\">");
+        for (int y = 0; y < 100; y++) {
+            for (int x = 0; x < 100; x++) {
+                svg.append("<g class=\"node\"><title>").append(x).append('_').append(y).append("</title>")
+                        .append("<ellipse cx=\"").append(x * 100 + 50).append("\" cy=\"").append(y * 100 + 50)
+                        .append("\" rx=\"40\" ry=\"20\"/></g>");
+            }
+        }
+        final SvgElementFinder finder = new SvgElementFinder(svg.append("</g></svg>").toString());
+        final SpatialIndex index = new SpatialIndex(finder, 10000, 10000);
+        for (int y = 0; y < 100; y++) {
+            for (int x = 0; x < 100; x++) {
+                final List<Element> hit = index.at(x * 100 + 85, y * 100 + 50);
+                assertEquals(1, hit.size());
+                assertEquals(x + "_" + y, SvgElementFinder.nodeNameOf(hit.get(0)));
+                assertEquals(emptyList(), index.at(x * 100 + 95, y * 100 + 50));
+            }
+        }
+        assertEquals(4, index.in(1000, 1000, 150, 150).size());
+    }
+}
@@ -18,14 +18,20 @@ package guru.nidi.graphviz.model;
 import guru.nidi.graphviz.attribute.Label;
 import guru.nidi.graphviz.engine.Graphviz;
 import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+import java.util.List;
+import java.util.stream.IntStream;
 
 import static guru.nidi.graphviz.attribute.Attributes.attr;
 import static guru.nidi.graphviz.engine.Format.SVG;
 import static guru.nidi.graphviz.model.Factory.*;
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class SvgElementFinderTest {
     @Test
@@ -126,4 +132,63 @@ class SvgElementFinderTest {
         });
         assertThat(newSvg, containsString("<g class=\"hula\""));
     }
+
+    @Test
+    void index() {
+        final StringBuilder svg = new StringBuilder("<svg><g id=\"graph0\" class=\"graph\"><title>g</title>");
+        for (int i = 0; i < 1000; i++) {
+            svg.append("<g id=\"node").append(i).append("\" class=\"node n").append(i % 2).append("\">")
+                    .append("<title>").append(i).append("</title></g>");
+            if (i > 0) {
+                svg.append("<g id=\"edge").append(i).append("\" class=\"edge\"><title>")
+                        .append(i - 1).append("&#45;&gt;").append(i).append("</title></g>");
+            }
+        }
+        final SvgElementFinder finder = new SvgElementFinder(svg.append("</g></svg>").toString());
+        assertEquals("graph0", finder.findGraph().getAttribute("id"));
+        assertEquals(1000, finder.findNodes().size());
+        assertEquals("node0", finder.findNodes().get(0).getAttribute("id"));
+        assertEquals(999, finder.findLinks().size());
+        assertEquals(0, finder.findClusters().size());
+        assertEquals(500, finder.findByClass("n1").size());
+        assertEquals("node1", finder.findByClass("n1").get(0).getAttribute("id"));
+        assertEquals(0, finder.findByClass("n2").size());
+        finder.findNodes().clear();
+        finder.findLinks().add(finder.findGraph());
+        finder.findByClass("n1").remove(0);
+        assertEquals(1000, finder.findNodes().size());
+        assertEquals(999, finder.findLinks().size());
+        assertEquals(500, finder.findByClass("n1").size());
+        assertNull(finder.findNode("1000"));
+        assertNull(finder.findLink("1", "3"));
+        final List<Element> found = IntStream.range(1, 1000).parallel()
+                .mapToObj(i -> finder.findLink(String.valueOf(i - 1), String.valueOf(i)))
+                .collect(toList());
+        for (int i = 1; i < 1000; i++) {
+            assertEquals("edge" + i, found.get(i - 1).getAttribute("id"));
+            assertEquals("node" + i, finder.findNode(String.valueOf(i)).getAttribute("id"));
+        }
+    }
+
+    @Test
+    void noGraph() {
+        assertNull(new SvgElementFinder("<svg><rect/></svg>").findGraph());
+    }
+
+    @Test
+    void indexFollowsModifications() {
+        final SvgElementFinder finder = new SvgElementFinder("<svg><g id=\"graph0\" class=\"graph\">"
+                + "<g id=\"node1\" class=\"node\"><title>a</title></g></g></svg>");
+        final Element a = finder.findNode("a");
+        a.setAttribute("class", "node hula");
+        assertEquals(singletonList(a), finder.findByClass("hula"));
+        final Element b = (Element) a.cloneNode(true);
+        b.getElementsByTagName("title").item(0).setTextContent("b");
+        finder.findGraph().appendChild(b);
+        assertSame(b, finder.findNode("b"));
+        assertEquals(asList(a, b), finder.findNodes());
+        finder.findGraph().removeChild(a);
+        assertNull(finder.findNode("a"));
+        assertEquals(singletonList(b), finder.findByClass("hula"));
+    }
 }
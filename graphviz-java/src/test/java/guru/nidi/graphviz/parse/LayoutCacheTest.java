@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2015 Stefan Niederhauser (nidin@gmx.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package guru.nidi.graphviz.parse;
+
+import guru.nidi.graphviz.model.MutableGraph;
+import guru.nidi.graphviz.model.MutableNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static guru.nidi.graphviz.attribute.Attributes.attr;
+import static guru.nidi.graphviz.model.Factory.mutGraph;
+import static guru.nidi.graphviz.model.Factory.mutNode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LayoutCacheTest {
+    private static final String RENDERED = "digraph {\n"
+            + "graph [bb=\"0,0,54,108\"];\n"
+            + "node [label=\"\\N\"];\n"
+            + "a [color=red, height=0.5, pos=\"27,90\", width=0.75];\n"
+            + "b [height=0.5, pos=\"27,18\", width=0.75];\n"
+            + "c [height=0.5, pos=\"81,18\", width=0.75];\n"
+            + "a -> b [pos=\"e,27,36.104 27,71.697 27,63.983 27,54.712 27,46.112\"];\n"
+            + "a -> c [pos=\"e,70,34 38,74 45,65 54,54 62,44\"];\n"
+            + "}";
+
+    @Test
+    void apply() throws IOException {
+        final LayoutCache cache = LayoutCache.of(RENDERED);
+        assertEquals(3, cache.nodeCount());
+
+        final MutableNode a = mutNode("a").add(attr("color", "red"));
+        final MutableNode b = mutNode("b");
+        final MutableNode c = mutNode("c").add(attr("color", "blue"));
+        final MutableNode d = mutNode("d");
+        final MutableGraph g = cache.apply(mutGraph().setDirected(true).add(a.addLink(b, c, d)));
+
+        assertEquals("27,90!", a.get("pos"));
+        assertEquals("27,18!", b.get("pos"));
+        assertEquals("81,18", c.get("pos"));
+        assertNull(d.get("pos"));
+        assertEquals("e,27,36.104 27,71.697 27,63.983 27,54.712 27,46.112", a.links().get(0).attrs().get("pos"));
+        assertNull(a.links().get(1).attrs().get("pos"));
+        assertEquals(72, g.graphAttrs().get("inputscale"));
+    }
+
+    @Test
+    void linkToSubgraph() throws IOException {
+        final LayoutCache cache = LayoutCache.of("digraph { a -> {b c} [pos=\"e,1,1 2,2 3,3 4,4\"] }");
+        assertEquals(0, cache.nodeCount());
+
+        final LayoutCache rendered = LayoutCache.of(RENDERED);
+        final MutableNode a = mutNode("a").add(attr("color", "red"));
+        final MutableNode b = mutNode("b");
+        final MutableNode c = mutNode("c");
+        final MutableNode d = mutNode("d");
+        final MutableGraph sub = mutGraph().setDirected(true).add(b, c);
+        rendered.apply(mutGraph().setDirected(true).add(a.addLink(sub), sub, d.addLink(sub)));
+
+        assertEquals("27,90!", a.get("pos"));
+        assertEquals("27,18!", b.get("pos"));
+        assertEquals("81,18!", c.get("pos"));
+        assertNull(d.get("pos"));
+        assertNull(a.links().get(0).attrs().get("pos"));
+        assertNull(d.links().get(0).attrs().get("pos"));
+    }
+
+    @Test
+    void applyWithDefaults() throws IOException {
+        final LayoutCache cache = LayoutCache.of("digraph {\n"
+                + "graph [bb=\"0,0,108,108\", rankdir=LR];\n"
+                + "node [label=\"\\N\", shape=box];\n"
+                + "a [height=0.5, pos=\"27,90\", width=0.75];\n"
+                + "subgraph cluster_s {\n"
+                + "graph [bb=\"0,0,54,36\"];\n"
+                + "node [color=blue];\n"
+                + "b [height=0.5, pos=\"27,18\", width=0.75];\n"
+                + "c [height=0.5, pos=\"81,18\", width=0.75];\n"
+                + "}\n"
+                + "a -> b [pos=\"e,27,36 27,72 27,64 27,54 27,46\"];\n"
+                + "}");
+
+        final MutableNode a = mutNode("a");
+        final MutableNode b = mutNode("b");
+        final MutableNode c = mutNode("c").add(attr("color", "red"));
+        cache.apply(mutGraph().setDirected(true)
+                .graphAttrs().add(attr("rankdir", "LR"))
+                .nodeAttrs().add(attr("shape", "box"))
+                .add(a.addLink(b), mutGraph("s").setCluster(true).nodeAttrs().add(attr("color", "blue")).add(b, c)));
+        assertEquals("27,90!", a.get("pos"));
+        assertEquals("27,18!", b.get("pos"));
+        assertEquals("81,18", c.get("pos"));
+        assertEquals("e,27,36 27,72 27,64 27,54 27,46", a.links().get(0).attrs().get("pos"));
+
+        final MutableNode a2 = mutNode("a");
+        final MutableNode b2 = mutNode("b");
+        cache.apply(mutGraph().setDirected(true)
+                .nodeAttrs().add(attr("shape", "ellipse"))
+                .add(a2.addLink(b2), mutGraph("s").setCluster(true).add(b2)));
+        assertEquals("27,90", a2.get("pos"));
+        assertEquals("27,18", b2.get("pos"));
+        assertNull(a2.links().get(0).attrs().get("pos"));
+    }
+}
@@ -18,8 +18,7 @@ package guru.nidi.graphviz.parse;
 import guru.nidi.graphviz.attribute.*;
 import guru.nidi.graphviz.attribute.validate.ValidatorMessage;
 import guru.nidi.graphviz.attribute.validate.ValidatorMessage.Severity;
-import guru.nidi.graphviz.model.MutableGraph;
-import guru.nidi.graphviz.model.MutableNode;
+import guru.nidi.graphviz.model.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -35,6 +34,7 @@ import static guru.nidi.graphviz.model.Factory.*;
 import static guru.nidi.graphviz.model.Link.between;
 import static guru.nidi.graphviz.model.Link.to;
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -151,6 +151,17 @@ class ParserTest {
                         mutGraph().setDirected(true).add(mutNode("a").addLink("b"))));
     }
 
+    @Test
+    void subgraphDefaults() throws IOException {
+        final String dot = "graph { node[color=red] edge[style=dashed] a subgraph { node[shape=egg] b c -- d } a -- b }";
+        final MutableNode a = mutNode("a").add(Color.RED)
+                .addLink(to(mutNode("b").add(Color.RED)).with(attr("style", "dashed")));
+        assertParse(dot, mutGraph().add(a, mutGraph().add(mutNode("b").add(Shape.EGG),
+                mutNode("c").add(Shape.EGG).addLink(mutNode("d").add(Shape.EGG)))));
+        final MutableGraph g = new Parser().read(dot);
+        assertEquals(new Serializer().serialize(g), new Serializer().serialize(new Parser().read(g.toString())));
+    }
+
     @Test
     void emptyString() throws IOException {
         assertParse("graph { \"\" a [label=\"\"] }",
@@ -201,6 +212,29 @@ class ParserTest {
         assertException("node or 'graph' or '{' expected.", 2, 9, e);
     }
 
+    @Test
+    void multipleGraphs() throws IOException {
+        assertEquals(asList(mutGraph("a").add(mutNode("x").addLink("y")), mutGraph("b").setDirected(true), mutGraph()),
+                pars.parser.readAll("graph a { x -- y }\ndigraph b {} graph {}").collect(toList()));
+        assertEquals(asList(), pars.messages);
+    }
+
+    @Test
+    void multipleGraphsEmpty() throws IOException {
+        assertEquals(0, pars.parser.readAll("  //nothing\n").count());
+    }
+
+    @Test
+    void multipleGraphsLazy() throws IOException {
+        assertEquals(asList(mutGraph("a")), pars.parser.readAll("graph a {} graph b { a-b }").limit(1).collect(toList()));
+    }
+
+    @Test
+    void multipleGraphsNotAllowed() {
+        final ParserException e = assertThrows(ParserException.class, () -> pars.parser.read("graph {}\ngraph {}"));
+        assertException("'end of file' expected.", 2, 7, e);
+    }
+
     private void assertException(String message, int line, int col, ParserException e) {
         assertEquals(message, e.getMessage());
         assertEquals(line, e.getPosition().getLine());
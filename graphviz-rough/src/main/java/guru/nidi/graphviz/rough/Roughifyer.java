@@ -89,6 +89,11 @@ public class Roughifyer implements GraphvizPostProcessor {
         return EngineResult.fromString(transform(result.map(this::read, s -> s)));
     }
 
+    @Override
+    public boolean isLineLocal() {
+        return true;
+    }
+
     private String read(File file) {
         try {
             return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);